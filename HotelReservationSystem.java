@@ -1,366 +1,6191 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.zip.CRC32;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+final class IdGenerator {
+    private static final long EPOCH_MILLIS = 1704067200000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+
+    public static final IdGenerator INSTANCE = new IdGenerator(Integer.getInteger("node.id", 0));
+
+    private final long node;
+    private final AtomicLong lastStamp = new AtomicLong();
+
+    public IdGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE);
+        }
+        this.node = node;
+    }
+
+    public long nextId() {
+        while (true) {
+            long last = lastStamp.get();
+            long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+            long next = now > last ? now : last + 1;
+            if (lastStamp.compareAndSet(last, next)) {
+                long millis = next >>> SEQUENCE_BITS;
+                long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+                return (millis << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+
+    public static String format(String prefix, long id) {
+        return prefix + Long.toString(id, 36).toUpperCase(Locale.ROOT);
+    }
+
+    public static long parse(String prefix, String text) {
+        String value = text.trim().toUpperCase(Locale.ROOT);
+        if (!value.startsWith(prefix) || value.length() == prefix.length()) return -1;
+        try {
+            return Long.parseLong(value.substring(prefix.length()), 36);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
+
+final class Money {
+    public static final Currency DEFAULT_CURRENCY = Currency.getInstance("USD");
+    public static final int FRACTION_DIGITS = 2;
+    private static final long MINOR_PER_UNIT = 100;
+    private static final long BASIS = 10_000;
+    private static final long MINOR_PER_POINT = 10 * MINOR_PER_UNIT;
+
+    private Money() {}
+
+    public static boolean supports(Currency currency) {
+        return currency.getDefaultFractionDigits() == FRACTION_DIGITS;
+    }
+
+    public static long units(long major) {
+        return Math.multiplyExact(major, MINOR_PER_UNIT);
+    }
+
+    public static long percent(long amount, int basisPoints) {
+        long product = Math.multiplyExact(amount, (long) basisPoints);
+        long quotient = Math.floorDiv(product, BASIS);
+        long remainder = Math.floorMod(product, BASIS);
+        if (remainder * 2 > BASIS || (remainder * 2 == BASIS && (quotient & 1) != 0)) quotient++;
+        return quotient;
+    }
+
+    public static long scale(long amount, double factor) {
+        return Math.round(amount * factor);
+    }
+
+    public static int basisPoints(double rate) {
+        return (int) Math.round(rate * BASIS);
+    }
+
+    public static int points(long amount) {
+        return (int) (amount / MINOR_PER_POINT);
+    }
+
+    public static String decimal(long amount) {
+        StringBuilder out = new StringBuilder(24);
+        appendDecimal(out, amount);
+        return out.toString();
+    }
+
+    public static StringBuilder appendDecimal(StringBuilder out, long amount) {
+        if (amount < 0) out.append('-');
+        long abs = Math.abs(amount);
+        long minor = abs % MINOR_PER_UNIT;
+        out.append(abs / MINOR_PER_UNIT).append('.');
+        if (minor < 10) out.append('0');
+        return out.append(minor);
+    }
+
+    public static String format(long amount, Currency currency) {
+        String symbol = currency.getSymbol(Locale.US);
+        return amount < 0 ? "-" + symbol + decimal(-amount) : symbol + decimal(amount);
+    }
+}
 
 class Customer {
-    private String customerId;
+    private static final AtomicIntegerFieldUpdater<Customer> POINTS =
+            AtomicIntegerFieldUpdater.newUpdater(Customer.class, "loyaltyPoints");
+    private static final AtomicReferenceFieldUpdater<Customer, LoyaltyTier> TIER =
+            AtomicReferenceFieldUpdater.newUpdater(Customer.class, LoyaltyTier.class, "tier");
+
+    private long customerId;
     private String name;
     private String email;
     private String phoneNumber;
     private String address;
-    private int loyaltyPoints;
-    private List<Reservation> bookingHistory;
+    private volatile int loyaltyPoints;
+    private volatile LoyaltyTier tier;
+    private final BookingHistory history;
 
     public Customer(String name, String email, String phoneNumber) {
-        this.customerId = "CUST" + System.currentTimeMillis();
+        this(IdGenerator.INSTANCE.nextId(), name, email, phoneNumber);
+    }
+
+    Customer(long customerId, String name, String email, String phoneNumber) {
+        this.customerId = customerId;
         this.name = name;
         this.email = email;
         this.phoneNumber = phoneNumber;
         this.loyaltyPoints = 0;
-        this.bookingHistory = new ArrayList<>();
+        this.tier = TierTable.active().tierFor(0);
+        this.history = new BookingHistory(this);
+    }
+
+    public void addPoints(int points) {
+        int balance = POINTS.addAndGet(this, points);
+        LoyaltyTier current = tier;
+        while (balance >= current.getCeiling()) {
+            LoyaltyTier next = TierTable.active().tierFor(balance);
+            if (next.getRank() <= current.getRank() || TIER.compareAndSet(this, current, next)) break;
+            current = tier;
+        }
     }
 
-    public void addPoints(int points) { this.loyaltyPoints += points; }
-    public void addBooking(Reservation res) { bookingHistory.add(res); }
+    public boolean requalify(TierTable table) {
+        LoyaltyTier next = table.tierFor(loyaltyPoints);
+        return TIER.getAndSet(this, next) != next;
+    }
+
+    public void addBooking(Reservation res) { history.add(res); }
     
-    public String getCustomerId() { return customerId; }
+    public long getId() { return customerId; }
+    public String getCustomerId() { return IdGenerator.format("CUST", customerId); }
     public String getName() { return name; }
     public String getEmail() { return email; }
     public String getPhoneNumber() { return phoneNumber; }
     public int getLoyaltyPoints() { return loyaltyPoints; }
-    public List<Reservation> getBookingHistory() { return bookingHistory; }
+    public BookingHistory getHistory() { return history; }
     
     public void setAddress(String address) { this.address = address; }
     public String getAddress() { return address; }
     
+    public LoyaltyTier getTier() { return tier; }
+
+    public int getDiscountBasisPoints() {
+        return tier.getDiscountBasisPoints();
+    }
+
     public double getDiscountRate() {
-        if (loyaltyPoints >= 5000) return 0.15;
-        if (loyaltyPoints >= 2000) return 0.10;
-        if (loyaltyPoints >= 500) return 0.05;
-        return 0.0;
+        return getDiscountBasisPoints() / 10_000.0;
     }
     
     public String getMembershipTier() {
-        if (loyaltyPoints >= 5000) return "Platinum";
-        if (loyaltyPoints >= 2000) return "Gold";
-        if (loyaltyPoints >= 500) return "Silver";
-        return "Bronze";
+        return tier.getName();
     }
 }
 
-abstract class Room {
-    protected String roomNumber;
-    protected String type;
-    protected double pricePerNight;
-    protected int maxGuests;
-    protected boolean available;
-    protected List<String> amenities;
+final class LoyaltyTier {
+    private final String name;
+    private final int rank;
+    private final int threshold;
+    private final int ceiling;
+    private final int discountBasisPoints;
 
-    public Room(String roomNumber, String type, double price, int maxGuests) {
-        this.roomNumber = roomNumber;
-        this.type = type;
-        this.pricePerNight = price;
-        this.maxGuests = maxGuests;
-        this.available = true;
-        this.amenities = new ArrayList<>();
+    LoyaltyTier(String name, int rank, int threshold, int ceiling, int discountBasisPoints) {
+        this.name = name;
+        this.rank = rank;
+        this.threshold = threshold;
+        this.ceiling = ceiling;
+        this.discountBasisPoints = discountBasisPoints;
     }
 
-    public abstract double calculatePrice(int nights);
-    
-    public String getRoomNumber() { return roomNumber; }
-    public String getType() { return type; }
-    public double getPricePerNight() { return pricePerNight; }
-    public int getMaxGuests() { return maxGuests; }
-    public boolean isAvailable() { return available; }
-    public void setAvailable(boolean status) { this.available = status; }
-    public List<String> getAmenities() { return amenities; }
-    
-    public void showDetails() {
-        System.out.println("\nRoom " + roomNumber + " - " + type);
-        System.out.println("Price: $" + pricePerNight + "/night");
-        System.out.println("Max Guests: " + maxGuests);
-        System.out.println("Amenities: " + String.join(", ", amenities));
-        System.out.println("Status: " + (available ? "Available" : "Booked"));
-    }
+    public String getName() { return name; }
+    public int getRank() { return rank; }
+    public int getThreshold() { return threshold; }
+    public int getCeiling() { return ceiling; }
+    public int getDiscountBasisPoints() { return discountBasisPoints; }
 }
 
-class StandardRoom extends Room {
-    public StandardRoom(String number) {
-        super(number, "Standard", 100.0, 2);
-        amenities.add("WiFi");
-        amenities.add("TV");
-        amenities.add("Mini Fridge");
-    }
+final class TierTable {
+    public static final String DEFAULT = "Bronze:0:0,Silver:500:5,Gold:2000:10,Platinum:5000:15";
+
+    private static volatile TierTable active = parse(System.getProperty("loyalty.tiers", DEFAULT));
 
-    public double calculatePrice(int nights) {
-        return pricePerNight * nights;
+    private final LoyaltyTier[] tiers;
+    private final int[] thresholds;
+
+    private TierTable(LoyaltyTier[] tiers) {
+        this.tiers = tiers;
+        this.thresholds = new int[tiers.length];
+        for (int i = 0; i < tiers.length; i++) thresholds[i] = tiers[i].getThreshold();
     }
-}
 
-class DeluxeRoom extends Room {
-    public DeluxeRoom(String number) {
-        super(number, "Deluxe", 180.0, 3);
-        amenities.add("WiFi");
-        amenities.add("Smart TV");
-        amenities.add("Mini Bar");
-        amenities.add("Balcony");
+    public static TierTable active() { return active; }
+    public static void install(TierTable table) { active = table; }
+
+    public static TierTable parse(String spec) {
+        String[] parts = spec.split(",");
+        String[] names = new String[parts.length];
+        int[] thresholds = new int[parts.length];
+        int[] discounts = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String[] fields = parts[i].split(":");
+            if (fields.length != 3) {
+                throw new IllegalArgumentException("Expected tier:points:discount%, got " + parts[i]);
+            }
+            names[i] = fields[0].trim();
+            thresholds[i] = Integer.parseInt(fields[1].trim());
+            discounts[i] = new java.math.BigDecimal(fields[2].trim()).movePointRight(2).intValueExact();
+            if (names[i].isEmpty() || discounts[i] < 0 || discounts[i] > 10_000) {
+                throw new IllegalArgumentException("Invalid tier " + parts[i]);
+            }
+            if (i == 0 ? thresholds[i] != 0 : thresholds[i] <= thresholds[i - 1]) {
+                throw new IllegalArgumentException("Tier thresholds must start at 0 and increase: " + spec);
+            }
+        }
+        LoyaltyTier[] tiers = new LoyaltyTier[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            int ceiling = i + 1 < parts.length ? thresholds[i + 1] : Integer.MAX_VALUE;
+            tiers[i] = new LoyaltyTier(names[i], i, thresholds[i], ceiling, discounts[i]);
+        }
+        return new TierTable(tiers);
     }
 
-    public double calculatePrice(int nights) {
-        return pricePerNight * nights;
+    public LoyaltyTier tierFor(int points) {
+        int i = Arrays.binarySearch(thresholds, points);
+        return tiers[Math.max(0, i >= 0 ? i : -i - 2)];
     }
+
+    public List<LoyaltyTier> getTiers() { return List.of(tiers); }
 }
 
-class SuiteRoom extends Room {
-    public SuiteRoom(String number) {
-        super(number, "Suite", 300.0, 4);
-        amenities.add("WiFi");
-        amenities.add("Smart TV");
-        amenities.add("Kitchen");
-        amenities.add("Living Room");
-        amenities.add("Jacuzzi");
+class LoyaltyEngine {
+    private static final int LEAF_SIZE = 4096;
+
+    private final int expiryDays;
+    private final List<List<Lot>> wheel;
+    private final int mask;
+    private volatile long cursor;
+
+    private static final class Lot {
+        final Customer customer;
+        final int points;
+        final long expiresOn;
+
+        Lot(Customer customer, int points, long expiresOn) {
+            this.customer = customer;
+            this.points = points;
+            this.expiresOn = expiresOn;
+        }
     }
 
-    public double calculatePrice(int nights) {
-        return pricePerNight * nights;
+    public LoyaltyEngine(int expiryDays, LocalDate today) {
+        if (expiryDays < 0) throw new IllegalArgumentException("Expiry days must not be negative");
+        this.expiryDays = expiryDays;
+        int slots = Integer.highestOneBit(Math.max(expiryDays, 1)) << 1;
+        this.wheel = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) wheel.add(new ArrayList<>());
+        this.mask = slots - 1;
+        this.cursor = today.toEpochDay();
     }
-}
 
-class Hotel {
-    private String hotelId;
-    private String name;
-    private String location;
-    private String address;
-    private String phone;
-    private List<Room> rooms;
-    private List<String> facilities;
+    public int getExpiryDays() { return expiryDays; }
 
-    public Hotel(String name, String location) {
-        this.hotelId = "HTL" + System.currentTimeMillis();
-        this.name = name;
-        this.location = location;
-        this.rooms = new ArrayList<>();
-        this.facilities = new ArrayList<>();
-        initializeRooms();
-        initializeFacilities();
+    public void accrue(Customer customer, int points, LocalDate earnedOn) {
+        customer.addPoints(points);
+        schedule(customer, points, earnedOn);
     }
 
-    private void initializeRooms() {
-        for (int i = 1; i <= 15; i++) {
-            rooms.add(new StandardRoom("S" + String.format("%03d", i)));
+    public int restore(ReservationRepository reservations) {
+        Set<Customer> lapsed = Collections.newSetFromMap(new IdentityHashMap<>());
+        Consumer<Reservation> restore = reservation -> {
+            int points = BookingEngine.pointsFor(reservation);
+            if (!schedule(reservation.getCustomer(), points, reservation.getBookingTime().toLocalDate())) {
+                reservation.getCustomer().addPoints(-points);
+                lapsed.add(reservation.getCustomer());
+            }
+        };
+        reservations.all().forEach(restore);
+        reservations.forEachArchived(restore);
+        TierTable table = TierTable.active();
+        int changed = 0;
+        for (Customer customer : lapsed) {
+            if (customer.requalify(table)) changed++;
         }
-        for (int i = 1; i <= 10; i++) {
-            rooms.add(new DeluxeRoom("D" + String.format("%03d", i)));
+        return changed;
+    }
+
+    private boolean schedule(Customer customer, int points, LocalDate earnedOn) {
+        if (expiryDays == 0 || points <= 0) return true;
+        long expiresOn = earnedOn.toEpochDay() + expiryDays;
+        if (expiresOn <= cursor) return false;
+        List<Lot> slot = wheel.get((int) (expiresOn & mask));
+        synchronized (slot) {
+            slot.add(new Lot(customer, points, expiresOn));
         }
-        for (int i = 1; i <= 5; i++) {
-            rooms.add(new SuiteRoom("ST" + String.format("%03d", i)));
+        return true;
+    }
+
+    public synchronized long expireThrough(LocalDate today) {
+        long target = today.toEpochDay();
+        long expired = 0;
+        long days = Math.min(target - cursor, wheel.size());
+        for (long day = cursor + 1; day <= cursor + days; day++) {
+            List<Lot> slot = wheel.get((int) (day & mask));
+            synchronized (slot) {
+                int kept = 0;
+                for (int i = 0; i < slot.size(); i++) {
+                    Lot lot = slot.get(i);
+                    if (lot.expiresOn <= target) {
+                        lot.customer.addPoints(-lot.points);
+                        expired += lot.points;
+                    } else {
+                        slot.set(kept++, lot);
+                    }
+                }
+                slot.subList(kept, slot.size()).clear();
+            }
         }
+        if (target > cursor) cursor = target;
+        return expired;
     }
 
-    private void initializeFacilities() {
-        facilities.add("24/7 Reception");
-        facilities.add("Swimming Pool");
-        facilities.add("Gym");
-        facilities.add("Restaurant");
-        facilities.add("Bar");
-        facilities.add("Spa");
-        facilities.add("Free Parking");
-        facilities.add("Room Service");
+    public int pendingLots() {
+        int lots = 0;
+        for (List<Lot> slot : wheel) {
+            synchronized (slot) {
+                lots += slot.size();
+            }
+        }
+        return lots;
     }
 
-    public void setAddress(String address) { this.address = address; }
-    public void setPhone(String phone) { this.phone = phone; }
-    
-    public String getName() { return name; }
-    public String getLocation() { return location; }
-    public List<Room> getRooms() { return rooms; }
+    public static int requalify(Collection<Customer> customers) {
+        Customer[] members = customers.toArray(new Customer[0]);
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int leafSize = Math.max(LEAF_SIZE, members.length / (pool.getParallelism() * 4) + 1);
+        return pool.invoke(new Requalify(members, 0, members.length, leafSize, TierTable.active()));
+    }
 
-    public void displayInfo() {
-        System.out.println("\n========================================");
-        System.out.println("  " + name.toUpperCase());
-        System.out.println("========================================");
-        System.out.println("Location: " + location);
-        System.out.println("Address: " + address);
-        System.out.println("Phone: " + phone);
-        System.out.println("\nFacilities:");
-        for (String facility : facilities) {
-            System.out.println("  - " + facility);
+    private static final class Requalify extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Customer[] members;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+        private final TierTable table;
+
+        Requalify(Customer[] members, int from, int to, int leafSize, TierTable table) {
+            this.members = members;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+            this.table = table;
         }
-        System.out.println("========================================\n");
-    }
 
-    public List<Room> getAvailableRooms(String type) {
-        List<Room> available = new ArrayList<>();
-        for (Room room : rooms) {
-            if (room.isAvailable() && room.getType().equals(type)) {
-                available.add(room);
+        protected Integer compute() {
+            if (to - from > leafSize) {
+                int mid = (from + to) >>> 1;
+                Requalify left = new Requalify(members, from, mid, leafSize, table);
+                left.fork();
+                int right = new Requalify(members, mid, to, leafSize, table).compute();
+                return left.join() + right;
+            }
+            int changed = 0;
+            for (int i = from; i < to; i++) {
+                if (members[i].requalify(table)) changed++;
             }
+            return changed;
         }
-        return available;
-    }
-    
-    public int countAvailableRooms(String type) {
-        return getAvailableRooms(type).size();
     }
 }
 
-class Reservation {
-    private String reservationId;
-    private Customer customer;
-    private Hotel hotel;
-    private Room room;
-    private LocalDate checkIn;
-    private LocalDate checkOut;
-    private int guests;
-    private String status;
-    private double totalAmount;
-    private String paymentMethod;
-    private LocalDateTime bookingTime;
+class BookingHistory {
+    private static final int HOT_STAYS = Integer.getInteger("history.hot", 16);
 
-    public Reservation(Customer customer, Hotel hotel, Room room, 
-                      LocalDate checkIn, LocalDate checkOut, int guests) {
-        this.reservationId = "RES" + System.currentTimeMillis();
+    private final Customer customer;
+    private final ArrayDeque<Reservation> hot = new ArrayDeque<>();
+    private HistoryArchive archive;
+    private int archiveHead = -1;
+    private int archived;
+
+    BookingHistory(Customer customer) {
         this.customer = customer;
-        this.hotel = hotel;
-        this.room = room;
-        this.checkIn = checkIn;
-        this.checkOut = checkOut;
-        this.guests = guests;
-        this.status = "Pending";
-        this.bookingTime = LocalDateTime.now();
-        calculateTotal();
     }
 
-    private void calculateTotal() {
-        int nights = (int) ChronoUnit.DAYS.between(checkIn, checkOut);
-        double basePrice = room.calculatePrice(nights);
-        double discount = basePrice * customer.getDiscountRate();
-        this.totalAmount = basePrice - discount;
+    synchronized void attach(HistoryArchive archive) {
+        if (this.archive == null) this.archive = archive;
     }
 
-    public void setPaymentMethod(String method) { this.paymentMethod = method; }
-    public void setStatus(String status) { this.status = status; }
-    
-    public String getReservationId() { return reservationId; }
-    public String getStatus() { return status; }
-    public double getTotalAmount() { return totalAmount; }
-    public Room getRoom() { return room; }
-    public LocalDate getCheckIn() { return checkIn; }
-    public LocalDate getCheckOut() { return checkOut; }
-
-    public void displayConfirmation() {
-        System.out.println("\n========================================");
-        System.out.println("     RESERVATION CONFIRMATION");
-        System.out.println("========================================");
-        System.out.println("Reservation ID: " + reservationId);
-        System.out.println("Status: " + status);
-        System.out.println("Booked on: " + bookingTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
-        
-        System.out.println("\nGuest Details:");
-        System.out.println("Name: " + customer.getName());
-        System.out.println("Email: " + customer.getEmail());
-        System.out.println("Phone: " + customer.getPhoneNumber());
-        System.out.println("Membership: " + customer.getMembershipTier());
-        
-        System.out.println("\nHotel Details:");
-        System.out.println("Hotel: " + hotel.getName());
-        System.out.println("Location: " + hotel.getLocation());
-        
-        System.out.println("\nRoom Details:");
-        System.out.println("Room: " + room.getRoomNumber() + " (" + room.getType() + ")");
-        System.out.println("Check-in: " + checkIn);
-        System.out.println("Check-out: " + checkOut);
-        System.out.println("Nights: " + ChronoUnit.DAYS.between(checkIn, checkOut));
-        System.out.println("Guests: " + guests);
-        
-        System.out.println("\nPayment Details:");
-        int nights = (int) ChronoUnit.DAYS.between(checkIn, checkOut);
-        double basePrice = room.calculatePrice(nights);
-        System.out.println("Room Cost: $" + String.format("%.2f", basePrice));
-        
-        double discount = customer.getDiscountRate();
-        if (discount > 0) {
-            System.out.println("Discount (" + (int)(discount * 100) + "%): -$" + 
-                             String.format("%.2f", basePrice * discount));
+    public synchronized void add(Reservation reservation) {
+        hot.addLast(reservation);
+        if (archive == null || hot.size() <= HOT_STAYS) return;
+        LocalDate today = LocalDate.now();
+        for (Iterator<Reservation> it = hot.iterator(); it.hasNext() && hot.size() > HOT_STAYS; ) {
+            Reservation stay = it.next();
+            if (isTerminal(stay, today)) {
+                archiveHead = archive.append(stay, archiveHead);
+                archived++;
+                it.remove();
+            }
         }
-        
-        System.out.println("Total: $" + String.format("%.2f", totalAmount));
-        System.out.println("Payment: " + paymentMethod);
-        System.out.println("========================================\n");
     }
 
-    public boolean canCancel() {
-        long daysUntil = ChronoUnit.DAYS.between(LocalDate.now(), checkIn);
-        return daysUntil >= 2 && !status.equals("Cancelled");
+    private static boolean isTerminal(Reservation stay, LocalDate today) {
+        return stay.getStatus().equals("Confirmed") ? !stay.getCheckOut().isAfter(today) : !stay.isActive();
+    }
+
+    public synchronized int size() { return hot.size() + archived; }
+    public synchronized int getArchived() { return archived; }
+    public synchronized List<Reservation> getRecent() { return new ArrayList<>(hot); }
+
+    public List<Reservation> page(int offset, int limit) {
+        List<Reservation> page = new ArrayList<>(Math.max(0, limit));
+        HistoryArchive from;
+        int head;
+        synchronized (this) {
+            Iterator<Reservation> newest = hot.descendingIterator();
+            int index = 0;
+            while (newest.hasNext() && page.size() < limit) {
+                Reservation stay = newest.next();
+                if (index++ >= offset) page.add(stay);
+            }
+            offset = Math.max(0, offset - hot.size());
+            from = archive;
+            head = archiveHead;
+        }
+        if (page.size() < limit && from != null) from.read(head, offset, limit - page.size(), page);
+        return page;
     }
 
-    public double getCancellationFee() {
-        long daysUntil = ChronoUnit.DAYS.between(LocalDate.now(), checkIn);
-        if (daysUntil >= 7) return 0;
-        if (daysUntil >= 2) return totalAmount * 0.25;
-        return totalAmount * 0.50;
+    public List<Reservation> getArchivedStays() {
+        List<Reservation> stays = new ArrayList<>();
+        HistoryArchive from;
+        int head;
+        synchronized (this) {
+            from = archive;
+            head = archiveHead;
+        }
+        if (from != null) from.read(head, 0, Integer.MAX_VALUE, stays);
+        return stays;
     }
 }
 
-class ReservationSystem {
-    private List<Hotel> hotels;
-    private List<Customer> customers;
-    private List<Reservation> reservations;
-    private Scanner scanner;
+class HistoryArchive {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_RECORDS = 1 << CHUNK_BITS;
+    private static final int ID = 0;
+    private static final int TOTAL = ID + 8 * CHUNK_RECORDS;
+    private static final int DISCOUNT = TOTAL + 8 * CHUNK_RECORDS;
+    private static final int RETAINED = DISCOUNT + 8 * CHUNK_RECORDS;
+    private static final int BOOKED_AT = RETAINED + 8 * CHUNK_RECORDS;
+    private static final int CHECK_IN = BOOKED_AT + 8 * CHUNK_RECORDS;
+    private static final int NIGHTS = CHECK_IN + 4 * CHUNK_RECORDS;
+    private static final int PREVIOUS = NIGHTS + 2 * CHUNK_RECORDS;
+    private static final int CUSTOMER = PREVIOUS + 4 * CHUNK_RECORDS;
+    private static final int HOTEL = CUSTOMER + 4 * CHUNK_RECORDS;
+    private static final int ROOM = HOTEL + 4 * CHUNK_RECORDS;
+    private static final int PAYMENT = ROOM + 4 * CHUNK_RECORDS;
+    private static final int STATUS = PAYMENT + CHUNK_RECORDS;
+    private static final int GUESTS = STATUS + CHUNK_RECORDS;
+    private static final int CHUNK_BYTES = GUESTS + CHUNK_RECORDS;
 
-    public ReservationSystem() {
-        this.hotels = new ArrayList<>();
-        this.customers = new ArrayList<>();
-        this.reservations = new ArrayList<>();
-        this.scanner = new Scanner(System.in);
-        setupHotels();
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final List<Customer> customers = new ArrayList<>();
+    private final Map<Customer, Integer> customerCodes = new IdentityHashMap<>();
+    private final List<Hotel> hotels = new ArrayList<>();
+    private final Map<Hotel, Integer> hotelCodes = new IdentityHashMap<>();
+    private final List<String> labels = new ArrayList<>();
+    private final Map<String, Integer> labelCodes = new HashMap<>();
+    private final List<ReservationRepository> repositories = new CopyOnWriteArrayList<>();
+    private int size;
+
+    public synchronized int size() { return size; }
+    public synchronized long getOffHeapBytes() { return (long) chunks.size() * CHUNK_BYTES; }
+
+    void register(ReservationRepository repository) {
+        repositories.add(repository);
     }
 
-    private void setupHotels() {
-        Hotel taj = new Hotel("The Taj Palace", "Mumbai");
-        taj.setAddress("Apollo Bunder, Mumbai 400001");
-        taj.setPhone("+91-22-6665-3366");
-        hotels.add(taj);
+    public int append(Reservation stay, int previous) {
+        int record = write(stay, previous);
+        for (ReservationRepository repository : repositories) {
+            repository.evict(stay);
+        }
+        return record;
+    }
 
-        Hotel oberoi = new Hotel("The Oberoi", "New Delhi");
-        oberoi.setAddress("Connaught Place, New Delhi 110001");
-        oberoi.setPhone("+91-11-2389-0606");
-        hotels.add(oberoi);
+    private synchronized int write(Reservation stay, int previous) {
+        if (size == chunks.size() * CHUNK_RECORDS) {
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_BYTES));
+        }
+        ByteBuffer chunk = chunks.get(size >>> CHUNK_BITS);
+        int slot = size & (CHUNK_RECORDS - 1);
+        Hotel hotel = stay.getHotel();
+        chunk.putLong(ID + 8 * slot, stay.getId());
+        chunk.putLong(TOTAL + 8 * slot, stay.getTotalAmount());
+        chunk.putLong(DISCOUNT + 8 * slot, stay.getDiscount());
+        chunk.putLong(RETAINED + 8 * slot, stay.getRetainedFee());
+        chunk.putLong(BOOKED_AT + 8 * slot, stay.getBookingTime().toEpochSecond(ZoneOffset.UTC));
+        chunk.putInt(CHECK_IN + 4 * slot, (int) stay.getCheckIn().toEpochDay());
+        chunk.putShort(NIGHTS + 2 * slot, (short) ChronoUnit.DAYS.between(stay.getCheckIn(), stay.getCheckOut()));
+        chunk.putInt(PREVIOUS + 4 * slot, previous);
+        chunk.putInt(CUSTOMER + 4 * slot, code(stay.getCustomer(), customers, customerCodes));
+        chunk.putInt(HOTEL + 4 * slot, code(hotel, hotels, hotelCodes));
+        chunk.putInt(ROOM + 4 * slot, hotel.roomRef(stay.getRoom()));
+        chunk.put(PAYMENT + slot, (byte) label(stay.getPaymentMethod()));
+        chunk.put(STATUS + slot, (byte) label(stay.getStatus()));
+        chunk.put(GUESTS + slot, (byte) stay.getGuests());
+        return size++;
+    }
 
-        Hotel leela = new Hotel("The Leela", "Bangalore");
-        leela.setAddress("HAL Airport Road, Bangalore 560008");
-        leela.setPhone("+91-80-2521-1234");
-        hotels.add(leela);
+    public synchronized void read(int head, int skip, int limit, List<Reservation> out) {
+        int record = head;
+        for (int skipped = 0; record >= 0 && skipped < skip; skipped++) {
+            record = chunks.get(record >>> CHUNK_BITS).getInt(PREVIOUS + 4 * (record & (CHUNK_RECORDS - 1)));
+        }
+        for (int read = 0; record >= 0 && read < limit; read++) {
+            out.add(get(record));
+            record = chunks.get(record >>> CHUNK_BITS).getInt(PREVIOUS + 4 * (record & (CHUNK_RECORDS - 1)));
+        }
+    }
 
-        Hotel itc = new Hotel("ITC Grand", "Chennai");
-        itc.setAddress("Mount Road, Chennai 600032");
-        itc.setPhone("+91-44-2220-0000");
-        hotels.add(itc);
+    public void forEach(Consumer<Reservation> action) {
+        for (int record = 0, end = size(); record < end; record++) {
+            action.accept(get(record));
+        }
+    }
 
-        Hotel hyatt = new Hotel("Grand Hyatt", "Goa");
-        hyatt.setAddress("Bambolim Beach, Goa 403206");
-        hyatt.setPhone("+91-832-2721-234");
-        hotels.add(hyatt);
+    public synchronized Reservation get(int record) {
+        ByteBuffer chunk = chunks.get(record >>> CHUNK_BITS);
+        int slot = record & (CHUNK_RECORDS - 1);
+        Hotel hotel = hotels.get(chunk.getInt(HOTEL + 4 * slot));
+        LocalDate checkIn = LocalDate.ofEpochDay(chunk.getInt(CHECK_IN + 4 * slot));
+        Reservation stay = new Reservation(chunk.getLong(ID + 8 * slot),
+                customers.get(chunk.getInt(CUSTOMER + 4 * slot)), hotel,
+                hotel.roomAt(chunk.getInt(ROOM + 4 * slot)), checkIn,
+                checkIn.plusDays(chunk.getShort(NIGHTS + 2 * slot)), chunk.get(GUESTS + slot),
+                chunk.getLong(TOTAL + 8 * slot) + chunk.getLong(DISCOUNT + 8 * slot),
+                chunk.getLong(DISCOUNT + 8 * slot), chunk.getLong(TOTAL + 8 * slot),
+                LocalDateTime.ofEpochSecond(chunk.getLong(BOOKED_AT + 8 * slot), 0, ZoneOffset.UTC));
+        stay.setPaymentMethod(labels.get(chunk.get(PAYMENT + slot) & 0xFF));
+        stay.setStatus(labels.get(chunk.get(STATUS + slot) & 0xFF));
+        stay.setRetainedFee(chunk.getLong(RETAINED + 8 * slot));
+        return stay;
     }
 
-    public void start() {
-        System.out.println("\n╔════════════════════════════════════════╗");
-        System.out.println("║   HOTEL RESERVATION SYSTEM             ║");
-        System.out.println("╚════════════════════════════════════════╝\n");
+    private static <T> int code(T value, List<T> values, Map<T, Integer> codes) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            values.add(value);
+            codes.put(value, code);
+        }
+        return code;
+    }
 
-        while (true) {
-            System.out.println("\n--- MAIN MENU ---");
-            System.out.println("1. Book a Room");
-            System.out.println("2. View My Bookings");
-            System.out.println("3. Cancel Booking");
-            System.out.println("4. Check Availability");
-            System.out.println("5. View Hotels");
-            System.out.println("6. Loyalty Program");
-            System.out.println("7. Exit");
-            System.out.print("\nChoose option: ");
+    private int label(String value) {
+        String key = value == null ? "" : value;
+        Integer code = labelCodes.get(key);
+        if (code == null) {
+            if (labels.size() == 256) throw new IllegalStateException("Too many distinct history labels");
+            code = labels.size();
+            labels.add(key);
+            labelCodes.put(key, code);
+        }
+        return code;
+    }
+}
 
-            int choice = getInt();
+final class Amenity {
+    private static final Map<String, Integer> BITS = new ConcurrentHashMap<>();
+    private static final String[] NAMES = new String[64];
+
+    private Amenity() {}
+
+    public static synchronized long bit(String name) {
+        Integer bit = BITS.get(normalize(name));
+        if (bit == null) {
+            if (BITS.size() == NAMES.length) {
+                throw new IllegalStateException("Amenity catalog is full");
+            }
+            bit = BITS.size();
+            NAMES[bit] = name;
+            BITS.put(normalize(name), bit);
+        }
+        return 1L << bit;
+    }
+
+    public static long lookup(String... names) {
+        long mask = 0;
+        for (String name : names) {
+            Integer bit = BITS.get(normalize(name));
+            if (bit == null) {
+                throw new IllegalArgumentException("Unknown amenity: " + name.trim());
+            }
+            mask |= 1L << bit;
+        }
+        return mask;
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public static long mask(String... names) {
+        long mask = 0;
+        for (String name : names) {
+            mask |= bit(name);
+        }
+        return mask;
+    }
+
+    public static List<String> names(long mask) {
+        List<String> names = new ArrayList<>(Long.bitCount(mask));
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            names.add(NAMES[Long.numberOfTrailingZeros(bits)]);
+        }
+        return names;
+    }
+}
+
+final class RoomType {
+    private static final Map<String, RoomType> BY_NAME = new ConcurrentHashMap<>();
+    private static volatile RoomType[] types = new RoomType[0];
+
+    public static final RoomType STANDARD = register("Standard", Money.units(100), 2, "WiFi", "TV", "Mini Fridge");
+    public static final RoomType DELUXE = register("Deluxe", Money.units(180), 3, "WiFi", "Smart TV", "Mini Bar", "Balcony");
+    public static final RoomType SUITE = register("Suite", Money.units(300), 4,
+            "WiFi", "Smart TV", "Kitchen", "Living Room", "Jacuzzi");
+
+    private final int ordinal;
+    private final String name;
+    private final long pricePerNight;
+    private final int maxGuests;
+    private final long amenityMask;
+    private final List<String> amenities;
+
+    private RoomType(int ordinal, String name, long pricePerNight, int maxGuests, String... amenities) {
+        this.ordinal = ordinal;
+        this.name = name;
+        this.pricePerNight = pricePerNight;
+        this.maxGuests = maxGuests;
+        this.amenityMask = Amenity.mask(amenities);
+        this.amenities = List.of(amenities);
+    }
+
+    public static synchronized RoomType register(String name, long pricePerNight, int maxGuests,
+                                                 String... amenities) {
+        if (BY_NAME.containsKey(name)) {
+            throw new IllegalArgumentException("Room type already registered: " + name);
+        }
+        RoomType type = new RoomType(types.length, name, pricePerNight, maxGuests, amenities);
+        RoomType[] next = Arrays.copyOf(types, types.length + 1);
+        next[type.ordinal] = type;
+        BY_NAME.put(name, type);
+        types = next;
+        return type;
+    }
+
+    public static RoomType byName(String name) { return BY_NAME.get(name); }
+    public static RoomType byOrdinal(int ordinal) { return types[ordinal]; }
+    public static int count() { return types.length; }
+    public static List<RoomType> all() { return List.of(types); }
+
+    public int ordinal() { return ordinal; }
+    public String getName() { return name; }
+    public long getPricePerNight() { return pricePerNight; }
+    public int getMaxGuests() { return maxGuests; }
+    public long getAmenityMask() { return amenityMask; }
+    public List<String> getAmenities() { return amenities; }
+}
+
+final class Room {
+    private final String roomNumber;
+    private final short typeOrdinal;
+    private int index = -1;
+
+    public Room(String roomNumber, RoomType type) {
+        this.roomNumber = roomNumber;
+        this.typeOrdinal = (short) type.ordinal();
+    }
+
+    public static Room of(String type, String number) {
+        RoomType roomType = RoomType.byName(type);
+        if (roomType == null) {
+            throw new IllegalArgumentException("Unknown room type: " + type);
+        }
+        return new Room(number, roomType);
+    }
+
+    public long calculatePrice(int nights) {
+        return Math.multiplyExact(getPricePerNight(), (long) nights);
+    }
+    
+    public String getRoomNumber() { return roomNumber; }
+    public RoomType getRoomType() { return RoomType.byOrdinal(typeOrdinal); }
+    public int getTypeOrdinal() { return typeOrdinal; }
+    public String getType() { return getRoomType().getName(); }
+    public long getPricePerNight() { return getRoomType().getPricePerNight(); }
+    public int getMaxGuests() { return getRoomType().getMaxGuests(); }
+    public List<String> getAmenities() { return getRoomType().getAmenities(); }
+
+    public boolean hasAmenities(long mask) {
+        return (getRoomType().getAmenityMask() & mask) == mask;
+    }
+    
+    int getIndex() { return index; }
+    void setIndex(int index) { this.index = index; }
+    public boolean isAssigned() { return index >= 0; }
+    
+    public void showDetails() {
+        System.out.println("\nRoom " + roomNumber + " - " + getType());
+        System.out.println("Price: " + Money.format(getPricePerNight(), Money.DEFAULT_CURRENCY) + "/night");
+        System.out.println("Max Guests: " + getMaxGuests());
+        System.out.println("Amenities: " + String.join(", ", getAmenities()));
+    }
+}
+
+class AvailabilityCalendar {
+    private final int horizonDays;
+    private final int roomCount;
+    private final int wordsPerNight;
+    private final AtomicLongArray occupied;
+    private volatile long firstDay;
+
+    public AvailabilityCalendar(LocalDate start, int horizonDays, int roomCount) {
+        this.firstDay = start.toEpochDay();
+        this.horizonDays = horizonDays;
+        this.roomCount = roomCount;
+        this.wordsPerNight = (roomCount + 63) >>> 6;
+        this.occupied = new AtomicLongArray(horizonDays * wordsPerNight);
+    }
+
+    public static long[] newRoomSet(int roomCount) {
+        return new long[(roomCount + 63) >>> 6];
+    }
+
+    public LocalDate getStart() { return LocalDate.ofEpochDay(firstDay); }
+    public LocalDate getEnd() { return LocalDate.ofEpochDay(firstDay + horizonDays); }
+    public int getHorizonDays() { return horizonDays; }
+    public int getRoomCount() { return roomCount; }
+    public int getWordsPerNight() { return wordsPerNight; }
+
+    long getWord(int night, int word) {
+        return occupied.get(slot(firstDay + night) * wordsPerNight + word);
+    }
+
+    void occupyWord(LocalDate date, int word, long bits) {
+        long day = date.toEpochDay();
+        long first = firstDay;
+        if (bits == 0 || day < first || day >= first + horizonDays) return;
+        occupied.getAndUpdate(slot(day) * wordsPerNight + word, v -> v | bits);
+    }
+
+    void advanceTo(LocalDate start) {
+        long first = start.toEpochDay();
+        long current = firstDay;
+        if (first <= current) return;
+        for (long day = Math.max(current + horizonDays, first); day < first + horizonDays; day++) {
+            int base = slot(day) * wordsPerNight;
+            for (int w = 0; w < wordsPerNight; w++) {
+                occupied.set(base + w, 0);
+            }
+        }
+        firstDay = first;
+    }
+
+    public boolean covers(LocalDate from, LocalDate to) {
+        long start = firstDay;
+        long first = from.toEpochDay() - start;
+        long last = to.toEpochDay() - start;
+        return first >= 0 && last <= horizonDays && first < last;
+    }
+
+    public long[] freeRooms(LocalDate from, LocalDate to, long[] mask) {
+        long[] free = mask.clone();
+        for (long day = day(from), last = day(to); day < last; day++) {
+            int base = slot(day) * wordsPerNight;
+            for (int w = 0; w < wordsPerNight; w++) {
+                free[w] &= ~occupied.get(base + w);
+            }
+        }
+        return free;
+    }
+
+    public void retainFree(LocalDate from, LocalDate to, long[] rooms, int wordOffset) {
+        for (long day = day(from), last = day(to); day < last; day++) {
+            int base = slot(day) * wordsPerNight;
+            for (int w = 0; w < wordsPerNight; w++) {
+                rooms[wordOffset + w] &= ~occupied.get(base + w);
+            }
+        }
+    }
+
+    public int countFree(LocalDate from, LocalDate to, long[] mask) {
+        long first = day(from);
+        int nights = (int) (day(to) - first);
+        int start = slot(first);
+        int count = 0;
+        for (int w = 0; w < wordsPerNight; w++) {
+            long free = mask[w];
+            for (int n = 0, s = start; n < nights && free != 0; n++) {
+                free &= ~occupied.get(s * wordsPerNight + w);
+                if (++s == horizonDays) s = 0;
+            }
+            count += Long.bitCount(free);
+        }
+        return count;
+    }
+
+    public boolean isFree(int room, LocalDate from, LocalDate to) {
+        int word = room >>> 6;
+        long bit = 1L << room;
+        for (long day = day(from), last = day(to); day < last; day++) {
+            if ((occupied.get(slot(day) * wordsPerNight + word) & bit) != 0) return false;
+        }
+        return true;
+    }
+
+    public void gapNights(int word, long rooms, LocalDate from, LocalDate to, int window, int[] gaps) {
+        long start = firstDay;
+        long first = day(from);
+        long last = day(to);
+        long open = rooms;
+        for (int d = 1; d <= window && first - d >= start && open != 0; d++) {
+            long hit = occupied.get(slot(first - d) * wordsPerNight + word) & open;
+            for (long bits = hit; bits != 0; bits &= bits - 1) {
+                gaps[Long.numberOfTrailingZeros(bits)] = d - 1;
+            }
+            open &= ~hit;
+        }
+        for (long bits = open; bits != 0; bits &= bits - 1) {
+            gaps[Long.numberOfTrailingZeros(bits)] = window;
+        }
+        open = rooms;
+        for (int d = 0; d < window && last + d < start + horizonDays && open != 0; d++) {
+            long hit = occupied.get(slot(last + d) * wordsPerNight + word) & open;
+            for (long bits = hit; bits != 0; bits &= bits - 1) {
+                gaps[Long.numberOfTrailingZeros(bits)] += d;
+            }
+            open &= ~hit;
+        }
+        for (long bits = open; bits != 0; bits &= bits - 1) {
+            gaps[Long.numberOfTrailingZeros(bits)] += window;
+        }
+    }
+
+    public boolean tryClaim(int room, LocalDate from, LocalDate to) {
+        int word = room >>> 6;
+        long bit = 1L << room;
+        long first = day(from);
+        long last = day(to);
+        for (long day = first; day < last; day++) {
+            if (!setBit(slot(day) * wordsPerNight + word, bit)) {
+                for (long undo = first; undo < day; undo++) {
+                    clearBit(slot(undo) * wordsPerNight + word, bit);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void occupy(int room, LocalDate from, LocalDate to) {
+        int word = room >>> 6;
+        long bit = 1L << room;
+        for (long day = clamp(from), last = clamp(to); day < last; day++) {
+            occupied.getAndUpdate(slot(day) * wordsPerNight + word, v -> v | bit);
+        }
+    }
+
+    public void release(int room, LocalDate from, LocalDate to) {
+        int word = room >>> 6;
+        long bit = 1L << room;
+        for (long day = clamp(from), last = clamp(to); day < last; day++) {
+            clearBit(slot(day) * wordsPerNight + word, bit);
+        }
+    }
+
+    private boolean setBit(int index, long bit) {
+        while (true) {
+            long current = occupied.get(index);
+            if ((current & bit) != 0) return false;
+            if (occupied.compareAndSet(index, current, current | bit)) return true;
+        }
+    }
+
+    private void clearBit(int index, long bit) {
+        while (true) {
+            long current = occupied.get(index);
+            if (occupied.compareAndSet(index, current, current & ~bit)) return;
+        }
+    }
+
+    private long day(LocalDate date) {
+        long day = date.toEpochDay();
+        long first = firstDay;
+        if (day < first || day > first + horizonDays) {
+            throw new IllegalArgumentException("Date outside booking horizon: " + date);
+        }
+        return day;
+    }
+
+    private long clamp(LocalDate date) {
+        long first = firstDay;
+        return Math.max(first, Math.min(first + horizonDays, date.toEpochDay()));
+    }
+
+    private int slot(long day) {
+        return Math.floorMod(day, horizonDays);
+    }
+}
+
+interface PricingRule {
+    double factor(RoomType type, LocalDate night, double occupancy);
+
+    static PricingRule daysOfWeek(double factor, DayOfWeek... days) {
+        EnumSet<DayOfWeek> matching = EnumSet.copyOf(Arrays.asList(days));
+        return (type, night, occupancy) -> matching.contains(night.getDayOfWeek()) ? factor : 1.0;
+    }
+
+    static PricingRule season(MonthDay from, MonthDay to, double factor) {
+        boolean wraps = from.isAfter(to);
+        return (type, night, occupancy) -> {
+            MonthDay day = MonthDay.from(night);
+            boolean inSeason = wraps
+                    ? !day.isBefore(from) || !day.isAfter(to)
+                    : !day.isBefore(from) && !day.isAfter(to);
+            return inSeason ? factor : 1.0;
+        };
+    }
+
+    static PricingRule occupancySurge(double threshold, double factor) {
+        return (type, night, occupancy) -> occupancy >= threshold ? factor : 1.0;
+    }
+}
+
+final class PricingEngine {
+    public static final PricingEngine STANDARD = builder()
+            .addRule(PricingRule.daysOfWeek(1.20, DayOfWeek.FRIDAY, DayOfWeek.SATURDAY))
+            .addRule(PricingRule.season(MonthDay.of(10, 15), MonthDay.of(1, 15), 1.25))
+            .addRule(PricingRule.season(MonthDay.of(6, 15), MonthDay.of(9, 15), 0.85))
+            .addRule(PricingRule.occupancySurge(0.80, 1.15))
+            .addRule(PricingRule.occupancySurge(0.95, 1.15))
+            .lengthOfStay(7, 0.95)
+            .lengthOfStay(14, 0.90)
+            .build();
+
+    private final List<PricingRule> rules;
+    private final int[] stayNights;
+    private final int[] stayBasisPoints;
+
+    private PricingEngine(Builder builder) {
+        this.rules = List.copyOf(builder.rules);
+        this.stayNights = new int[builder.stays.size()];
+        this.stayBasisPoints = new int[builder.stays.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> stay : builder.stays.entrySet()) {
+            stayNights[i] = stay.getKey();
+            stayBasisPoints[i++] = stay.getValue();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private final List<PricingRule> rules = new ArrayList<>();
+        private final TreeMap<Integer, Integer> stays = new TreeMap<>();
+
+        private Builder() {}
+
+        public Builder addRule(PricingRule rule) {
+            rules.add(Objects.requireNonNull(rule));
+            return this;
+        }
+
+        public Builder lengthOfStay(int minNights, double factor) {
+            stays.put(minNights, Money.basisPoints(factor));
+            return this;
+        }
+
+        public PricingEngine build() {
+            return new PricingEngine(this);
+        }
+    }
+
+    public long nightlyRate(RoomType type, LocalDate night, double occupancy) {
+        double factor = 1.0;
+        for (int i = 0; i < rules.size(); i++) {
+            factor *= rules.get(i).factor(type, night, occupancy);
+        }
+        return Money.scale(type.getPricePerNight(), factor);
+    }
+
+    public long stayTotal(long nightlyTotal, int nights) {
+        int basisPoints = 10_000;
+        for (int i = 0; i < stayNights.length && stayNights[i] <= nights; i++) {
+            basisPoints = stayBasisPoints[i];
+        }
+        return Money.percent(nightlyTotal, basisPoints);
+    }
+}
+
+final class CancellationPolicy {
+    public static final CancellationPolicy STANDARD = builder(2, 0.50)
+            .feeFrom(7, 0.0)
+            .feeFrom(2, 0.25)
+            .build();
+
+    private final int deadlineDays;
+    private final int lateBasisPoints;
+    private final int[] fromDays;
+    private final int[] basisPoints;
+
+    private CancellationPolicy(Builder builder) {
+        this.deadlineDays = builder.deadlineDays;
+        this.lateBasisPoints = builder.lateBasisPoints;
+        this.fromDays = new int[builder.fees.size()];
+        this.basisPoints = new int[builder.fees.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> fee : builder.fees.entrySet()) {
+            fromDays[i] = fee.getKey();
+            basisPoints[i++] = fee.getValue();
+        }
+    }
+
+    public static Builder builder(int deadlineDays, double lateFee) {
+        return new Builder(deadlineDays, lateFee);
+    }
+
+    public static final class Builder {
+        private final int deadlineDays;
+        private final int lateBasisPoints;
+        private final TreeMap<Integer, Integer> fees = new TreeMap<>();
+
+        private Builder(int deadlineDays, double lateFee) {
+            if (deadlineDays < 0) throw new IllegalArgumentException("Deadline must not be negative");
+            this.deadlineDays = deadlineDays;
+            this.lateBasisPoints = feeBasisPoints(lateFee);
+        }
+
+        public Builder feeFrom(int daysBeforeCheckIn, double fee) {
+            if (daysBeforeCheckIn < 0) throw new IllegalArgumentException("Days before check-in must not be negative");
+            fees.put(daysBeforeCheckIn, feeBasisPoints(fee));
+            return this;
+        }
+
+        public CancellationPolicy build() {
+            return new CancellationPolicy(this);
+        }
+    }
+
+    private static int feeBasisPoints(double fee) {
+        if (fee < 0 || fee > 1) throw new IllegalArgumentException("Fee must be between 0 and 1");
+        return Money.basisPoints(fee);
+    }
+
+    public int getDeadlineDays() { return deadlineDays; }
+
+    public boolean allows(long daysBeforeCheckIn) {
+        return daysBeforeCheckIn >= deadlineDays;
+    }
+
+    public int feeBasisPoints(long daysBeforeCheckIn) {
+        int fee = lateBasisPoints;
+        for (int i = 0; i < fromDays.length && fromDays[i] <= daysBeforeCheckIn; i++) {
+            fee = basisPoints[i];
+        }
+        return fee;
+    }
+
+    public long fee(long totalAmount, long daysBeforeCheckIn) {
+        return Money.percent(totalAmount, feeBasisPoints(daysBeforeCheckIn));
+    }
+
+    int horizon() {
+        return Math.max(deadlineDays, fromDays.length == 0 ? 0 : fromDays[fromDays.length - 1]);
+    }
+}
+
+final class AvailabilitySnapshot {
+    private static final int CHUNK_BITS = 5;
+    private static final int CHUNK_NIGHTS = 1 << CHUNK_BITS;
+
+    private final long firstDay;
+    private final int nights;
+    private final int[] capacity;
+    private final int[][] chunks;
+    private final long version;
+
+    private AvailabilitySnapshot(long firstDay, int nights, int[] capacity, int[][] chunks, long version) {
+        this.firstDay = firstDay;
+        this.nights = nights;
+        this.capacity = capacity;
+        this.chunks = chunks;
+        this.version = version;
+    }
+
+    static AvailabilitySnapshot of(AvailabilityCalendar calendar, long[][] typeIndex, long version) {
+        int types = typeIndex.length;
+        int nights = calendar.getHorizonDays();
+        int words = calendar.getWordsPerNight();
+        int[] capacity = new int[types];
+        for (int t = 0; t < types; t++) {
+            if (typeIndex[t] == null) continue;
+            for (long bits : typeIndex[t]) capacity[t] += Long.bitCount(bits);
+        }
+        int[][] chunks = new int[(nights + CHUNK_NIGHTS - 1) >>> CHUNK_BITS][];
+        for (int c = 0; c < chunks.length; c++) {
+            int[] chunk = new int[types << CHUNK_BITS];
+            for (int t = 0; t < types; t++) {
+                long[] mask = typeIndex[t];
+                for (int i = 0; i < CHUNK_NIGHTS; i++) {
+                    int n = (c << CHUNK_BITS) + i;
+                    if (mask == null || n >= nights) continue;
+                    int sold = 0;
+                    for (int w = 0; w < words; w++) sold += Long.bitCount(calendar.getWord(n, w) & mask[w]);
+                    chunk[(t << CHUNK_BITS) + i] = capacity[t] - sold;
+                }
+            }
+            chunks[c] = chunk;
+        }
+        return new AvailabilitySnapshot(calendar.getStart().toEpochDay(), nights, capacity, chunks, version);
+    }
+
+    public long getVersion() { return version; }
+    public int getCapacity(int type) { return type < capacity.length ? capacity[type] : 0; }
+
+    public int night(LocalDate date) {
+        return (int) Math.max(0, Math.min(nights, date.toEpochDay() - firstDay));
+    }
+
+    public int free(int type, int night) {
+        if (type >= capacity.length || night < 0 || night >= nights) return 0;
+        return chunks[night >>> CHUNK_BITS][(type << CHUNK_BITS) + (night & (CHUNK_NIGHTS - 1))];
+    }
+
+    public int minFree(int type, int first, int last) {
+        if (type >= capacity.length || first >= last) return 0;
+        int min = capacity[type];
+        for (int n = first; n < last && min > 0; n++) {
+            min = Math.min(min, chunks[n >>> CHUNK_BITS][(type << CHUNK_BITS) + (n & (CHUNK_NIGHTS - 1))]);
+        }
+        return min;
+    }
+
+    AvailabilitySnapshot adjust(int type, int first, int last, int delta) {
+        int[][] next = chunks.clone();
+        for (int c = first >>> CHUNK_BITS; first < last && c <= (last - 1) >>> CHUNK_BITS; c++) {
+            int[] chunk = chunks[c].clone();
+            int from = Math.max(first, c << CHUNK_BITS);
+            int to = Math.min(last, (c + 1) << CHUNK_BITS);
+            for (int n = from; n < to; n++) chunk[(type << CHUNK_BITS) + (n & (CHUNK_NIGHTS - 1))] -= delta;
+            next[c] = chunk;
+        }
+        return new AvailabilitySnapshot(firstDay, nights, capacity, next, version + 1);
+    }
+}
+
+class RateCalendar {
+    private final PricingEngine engine;
+    private final int horizonDays;
+    private final int[] capacity;
+    private final int[][] sold;
+    private final AtomicLongArray[] rates;
+    private volatile long firstDay;
+
+    public RateCalendar(PricingEngine engine, LocalDate start, int horizonDays, int[] capacity) {
+        this.engine = engine;
+        this.firstDay = start.toEpochDay();
+        this.horizonDays = horizonDays;
+        this.capacity = capacity;
+        this.sold = new int[capacity.length][];
+        this.rates = new AtomicLongArray[capacity.length];
+        for (int type = 0; type < capacity.length; type++) {
+            if (capacity[type] == 0) continue;
+            sold[type] = new int[horizonDays];
+            rates[type] = new AtomicLongArray(horizonDays);
+            for (long day = firstDay; day < firstDay + horizonDays; day++) reprice(type, day);
+        }
+    }
+
+    public PricingEngine getEngine() { return engine; }
+
+    public long rate(RoomType type, LocalDate night) {
+        long day = night.toEpochDay();
+        long first = firstDay;
+        int t = type.ordinal();
+        if (t >= rates.length || rates[t] == null || day < first || day >= first + horizonDays) {
+            return engine.nightlyRate(type, night, 0);
+        }
+        return rates[t].get(slot(day));
+    }
+
+    public long quote(RoomType type, LocalDate from, LocalDate to) {
+        long start = firstDay;
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        int t = type.ordinal();
+        if (t >= rates.length || rates[t] == null || first < start || last > start + horizonDays) {
+            long total = 0;
+            for (LocalDate night = from; night.isBefore(to); night = night.plusDays(1)) {
+                total += rate(type, night);
+            }
+            return engine.stayTotal(total, (int) (last - first));
+        }
+        AtomicLongArray row = rates[t];
+        long total = 0;
+        for (long day = first; day < last; day++) {
+            total += row.get(slot(day));
+        }
+        return engine.stayTotal(total, (int) (last - first));
+    }
+
+    public void adjust(int type, LocalDate from, LocalDate to, int delta) {
+        if (sold[type] == null) return;
+        long first = clamp(from);
+        long last = clamp(to);
+        synchronized (sold[type]) {
+            for (long day = first; day < last; day++) {
+                sold[type][slot(day)] += delta;
+                reprice(type, day);
+            }
+        }
+    }
+
+    public void advanceTo(LocalDate start) {
+        long first = start.toEpochDay();
+        long current = firstDay;
+        if (first <= current) return;
+        for (int type = 0; type < sold.length; type++) {
+            if (sold[type] == null) continue;
+            synchronized (sold[type]) {
+                for (long day = Math.max(current + horizonDays, first); day < first + horizonDays; day++) {
+                    sold[type][slot(day)] = 0;
+                    reprice(type, day);
+                }
+            }
+        }
+        firstDay = first;
+    }
+
+    public void recount(AvailabilityCalendar calendar, long[][] typeIndex) {
+        advanceTo(calendar.getStart());
+        long first = firstDay;
+        int words = calendar.getWordsPerNight();
+        for (int type = 0; type < sold.length; type++) {
+            long[] mask = type < typeIndex.length ? typeIndex[type] : null;
+            if (sold[type] == null || mask == null) continue;
+            synchronized (sold[type]) {
+                for (int n = 0; n < horizonDays; n++) {
+                    int count = 0;
+                    for (int w = 0; w < words; w++) {
+                        count += Long.bitCount(calendar.getWord(n, w) & mask[w]);
+                    }
+                    int s = slot(first + n);
+                    if (count != sold[type][s]) {
+                        sold[type][s] = count;
+                        reprice(type, first + n);
+                    }
+                }
+            }
+        }
+    }
+
+    private void reprice(int type, long day) {
+        int s = slot(day);
+        double occupancy = (double) sold[type][s] / capacity[type];
+        rates[type].set(s, engine.nightlyRate(RoomType.byOrdinal(type), LocalDate.ofEpochDay(day), occupancy));
+    }
+
+    private long clamp(LocalDate date) {
+        long first = firstDay;
+        return Math.max(first, Math.min(first + horizonDays, date.toEpochDay()));
+    }
+
+    private int slot(long day) {
+        return Math.floorMod(day, horizonDays);
+    }
+}
+
+class Hotel {
+    private long hotelId;
+    private String name;
+    private String location;
+    private String address;
+    private String phone;
+    private List<Room> rooms;
+    private List<String> facilities;
+    private long[][] typeIndex;
+    private Room[] unassigned;
+    private volatile int[] overbooking;
+    private volatile AtomicIntegerArray oversold;
+    private AvailabilityCalendar calendar;
+    private Currency currency = Money.DEFAULT_CURRENCY;
+    private PricingEngine pricing = PricingEngine.STANDARD;
+    private volatile CancellationPolicy cancellation = CancellationPolicy.STANDARD;
+    private volatile CancellationPolicy[] ratePlanCancellation = new CancellationPolicy[0];
+    private volatile RateCalendar rates;
+    private volatile boolean ratesStale;
+    private final AtomicReference<AvailabilitySnapshot> availability = new AtomicReference<>();
+    private final StampedLock availabilityGuard = new StampedLock();
+    private volatile boolean availabilityStale;
+    private int index = -1;
+
+    public static final int BOOKING_HORIZON_DAYS = 730;
+    private static final Metrics.Timer AVAILABILITY = Metrics.INSTANCE.timer("hotel_availability_seconds",
+            "Room availability lookups");
+    private static final int FIT_WINDOW = 7;
+    private static final int FIT_WORDS = 4;
+    private static final int FIT_SORT_THRESHOLD = 8;
+
+    public Hotel(String name, String location) {
+        this.hotelId = IdGenerator.INSTANCE.nextId();
+        this.name = name;
+        this.location = location;
+        this.rooms = new ArrayList<>();
+        this.facilities = new ArrayList<>();
+        initializeRooms();
+        initializeFacilities();
+        buildAvailabilityIndex(LocalDate.now());
+    }
+
+    public Hotel(String name, String location, List<Room> rooms) {
+        this.hotelId = IdGenerator.INSTANCE.nextId();
+        this.name = name;
+        this.location = location;
+        this.rooms = new ArrayList<>(rooms.size());
+        this.facilities = new ArrayList<>();
+        for (Room room : rooms) {
+            addRoom(room);
+        }
+        initializeFacilities();
+        buildAvailabilityIndex(LocalDate.now());
+    }
+
+    private void initializeRooms() {
+        for (int i = 1; i <= 15; i++) {
+            addRoom(new Room("S" + String.format("%03d", i), RoomType.STANDARD));
+        }
+        for (int i = 1; i <= 10; i++) {
+            addRoom(new Room("D" + String.format("%03d", i), RoomType.DELUXE));
+        }
+        for (int i = 1; i <= 5; i++) {
+            addRoom(new Room("ST" + String.format("%03d", i), RoomType.SUITE));
+        }
+    }
+
+    private void addRoom(Room room) {
+        room.setIndex(rooms.size());
+        rooms.add(room);
+    }
+
+    private void buildAvailabilityIndex(LocalDate start) {
+        calendar = new AvailabilityCalendar(start, BOOKING_HORIZON_DAYS, rooms.size());
+        typeIndex = new long[RoomType.count()][];
+        for (Room room : rooms) {
+            long[] mask = typeIndex[room.getTypeOrdinal()];
+            if (mask == null) {
+                mask = typeIndex[room.getTypeOrdinal()] = AvailabilityCalendar.newRoomSet(rooms.size());
+            }
+            mask[room.getIndex() >>> 6] |= 1L << room.getIndex();
+        }
+        availability.set(AvailabilitySnapshot.of(calendar, typeIndex, 0));
+        unassigned = new Room[typeIndex.length];
+        overbooking = new int[typeIndex.length];
+        for (int t = 0; t < typeIndex.length; t++) {
+            if (typeIndex[t] != null) unassigned[t] = new Room("TBA", RoomType.byOrdinal(t));
+        }
+    }
+
+    private RateCalendar newRateCalendar() {
+        int[] capacity = new int[typeIndex.length];
+        for (Room room : rooms) {
+            capacity[room.getTypeOrdinal()]++;
+        }
+        return new RateCalendar(pricing, calendar.getStart(), calendar.getHorizonDays(), capacity);
+    }
+
+    public synchronized void setPricing(PricingEngine pricing) {
+        this.pricing = pricing;
+        this.rates = null;
+    }
+
+    public PricingEngine getPricing() { return pricing; }
+
+    public void setCancellationPolicy(CancellationPolicy policy) {
+        this.cancellation = Objects.requireNonNull(policy);
+    }
+
+    public synchronized void setCancellationPolicy(String roomType, CancellationPolicy policy) {
+        RoomType type = RoomType.byName(roomType);
+        if (type == null) throw new IllegalArgumentException("Unknown room type: " + roomType);
+        CancellationPolicy[] plans = Arrays.copyOf(ratePlanCancellation,
+                Math.max(ratePlanCancellation.length, type.ordinal() + 1));
+        plans[type.ordinal()] = policy;
+        ratePlanCancellation = plans;
+    }
+
+    public CancellationPolicy getCancellationPolicy(RoomType type) {
+        CancellationPolicy[] plans = ratePlanCancellation;
+        int ordinal = type.ordinal();
+        CancellationPolicy plan = ordinal < plans.length ? plans[ordinal] : null;
+        return plan != null ? plan : cancellation;
+    }
+    public Currency getCurrency() { return currency; }
+    public void setCurrency(Currency currency) {
+        if (!Money.supports(currency)) {
+            throw new IllegalArgumentException("Unsupported currency " + currency.getCurrencyCode()
+                    + ": amounts are kept with " + Money.FRACTION_DIGITS + " decimal places");
+        }
+        this.currency = currency;
+    }
+
+    void invalidateRates() {
+        ratesStale = true;
+        availabilityStale = true;
+    }
+
+    public AvailabilitySnapshot getAvailability() {
+        if (availabilityStale) {
+            synchronized (this) {
+                if (availabilityStale) {
+                    long stamp = availabilityGuard.writeLock();
+                    try {
+                        availabilityStale = false;
+                        availability.set(AvailabilitySnapshot.of(calendar, typeIndex,
+                                availability.get().getVersion() + 1));
+                    } finally {
+                        availabilityGuard.unlockWrite(stamp);
+                    }
+                }
+            }
+        }
+        return availability.get();
+    }
+
+    private boolean claim(RateCalendar rates, int index, LocalDate checkIn, LocalDate checkOut) {
+        if (!calendar.tryClaim(index, checkIn, checkOut)) return false;
+        sold(rates, rooms.get(index).getTypeOrdinal(), checkIn, checkOut, 1);
+        return true;
+    }
+
+    private void sold(RateCalendar rates, int type, LocalDate checkIn, LocalDate checkOut, int delta) {
+        rates.adjust(type, checkIn, checkOut, delta);
+        while (true) {
+            AvailabilitySnapshot current = availability.get();
+            AvailabilitySnapshot next = current.adjust(type, current.night(checkIn), current.night(checkOut), delta);
+            if (availability.compareAndSet(current, next)) return;
+        }
+    }
+
+    public void advanceCalendar(LocalDate today) {
+        long stamp = availabilityGuard.writeLock();
+        try {
+            long first = today.toEpochDay();
+            long previous = calendar.getStart().toEpochDay();
+            if (first <= previous) return;
+            AtomicIntegerArray counts = oversold;
+            if (counts != null) {
+                int horizon = calendar.getHorizonDays();
+                for (long day = Math.max(previous + horizon, first); day < first + horizon; day++) {
+                    for (int t = 0; t < typeIndex.length; t++) counts.set(oversoldIndex(t, day), 0);
+                }
+            }
+            calendar.advanceTo(today);
+            RateCalendar rates = this.rates;
+            if (rates != null) rates.advanceTo(today);
+            availability.set(AvailabilitySnapshot.of(calendar, typeIndex, availability.get().getVersion() + 1));
+        } finally {
+            availabilityGuard.unlockWrite(stamp);
+        }
+    }
+
+    public int availableOn(String type, LocalDate night) {
+        RoomType roomType = RoomType.byName(type);
+        if (roomType == null) return 0;
+        AvailabilitySnapshot snapshot = getAvailability();
+        return snapshot.free(roomType.ordinal(), snapshot.night(night));
+    }
+
+    private RateCalendar rates() {
+        RateCalendar current = rates;
+        if (current == null || ratesStale) {
+            synchronized (this) {
+                if (rates == null) {
+                    rates = newRateCalendar();
+                    ratesStale = true;
+                }
+                if (ratesStale) {
+                    long stamp = availabilityGuard.writeLock();
+                    try {
+                        rates.recount(calendar, typeIndex);
+                        ratesStale = false;
+                    } finally {
+                        availabilityGuard.unlockWrite(stamp);
+                    }
+                }
+                current = rates;
+            }
+        }
+        return current;
+    }
+
+    public long getNightlyRate(RoomType type, LocalDate night) {
+        return rates().rate(type, night);
+    }
+
+    public long quote(RoomType type, LocalDate checkIn, LocalDate checkOut) {
+        return rates().quote(type, checkIn, checkOut);
+    }
+
+    private void initializeFacilities() {
+        facilities.add("24/7 Reception");
+        facilities.add("Swimming Pool");
+        facilities.add("Gym");
+        facilities.add("Restaurant");
+        facilities.add("Bar");
+        facilities.add("Spa");
+        facilities.add("Free Parking");
+        facilities.add("Room Service");
+    }
+
+    public void setAddress(String address) { this.address = address; }
+    public void setPhone(String phone) { this.phone = phone; }
+    
+    int getIndex() { return index; }
+    void setIndex(int index) { this.index = index; }
+
+    public long getId() { return hotelId; }
+    public String getHotelId() { return IdGenerator.format("HTL", hotelId); }
+    public String getName() { return name; }
+    public String getLocation() { return location; }
+    public String getAddress() { return address; }
+    public String getPhone() { return phone; }
+    public List<Room> getRooms() { return rooms; }
+    AvailabilityCalendar getCalendar() { return calendar; }
+
+    public void displayInfo() {
+        System.out.println("\n========================================");
+        System.out.println("  " + name.toUpperCase());
+        System.out.println("========================================");
+        System.out.println("Location: " + location);
+        System.out.println("Address: " + address);
+        System.out.println("Phone: " + phone);
+        System.out.println("\nFacilities:");
+        for (String facility : facilities) {
+            System.out.println("  - " + facility);
+        }
+        System.out.println("========================================\n");
+    }
+
+    public boolean isBookable(LocalDate checkIn, LocalDate checkOut) {
+        return calendar.covers(checkIn, checkOut);
+    }
+
+    long[] roomsOfType(String type) {
+        RoomType roomType = RoomType.byName(type);
+        if (roomType == null || roomType.ordinal() >= typeIndex.length) return null;
+        return typeIndex[roomType.ordinal()];
+    }
+
+    public List<Room> getAvailableRooms(String type, LocalDate checkIn, LocalDate checkOut) {
+        long started = AVAILABILITY.start();
+        List<Room> available = new ArrayList<>();
+        long[] mask = roomsOfType(type);
+        try {
+            if (mask == null || !isBookable(checkIn, checkOut)) return available;
+
+            long[] free = calendar.freeRooms(checkIn, checkOut, mask);
+            for (int w = 0; w < free.length; w++) {
+                for (long bits = free[w]; bits != 0; bits &= bits - 1) {
+                    available.add(rooms.get((w << 6) + Long.numberOfTrailingZeros(bits)));
+                }
+            }
+            return available;
+        } finally {
+            AVAILABILITY.stop(this, started);
+        }
+    }
+    
+    public int countAvailableRooms(String type, LocalDate checkIn, LocalDate checkOut) {
+        long started = AVAILABILITY.start();
+        long[] mask = roomsOfType(type);
+        try {
+            if (mask == null || !isBookable(checkIn, checkOut)) return 0;
+            AvailabilitySnapshot snapshot = getAvailability();
+            int t = RoomType.byName(type).ordinal();
+            int first = snapshot.night(checkIn);
+            int last = snapshot.night(checkOut);
+            int count = snapshot.minFree(t, first, last);
+            if (count > 0 && last - first > 1) count = calendar.countFree(checkIn, checkOut, mask);
+            return count;
+        } finally {
+            AVAILABILITY.stop(this, started);
+        }
+    }
+
+    public Room claimRoom(String type, LocalDate checkIn, LocalDate checkOut) {
+        List<Room> claimed = claimRooms(type, checkIn, checkOut, 1);
+        return claimed.isEmpty() ? null : claimed.get(0);
+    }
+
+    public List<Room> claimRooms(String type, LocalDate checkIn, LocalDate checkOut, int count) {
+        List<Room> claimed = new ArrayList<>(count);
+        long[] mask = roomsOfType(type);
+        if (mask == null || !isBookable(checkIn, checkOut)) return claimed;
+
+        RateCalendar rates = rates();
+        long stamp = availabilityGuard.readLock();
+        try {
+            if (!isBookable(checkIn, checkOut)) return claimed;
+            while (true) {
+                long[] free = calendar.freeRooms(checkIn, checkOut, mask);
+                for (long candidate : bestFit(free, checkIn, checkOut, count - claimed.size())) {
+                    int index = (int) candidate;
+                    if (claim(rates, index, checkIn, checkOut)) {
+                        claimed.add(rooms.get(index));
+                        if (claimed.size() == count) return claimed;
+                    }
+                }
+                boolean anyFree = false;
+                for (int w = 0; w < free.length; w++) {
+                    for (long bits = free[w]; bits != 0; bits &= bits - 1) {
+                        anyFree = true;
+                        int index = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        if (claim(rates, index, checkIn, checkOut)) {
+                            claimed.add(rooms.get(index));
+                            if (claimed.size() == count) return claimed;
+                        }
+                    }
+                }
+                if (!anyFree) return claimed;
+            }
+        } finally {
+            availabilityGuard.unlockRead(stamp);
+        }
+    }
+
+    public void setOverbooking(String type, int rooms) {
+        RoomType roomType = RoomType.byName(type);
+        if (roomType == null || roomType.ordinal() >= overbooking.length || unassigned[roomType.ordinal()] == null) {
+            throw new IllegalArgumentException("Hotel has no " + type + " rooms");
+        }
+        if (rooms < 0) throw new IllegalArgumentException("Overbooking must not be negative");
+        synchronized (this) {
+            int[] limits = overbooking.clone();
+            limits[roomType.ordinal()] = rooms;
+            overbooking = limits;
+        }
+    }
+
+    public int getOverbooking(String type) {
+        RoomType roomType = RoomType.byName(type);
+        int[] limits = overbooking;
+        return roomType == null || roomType.ordinal() >= limits.length ? 0 : limits[roomType.ordinal()];
+    }
+
+    public Room overbook(String type, LocalDate checkIn, LocalDate checkOut) {
+        RoomType roomType = RoomType.byName(type);
+        int limit = getOverbooking(type);
+        if (roomType == null || limit == 0 || !isBookable(checkIn, checkOut)) return null;
+        int t = roomType.ordinal();
+        AtomicIntegerArray counts = oversold();
+        long stamp = availabilityGuard.readLock();
+        try {
+            long first = day(checkIn);
+            long last = day(checkOut);
+            for (long day = first; day < last; day++) {
+                int index = oversoldIndex(t, day);
+                int count;
+                do {
+                    count = counts.get(index);
+                    if (count >= limit) {
+                        for (long undo = first; undo < day; undo++) counts.decrementAndGet(oversoldIndex(t, undo));
+                        return null;
+                    }
+                } while (!counts.compareAndSet(index, count, count + 1));
+            }
+        } finally {
+            availabilityGuard.unlockRead(stamp);
+        }
+        return unassigned[t];
+    }
+
+    public int countOverbooked(String type, LocalDate night) {
+        RoomType roomType = RoomType.byName(type);
+        AtomicIntegerArray counts = oversold;
+        if (roomType == null || counts == null || roomType.ordinal() >= overbooking.length
+                || !isBookable(night, night.plusDays(1))) return 0;
+        return counts.get(oversoldIndex(roomType.ordinal(), night.toEpochDay()));
+    }
+
+    private AtomicIntegerArray oversold() {
+        AtomicIntegerArray counts = oversold;
+        if (counts == null) {
+            synchronized (this) {
+                if (oversold == null) {
+                    oversold = new AtomicIntegerArray(typeIndex.length * calendar.getHorizonDays());
+                }
+                counts = oversold;
+            }
+        }
+        return counts;
+    }
+
+    private void adjustOversold(Room room, LocalDate checkIn, LocalDate checkOut, int delta) {
+        AtomicIntegerArray counts = oversold();
+        long stamp = availabilityGuard.readLock();
+        try {
+            for (long day = day(checkIn), last = day(checkOut); day < last; day++) {
+                counts.addAndGet(oversoldIndex(room.getTypeOrdinal(), day), delta);
+            }
+        } finally {
+            availabilityGuard.unlockRead(stamp);
+        }
+    }
+
+    private int oversoldIndex(int type, long day) {
+        int horizon = calendar.getHorizonDays();
+        return type * horizon + Math.floorMod(day, horizon);
+    }
+
+    private long day(LocalDate date) {
+        long first = calendar.getStart().toEpochDay();
+        return Math.max(first, Math.min(first + calendar.getHorizonDays(), date.toEpochDay()));
+    }
+
+    int roomRef(Room room) {
+        return room.isAssigned() ? room.getIndex() : -1 - room.getTypeOrdinal();
+    }
+
+    Room roomAt(int ref) {
+        return ref >= 0 ? rooms.get(ref) : unassigned[-1 - ref];
+    }
+
+    private long[] bestFit(long[] free, LocalDate checkIn, LocalDate checkOut, int wanted) {
+        int candidates = 0;
+        int words = 0;
+        for (int w = 0; w < free.length && words < FIT_WORDS; w++) {
+            if (free[w] == 0) continue;
+            candidates += Long.bitCount(free[w]);
+            words++;
+        }
+        boolean keepAll = wanted > FIT_SORT_THRESHOLD;
+        long[] ranked = new long[keepAll ? candidates : Math.min(wanted, candidates)];
+        int[] gaps = new int[64];
+        int kept = 0;
+        int seen = 0;
+        for (int w = 0; w < free.length && seen < candidates; w++) {
+            if (free[w] == 0) continue;
+            calendar.gapNights(w, free[w], checkIn, checkOut, FIT_WINDOW, gaps);
+            for (long bits = free[w]; bits != 0; bits &= bits - 1) {
+                int bit = Long.numberOfTrailingZeros(bits);
+                long fit = (long) gaps[bit] << 32 | (w << 6) + bit;
+                seen++;
+                if (keepAll) {
+                    ranked[kept++] = fit;
+                    continue;
+                }
+                if (kept < ranked.length) {
+                    ranked[kept++] = fit;
+                } else if (fit < ranked[kept - 1]) {
+                    ranked[kept - 1] = fit;
+                } else {
+                    continue;
+                }
+                for (int i = kept - 1; i > 0 && ranked[i] < ranked[i - 1]; i--) {
+                    long swap = ranked[i];
+                    ranked[i] = ranked[i - 1];
+                    ranked[i - 1] = swap;
+                }
+            }
+        }
+        if (keepAll) Arrays.sort(ranked);
+        return ranked;
+    }
+
+    public int gapNights(Room room, LocalDate checkIn, LocalDate checkOut) {
+        int[] gaps = new int[64];
+        calendar.gapNights(room.getIndex() >>> 6, 1L << room.getIndex(), checkIn, checkOut, FIT_WINDOW, gaps);
+        return gaps[room.getIndex() & 63];
+    }
+
+    public Room moveToBestFit(Room current, LocalDate checkIn, LocalDate checkOut) {
+        if (!current.isAssigned() || !isBookable(checkIn, checkOut)) return null;
+        long[] mask = typeIndex[current.getTypeOrdinal()];
+        RateCalendar rates = rates();
+        Room better = null;
+        long stamp = availabilityGuard.readLock();
+        try {
+            if (!isBookable(checkIn, checkOut)) return null;
+            int currentGap = gapNights(current, checkIn, checkOut);
+            for (long candidate : bestFit(calendar.freeRooms(checkIn, checkOut, mask), checkIn, checkOut, 1)) {
+                if ((int) (candidate >>> 32) >= currentGap) break;
+                int index = (int) candidate;
+                if (claim(rates, index, checkIn, checkOut)) {
+                    better = rooms.get(index);
+                    break;
+                }
+            }
+        } finally {
+            availabilityGuard.unlockRead(stamp);
+        }
+        if (better != null) releaseRoom(current, checkIn, checkOut);
+        return better;
+    }
+
+    public void occupyRoom(Room room, LocalDate checkIn, LocalDate checkOut) {
+        if (!room.isAssigned()) {
+            adjustOversold(room, checkIn, checkOut, 1);
+            return;
+        }
+        long stamp = availabilityGuard.readLock();
+        try {
+            calendar.occupy(room.getIndex(), checkIn, checkOut);
+        } finally {
+            availabilityGuard.unlockRead(stamp);
+        }
+        invalidateRates();
+    }
+
+    public void releaseRoom(Room room, LocalDate checkIn, LocalDate checkOut) {
+        if (!room.isAssigned()) {
+            adjustOversold(room, checkIn, checkOut, -1);
+            return;
+        }
+        RateCalendar rates = rates();
+        long stamp = availabilityGuard.readLock();
+        try {
+            calendar.release(room.getIndex(), checkIn, checkOut);
+            sold(rates, room.getTypeOrdinal(), checkIn, checkOut, -1);
+        } finally {
+            availabilityGuard.unlockRead(stamp);
+        }
+    }
+}
+
+class Reservation {
+    private long reservationId;
+    private Customer customer;
+    private Hotel hotel;
+    private volatile Room room;
+    private LocalDate checkIn;
+    private LocalDate checkOut;
+    private int guests;
+    private volatile String status;
+    private long roomCost;
+    private long discount;
+    private long totalAmount;
+    private long retainedFee;
+    private String paymentMethod;
+    private LocalDateTime bookingTime;
+    private Hold hold;
+
+    public Reservation(Customer customer, Hotel hotel, Room room, 
+                      LocalDate checkIn, LocalDate checkOut, int guests) {
+        this.reservationId = IdGenerator.INSTANCE.nextId();
+        this.customer = customer;
+        this.hotel = hotel;
+        this.room = room;
+        this.checkIn = checkIn;
+        this.checkOut = checkOut;
+        this.guests = guests;
+        this.status = "Pending";
+        this.bookingTime = LocalDateTime.now();
+        calculateTotal();
+    }
+
+    Reservation(long reservationId, Customer customer, Hotel hotel, Room room,
+                LocalDate checkIn, LocalDate checkOut, int guests, long totalAmount,
+                LocalDateTime bookingTime) {
+        this(reservationId, customer, hotel, room, checkIn, checkOut, guests, totalAmount, 0, totalAmount,
+                bookingTime);
+    }
+
+    Reservation(long reservationId, Customer customer, Hotel hotel, Room room,
+                LocalDate checkIn, LocalDate checkOut, int guests, long roomCost, long discount,
+                long totalAmount, LocalDateTime bookingTime) {
+        this.reservationId = reservationId;
+        this.customer = customer;
+        this.hotel = hotel;
+        this.room = room;
+        this.checkIn = checkIn;
+        this.checkOut = checkOut;
+        this.guests = guests;
+        this.status = "Pending";
+        this.roomCost = roomCost;
+        this.discount = discount;
+        this.totalAmount = totalAmount;
+        this.bookingTime = bookingTime;
+    }
+
+    private void calculateTotal() {
+        this.roomCost = hotel.quote(room.getRoomType(), checkIn, checkOut);
+        this.discount = Money.percent(roomCost, customer.getDiscountBasisPoints());
+        this.totalAmount = roomCost - discount;
+    }
+
+    public Customer getCustomer() { return customer; }
+
+    public void setPaymentMethod(String method) { this.paymentMethod = method; }
+    public void setStatus(String status) { this.status = status; }
+    synchronized boolean compareAndSetStatus(String expected, String status) {
+        if (!this.status.equals(expected)) return false;
+        this.status = status;
+        return true;
+    }
+    boolean isActive() { return status.equals("Pending") || status.equals("Confirmed"); }
+    void setRetainedFee(long fee) { this.retainedFee = fee; }
+    void assignRoom(Room room) { this.room = room; }
+    void setHold(Hold hold) { this.hold = hold; }
+    Hold getHold() { return hold; }
+    
+    public long getId() { return reservationId; }
+    public String getReservationId() { return IdGenerator.format("RES", reservationId); }
+    public String getStatus() { return status; }
+    public long getRoomCost() { return roomCost; }
+    public long getDiscount() { return discount; }
+    public long getTotalAmount() { return totalAmount; }
+    public long getRetainedFee() { return retainedFee; }
+    public Currency getCurrency() { return hotel.getCurrency(); }
+    public Room getRoom() { return room; }
+    public Hotel getHotel() { return hotel; }
+    public LocalDate getCheckIn() { return checkIn; }
+    public LocalDate getCheckOut() { return checkOut; }
+    public int getGuests() { return guests; }
+    public String getPaymentMethod() { return paymentMethod; }
+    public LocalDateTime getBookingTime() { return bookingTime; }
+
+    public void displayConfirmation() {
+        System.out.println("\n========================================");
+        System.out.println("     RESERVATION CONFIRMATION");
+        System.out.println("========================================");
+        System.out.println("Reservation ID: " + getReservationId());
+        System.out.println("Status: " + status);
+        System.out.println("Booked on: " + bookingTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
+        
+        System.out.println("\nGuest Details:");
+        System.out.println("Name: " + customer.getName());
+        System.out.println("Email: " + customer.getEmail());
+        System.out.println("Phone: " + customer.getPhoneNumber());
+        System.out.println("Membership: " + customer.getMembershipTier());
+        
+        System.out.println("\nHotel Details:");
+        System.out.println("Hotel: " + hotel.getName());
+        System.out.println("Location: " + hotel.getLocation());
+        
+        System.out.println("\nRoom Details:");
+        System.out.println("Room: " + room.getRoomNumber() + " (" + room.getType() + ")");
+        System.out.println("Check-in: " + checkIn);
+        System.out.println("Check-out: " + checkOut);
+        System.out.println("Nights: " + ChronoUnit.DAYS.between(checkIn, checkOut));
+        System.out.println("Guests: " + guests);
+        
+        System.out.println("\nPayment Details:");
+        System.out.println("Room Cost: " + Money.format(roomCost, getCurrency()));
+        
+        if (discount > 0) {
+            System.out.println("Discount (" + Math.round(discount * 100.0 / roomCost) + "%): -" + 
+                             Money.format(discount, getCurrency()));
+        }
+        
+        System.out.println("Total: " + Money.format(totalAmount, getCurrency()));
+        System.out.println("Payment: " + paymentMethod);
+        System.out.println("========================================\n");
+    }
+
+    public boolean canCancel(LocalDate asOf) {
+        return !status.equals("Cancelled") && cancellationPolicy().allows(ChronoUnit.DAYS.between(asOf, checkIn));
+    }
+
+    public long getCancellationFee(LocalDate asOf) {
+        return cancellationPolicy().fee(totalAmount, ChronoUnit.DAYS.between(asOf, checkIn));
+    }
+
+    public CancellationPolicy cancellationPolicy() {
+        return hotel.getCancellationPolicy(room.getRoomType());
+    }
+}
+
+final class VirtualThreads {
+    private VirtualThreads() {}
+
+    public static ExecutorService newPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
+
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() { return count.sum(); }
+    public long getSum() { return sum.sum(); }
+    public long getMax() { return max.get(); }
+
+    public long[] percentiles(double... quantiles) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            snapshot[b] = counts.get(b);
+            total += snapshot[b];
+        }
+        long[] values = new long[quantiles.length];
+        if (total == 0) return values;
+        long cumulative = 0;
+        int q = 0;
+        for (int b = 0; b < BUCKETS && q < quantiles.length; b++) {
+            cumulative += snapshot[b];
+            while (q < quantiles.length && cumulative >= Math.max(1, (long) Math.ceil(quantiles[q] * total))) {
+                values[q++] = Math.min(highestEquivalent(b), getMax());
+            }
+        }
+        return values;
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestEquivalent(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        return ((long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1)) + 1) << shift) - 1;
+    }
+}
+
+final class Metrics {
+    public static final Metrics INSTANCE = new Metrics(!"false".equals(System.getProperty("metrics.enabled")));
+
+    private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+    private final List<Timer> timers = new CopyOnWriteArrayList<>();
+    private final List<Counter> counters = new CopyOnWriteArrayList<>();
+    private volatile boolean enabled;
+
+    Metrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public List<Timer> getTimers() { return timers; }
+    public List<Counter> getCounters() { return counters; }
+
+    public Timer timer(String name, String help) {
+        Timer timer = new Timer(name, help);
+        timers.add(timer);
+        return timer;
+    }
+
+    public Counter counter(String name, String help) {
+        Counter counter = new Counter(name, help);
+        counters.add(counter);
+        return counter;
+    }
+
+    public final class Timer {
+        private final String name;
+        private final String help;
+        private final LatencyHistogram untagged = new LatencyHistogram();
+        private final Map<Hotel, LatencyHistogram> byHotel = new ConcurrentHashMap<>();
+
+        private Timer(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public String getName() { return name; }
+        public String getHelp() { return help; }
+
+        public long start() {
+            return enabled ? System.nanoTime() : 0;
+        }
+
+        public void stop(long start) {
+            if (start != 0) untagged.record(System.nanoTime() - start);
+        }
+
+        public void stop(Hotel hotel, long start) {
+            if (start != 0) series(hotel).record(System.nanoTime() - start);
+        }
+
+        public LatencyHistogram series(Hotel hotel) {
+            if (hotel == null) return untagged;
+            LatencyHistogram histogram = byHotel.get(hotel);
+            return histogram != null ? histogram : byHotel.computeIfAbsent(hotel, h -> new LatencyHistogram());
+        }
+
+        Map<Hotel, LatencyHistogram> bySeries() {
+            Map<Hotel, LatencyHistogram> series = new LinkedHashMap<>();
+            if (untagged.getCount() > 0 || byHotel.isEmpty()) series.put(null, untagged);
+            series.putAll(byHotel);
+            return series;
+        }
+    }
+
+    public final class Counter {
+        private final String name;
+        private final String help;
+        private final LongAdder untagged = new LongAdder();
+        private final Map<Hotel, LongAdder> byHotel = new ConcurrentHashMap<>();
+
+        private Counter(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public String getName() { return name; }
+        public String getHelp() { return help; }
+
+        public void increment() {
+            if (enabled) untagged.increment();
+        }
+
+        public void increment(Hotel hotel) {
+            if (!enabled) return;
+            LongAdder adder = byHotel.get(hotel);
+            if (adder == null) adder = byHotel.computeIfAbsent(hotel, h -> new LongAdder());
+            adder.increment();
+        }
+
+        public long get(Hotel hotel) {
+            LongAdder adder = hotel == null ? untagged : byHotel.get(hotel);
+            return adder == null ? 0 : adder.sum();
+        }
+
+        Map<Hotel, Long> bySeries() {
+            Map<Hotel, Long> series = new LinkedHashMap<>();
+            if (untagged.sum() > 0 || byHotel.isEmpty()) series.put(null, untagged.sum());
+            for (Map.Entry<Hotel, LongAdder> entry : byHotel.entrySet()) {
+                series.put(entry.getKey(), entry.getValue().sum());
+            }
+            return series;
+        }
+    }
+
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        for (Timer timer : timers) {
+            out.append("# HELP ").append(timer.name).append(' ').append(timer.help).append('\n');
+            out.append("# TYPE ").append(timer.name).append(" summary\n");
+            for (Map.Entry<Hotel, LatencyHistogram> series : timer.bySeries().entrySet()) {
+                LatencyHistogram histogram = series.getValue();
+                long[] values = histogram.percentiles(QUANTILES);
+                for (int q = 0; q < QUANTILES.length; q++) {
+                    out.append(timer.name);
+                    labels(out, series.getKey(), "quantile", Double.toString(QUANTILES[q]));
+                    out.append(' ').append(values[q] / 1e9).append('\n');
+                }
+                out.append(timer.name).append("_count");
+                labels(out, series.getKey(), null, null);
+                out.append(' ').append(histogram.getCount()).append('\n');
+                out.append(timer.name).append("_sum");
+                labels(out, series.getKey(), null, null);
+                out.append(' ').append(histogram.getSum() / 1e9).append('\n');
+            }
+        }
+        for (Counter counter : counters) {
+            out.append("# HELP ").append(counter.name).append(' ').append(counter.help).append('\n');
+            out.append("# TYPE ").append(counter.name).append(" counter\n");
+            for (Map.Entry<Hotel, Long> series : counter.bySeries().entrySet()) {
+                out.append(counter.name).append("_total");
+                labels(out, series.getKey(), null, null);
+                out.append(' ').append(series.getValue()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private static void labels(StringBuilder out, Hotel hotel, String name, String value) {
+        if (hotel == null && name == null) return;
+        out.append('{');
+        if (hotel != null) {
+            out.append("hotel_id=\"").append(hotel.getHotelId()).append("\",hotel=\"")
+                    .append(hotel.getName().replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            if (name != null) out.append(',');
+        }
+        if (name != null) out.append(name).append("=\"").append(value).append('"');
+        out.append('}');
+    }
+
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this),
+                    new ObjectName("HotelReservationSystem:type=Metrics"));
+        } catch (JMException e) {
+            System.out.println("Could not register metrics MBean: " + e.getMessage());
+        }
+    }
+}
+
+class MetricsMBean implements DynamicMBean {
+    private static final String[] TIMER_ITEMS = {
+            "hotelId", "hotel", "count", "p50Nanos", "p99Nanos", "p999Nanos", "maxNanos" };
+    private static final String[] COUNTER_ITEMS = { "hotelId", "hotel", "count" };
+
+    private final Metrics metrics;
+    private final TabularType timerTable;
+    private final TabularType counterTable;
+
+    MetricsMBean(Metrics metrics) throws OpenDataException {
+        this.metrics = metrics;
+        CompositeType timerRow = new CompositeType("LatencySeries", "Latency for one hotel", TIMER_ITEMS,
+                TIMER_ITEMS, new OpenType<?>[] { SimpleType.STRING, SimpleType.STRING, SimpleType.LONG, SimpleType.LONG,
+                        SimpleType.LONG, SimpleType.LONG, SimpleType.LONG });
+        CompositeType counterRow = new CompositeType("CounterSeries", "Count for one hotel", COUNTER_ITEMS,
+                COUNTER_ITEMS, new OpenType<?>[] { SimpleType.STRING, SimpleType.STRING, SimpleType.LONG });
+        this.timerTable = new TabularType("LatencyByHotel", "Latency by hotel", timerRow, new String[] { "hotelId" });
+        this.counterTable = new TabularType("CountByHotel", "Count by hotel", counterRow, new String[] { "hotelId" });
+    }
+
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        if (attribute.equals("Enabled")) return metrics.isEnabled();
+        if (attribute.equals("Prometheus")) return metrics.toPrometheus();
+        try {
+            for (Metrics.Timer timer : metrics.getTimers()) {
+                if (!timer.getName().equals(attribute)) continue;
+                TabularDataSupport table = new TabularDataSupport(timerTable);
+                for (Map.Entry<Hotel, LatencyHistogram> series : timer.bySeries().entrySet()) {
+                    LatencyHistogram histogram = series.getValue();
+                    long[] values = histogram.percentiles(0.5, 0.99, 0.999);
+                    table.put(new CompositeDataSupport(timerTable.getRowType(), TIMER_ITEMS, new Object[] {
+                            hotelId(series.getKey()), hotelName(series.getKey()), histogram.getCount(),
+                            values[0], values[1], values[2], histogram.getMax() }));
+                }
+                return table;
+            }
+            for (Metrics.Counter counter : metrics.getCounters()) {
+                if (!counter.getName().equals(attribute)) continue;
+                TabularDataSupport table = new TabularDataSupport(counterTable);
+                for (Map.Entry<Hotel, Long> series : counter.bySeries().entrySet()) {
+                    table.put(new CompositeDataSupport(counterTable.getRowType(), COUNTER_ITEMS, new Object[] {
+                            hotelId(series.getKey()), hotelName(series.getKey()), series.getValue() }));
+                }
+                return table;
+            }
+        } catch (OpenDataException e) {
+            throw new IllegalStateException(e);
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    private static String hotelId(Hotel hotel) {
+        return hotel == null ? "" : hotel.getHotelId();
+    }
+
+    private static String hotelName(Hotel hotel) {
+        return hotel == null ? "" : hotel.getName();
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        if (!attribute.getName().equals("Enabled")) throw new AttributeNotFoundException(attribute.getName());
+        metrics.setEnabled((Boolean) attribute.getValue());
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                continue;
+            }
+        }
+        return list;
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        AttributeList set = new AttributeList();
+        for (Attribute attribute : attributes.asList()) {
+            try {
+                setAttribute(attribute);
+                set.add(attribute);
+            } catch (AttributeNotFoundException e) {
+                continue;
+            }
+        }
+        return set;
+    }
+
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "No such operation: " + actionName);
+    }
+
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        attributes.add(new MBeanAttributeInfo("Enabled", "boolean", "Whether metrics are recorded", true, true, true));
+        attributes.add(new MBeanAttributeInfo("Prometheus", "java.lang.String", "Prometheus text format dump",
+                true, false, false));
+        for (Metrics.Timer timer : metrics.getTimers()) {
+            attributes.add(new MBeanAttributeInfo(timer.getName(), TabularDataSupport.class.getName(),
+                    timer.getHelp(), true, false, false));
+        }
+        for (Metrics.Counter counter : metrics.getCounters()) {
+            attributes.add(new MBeanAttributeInfo(counter.getName(), TabularDataSupport.class.getName(),
+                    counter.getHelp(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Booking hot path metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+}
+
+interface PaymentProcessor {
+    CompletableFuture<Boolean> charge(Reservation reservation);
+
+    CompletableFuture<Boolean> refund(Reservation reservation);
+}
+
+class SimulatedPaymentGateway implements PaymentProcessor {
+    private final long latencyMillis;
+    private final double failureRate;
+    private final ExecutorService executor;
+
+    public SimulatedPaymentGateway(long latencyMillis, double failureRate) {
+        this.latencyMillis = latencyMillis;
+        this.failureRate = failureRate;
+        this.executor = VirtualThreads.newPerTaskExecutor();
+    }
+
+    public static SimulatedPaymentGateway fromSystemProperties() {
+        return new SimulatedPaymentGateway(
+                Long.getLong("payment.latencyMs", 1500),
+                Double.parseDouble(System.getProperty("payment.failureRate", "0")));
+    }
+
+    public CompletableFuture<Boolean> charge(Reservation reservation) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return ThreadLocalRandom.current().nextDouble() >= failureRate;
+        }, executor);
+    }
+
+    public CompletableFuture<Boolean> refund(Reservation reservation) {
+        return CompletableFuture.completedFuture(true);
+    }
+}
+
+class SearchQuery {
+    private final LocalDate checkIn;
+    private final LocalDate checkOut;
+    private String location;
+    private int guests = 1;
+    private long minPrice = 0;
+    private long maxPrice = Long.MAX_VALUE;
+    private long amenities;
+    private boolean sortByPrice = true;
+    private int offset = 0;
+    private int limit = 20;
+
+    public SearchQuery(LocalDate checkIn, LocalDate checkOut) {
+        this.checkIn = checkIn;
+        this.checkOut = checkOut;
+    }
+
+    public SearchQuery location(String location) { this.location = location; return this; }
+    public SearchQuery guests(int guests) { this.guests = guests; return this; }
+    public SearchQuery priceBand(long min, long max) { this.minPrice = min; this.maxPrice = max; return this; }
+    public SearchQuery amenities(String... names) { this.amenities = Amenity.lookup(names); return this; }
+    public SearchQuery sortByPrice(boolean sort) { this.sortByPrice = sort; return this; }
+    public SearchQuery page(int offset, int limit) { this.offset = offset; this.limit = limit; return this; }
+
+    public LocalDate getCheckIn() { return checkIn; }
+    public LocalDate getCheckOut() { return checkOut; }
+    public String getLocation() { return location; }
+    public int getGuests() { return guests; }
+    public long getMinPrice() { return minPrice; }
+    public long getMaxPrice() { return maxPrice; }
+    public long getAmenities() { return amenities; }
+    public boolean isSortByPrice() { return sortByPrice; }
+    public int getOffset() { return offset; }
+    public int getLimit() { return limit; }
+}
+
+class SearchResult {
+    private final Hotel hotel;
+    private final Room room;
+
+    public SearchResult(Hotel hotel, Room room) {
+        this.hotel = hotel;
+        this.room = room;
+    }
+
+    public Hotel getHotel() { return hotel; }
+    public Room getRoom() { return room; }
+}
+
+class SearchPage {
+    private final List<SearchResult> results;
+    private final int total;
+
+    public SearchPage(List<SearchResult> results, int total) {
+        this.results = results;
+        this.total = total;
+    }
+
+    public List<SearchResult> getResults() { return results; }
+    public int getTotal() { return total; }
+}
+
+class SearchEngine {
+    private static final Metrics.Timer SEARCH = Metrics.INSTANCE.timer("hotel_search_seconds", "Room searches");
+
+    private final List<Hotel> hotels;
+    private final int[] hotelWordOffset;
+    private final int words;
+    private final Map<String, long[]> byLocation = new HashMap<>();
+    private final long[][] byType;
+    private final long[][] byAmenity = new long[64][];
+
+    public SearchEngine(List<Hotel> hotels) {
+        this.hotels = new ArrayList<>(hotels);
+        this.hotelWordOffset = new int[hotels.size() + 1];
+        for (int h = 0; h < hotels.size(); h++) {
+            hotelWordOffset[h + 1] = hotelWordOffset[h] + ((hotels.get(h).getRooms().size() + 63) >>> 6);
+        }
+        this.words = hotelWordOffset[hotels.size()];
+        this.byType = new long[RoomType.count()][];
+
+        for (int h = 0; h < hotels.size(); h++) {
+            Hotel hotel = hotels.get(h);
+            long[] location = byLocation.computeIfAbsent(normalize(hotel.getLocation()), k -> new long[words]);
+            for (Room room : hotel.getRooms()) {
+                int word = hotelWordOffset[h] + (room.getIndex() >>> 6);
+                long bit = 1L << room.getIndex();
+                location[word] |= bit;
+                if (byType[room.getTypeOrdinal()] == null) byType[room.getTypeOrdinal()] = new long[words];
+                byType[room.getTypeOrdinal()][word] |= bit;
+                for (long a = room.getRoomType().getAmenityMask(); a != 0; a &= a - 1) {
+                    int amenity = Long.numberOfTrailingZeros(a);
+                    if (byAmenity[amenity] == null) byAmenity[amenity] = new long[words];
+                    byAmenity[amenity][word] |= bit;
+                }
+            }
+        }
+    }
+
+    public SearchPage search(SearchQuery query) {
+        long started = SEARCH.start();
+        SearchPage page = find(query);
+        SEARCH.stop(started);
+        return page;
+    }
+
+    private SearchPage find(SearchQuery query) {
+        long[] candidates = new long[words];
+        List<RoomType> types = matchingTypes(query);
+        for (RoomType type : types) {
+            long[] rooms = type.ordinal() < byType.length ? byType[type.ordinal()] : null;
+            if (rooms == null) continue;
+            for (int w = 0; w < words; w++) candidates[w] |= rooms[w];
+        }
+        if (query.getLocation() != null && !query.getLocation().isEmpty()) {
+            long[] location = byLocation.get(normalize(query.getLocation()));
+            if (location == null) return new SearchPage(new ArrayList<>(), 0);
+            for (int w = 0; w < words; w++) candidates[w] &= location[w];
+        }
+        for (long a = query.getAmenities(); a != 0; a &= a - 1) {
+            long[] amenity = byAmenity[Long.numberOfTrailingZeros(a)];
+            if (amenity == null) return new SearchPage(new ArrayList<>(), 0);
+            for (int w = 0; w < words; w++) candidates[w] &= amenity[w];
+        }
+
+        int total = 0;
+        for (int h = 0; h < hotels.size(); h++) {
+            int from = hotelWordOffset[h];
+            int to = hotelWordOffset[h + 1];
+            if (!any(candidates, from, to)) continue;
+            Hotel hotel = hotels.get(h);
+            if (!hotel.isBookable(query.getCheckIn(), query.getCheckOut())) {
+                Arrays.fill(candidates, from, to, 0L);
+                continue;
+            }
+            hotel.getCalendar().retainFree(query.getCheckIn(), query.getCheckOut(), candidates, from);
+            for (int w = from; w < to; w++) total += Long.bitCount(candidates[w]);
+        }
+
+        List<SearchResult> results = new ArrayList<>(Math.min(query.getLimit(), total));
+        int skip = query.getOffset();
+        if (query.isSortByPrice()) {
+            types.sort(Comparator.comparingLong(RoomType::getPricePerNight));
+            for (RoomType type : types) {
+                if (type.ordinal() >= byType.length || byType[type.ordinal()] == null) continue;
+                skip = collect(candidates, byType[type.ordinal()], skip, results, query.getLimit());
+                if (results.size() == query.getLimit()) break;
+            }
+        } else {
+            collect(candidates, null, skip, results, query.getLimit());
+        }
+        return new SearchPage(results, total);
+    }
+
+    static Comparator<SearchResult> resultOrder(boolean byPrice, ToIntFunction<Hotel> position) {
+        Comparator<SearchResult> byHotel = Comparator
+                .comparingInt((SearchResult r) -> position.applyAsInt(r.getHotel()))
+                .thenComparingInt(r -> r.getRoom().getIndex());
+        if (!byPrice) return byHotel;
+        return Comparator.comparingLong((SearchResult r) -> r.getRoom().getPricePerNight())
+                .thenComparingInt(r -> r.getRoom().getTypeOrdinal())
+                .thenComparing(byHotel);
+    }
+
+    private List<RoomType> matchingTypes(SearchQuery query) {
+        List<RoomType> types = new ArrayList<>();
+        for (RoomType type : RoomType.all()) {
+            if (type.getMaxGuests() >= query.getGuests()
+                    && type.getPricePerNight() >= query.getMinPrice()
+                    && type.getPricePerNight() <= query.getMaxPrice()
+                    && (type.getAmenityMask() & query.getAmenities()) == query.getAmenities()) {
+                types.add(type);
+            }
+        }
+        return types;
+    }
+
+    private int collect(long[] candidates, long[] filter, int skip, List<SearchResult> results, int limit) {
+        int h = 0;
+        for (int w = 0; w < words && results.size() < limit; w++) {
+            long bits = filter == null ? candidates[w] : candidates[w] & filter[w];
+            if (bits == 0) continue;
+            int count = Long.bitCount(bits);
+            if (skip >= count) {
+                skip -= count;
+                continue;
+            }
+            while (hotelWordOffset[h + 1] <= w) h++;
+            Hotel hotel = hotels.get(h);
+            for (; bits != 0 && results.size() < limit; bits &= bits - 1) {
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                int index = ((w - hotelWordOffset[h]) << 6) + Long.numberOfTrailingZeros(bits);
+                results.add(new SearchResult(hotel, hotel.getRooms().get(index)));
+            }
+        }
+        return skip;
+    }
+
+    private static boolean any(long[] set, int from, int to) {
+        for (int w = from; w < to; w++) {
+            if (set[w] != 0) return true;
+        }
+        return false;
+    }
+
+    private static String normalize(String location) {
+        return location.trim().toLowerCase(Locale.ROOT);
+    }
+}
+
+class CustomerRepository {
+    private static final Metrics.Timer LOOKUP = Metrics.INSTANCE.timer("hotel_customer_lookup_seconds",
+            "Customer lookups by email");
+
+    private final Map<String, Customer> byEmail = new ConcurrentHashMap<>();
+    private final HistoryArchive archive;
+
+    public CustomerRepository() {
+        this(new HistoryArchive());
+    }
+
+    public CustomerRepository(HistoryArchive archive) {
+        this.archive = archive;
+    }
+
+    public static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public Customer findByEmail(String email) {
+        long started = LOOKUP.start();
+        Customer customer = byEmail.get(normalizeEmail(email));
+        LOOKUP.stop(started);
+        return customer;
+    }
+
+    public Customer register(Customer customer) {
+        customer.getHistory().attach(archive);
+        Customer existing = byEmail.putIfAbsent(normalizeEmail(customer.getEmail()), customer);
+        return existing != null ? existing : customer;
+    }
+
+    public HistoryArchive getArchive() { return archive; }
+    public Collection<Customer> all() { return byEmail.values(); }
+    public int size() { return byEmail.size(); }
+}
+
+class ReservationRepository {
+    static final Comparator<Reservation> BOOKING_ORDER =
+            Comparator.comparing(Reservation::getBookingTime).thenComparingLong(Reservation::getId);
+
+    private final Map<Long, Reservation> byId = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Reservation>> byCustomer = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Reservation>> byHotel = new ConcurrentHashMap<>();
+    private final HistoryArchive archive;
+
+    public ReservationRepository() {
+        this(null);
+    }
+
+    public ReservationRepository(HistoryArchive archive) {
+        this.archive = archive;
+        if (archive != null) archive.register(this);
+    }
+
+    public void add(Reservation reservation) {
+        if (byId.putIfAbsent(reservation.getId(), reservation) != null) return;
+        byCustomer.computeIfAbsent(reservation.getCustomer().getId(),
+                k -> ConcurrentHashMap.newKeySet()).add(reservation);
+        byHotel.computeIfAbsent(reservation.getHotel().getId(),
+                k -> ConcurrentHashMap.newKeySet()).add(reservation);
+    }
+
+    void evict(Reservation reservation) {
+        if (!byId.remove(reservation.getId(), reservation)) return;
+        Set<Reservation> stays = byCustomer.get(reservation.getCustomer().getId());
+        if (stays != null) stays.remove(reservation);
+        stays = byHotel.get(reservation.getHotel().getId());
+        if (stays != null) stays.remove(reservation);
+    }
+
+    public Reservation findById(long reservationId) {
+        return byId.get(reservationId);
+    }
+
+    public Reservation findById(String reservationId) {
+        long id = IdGenerator.parse("RES", reservationId);
+        return id < 0 ? null : byId.get(id);
+    }
+
+    public Collection<Reservation> findByCustomer(long customerId) {
+        return byCustomer.getOrDefault(customerId, Collections.emptySet());
+    }
+
+    public Collection<Reservation> findByHotel(long hotelId) {
+        return byHotel.getOrDefault(hotelId, Collections.emptySet());
+    }
+
+    public List<Reservation> history(Customer customer) {
+        List<Reservation> stays = new ArrayList<>(findByCustomer(customer.getId()));
+        if (archive != null) {
+            for (Reservation stay : customer.getHistory().getArchivedStays()) {
+                if (byHotel.containsKey(stay.getHotel().getId())) stays.add(stay);
+            }
+        }
+        stays.sort(BOOKING_ORDER);
+        return stays;
+    }
+
+    public void forEachArchived(Consumer<Reservation> action) {
+        if (archive == null) return;
+        archive.forEach(stay -> {
+            if (byHotel.containsKey(stay.getHotel().getId())) action.accept(stay);
+        });
+    }
+
+    public Collection<Reservation> all() { return byId.values(); }
+    public int size() { return byId.size(); }
+}
+
+interface JournalHandler {
+    void onCustomer(long customerId, String name, String email, String phone);
+    void onAddress(long customerId, String address);
+    void onBooking(long reservationId, long customerId, int hotelIndex, int roomIndex,
+                   LocalDate checkIn, LocalDate checkOut, int guests, long roomCost, long discount,
+                   long totalAmount, String paymentMethod, long bookedAtEpochSecond);
+    void onCancel(long reservationId, long retainedFee);
+    void onPoints(long customerId, int points);
+    void onReassign(long reservationId, int roomIndex);
+}
+
+final class JournalCodec implements JournalHandler {
+    static final byte CUSTOMER = 1;
+    static final byte ADDRESS = 2;
+    static final byte POINTS = 5;
+    static final byte BOOKING = 6;
+    static final byte CANCEL = 7;
+    static final byte REASSIGN = 8;
+
+    private final Consumer<ByteBuffer> sink;
+
+    JournalCodec(Consumer<ByteBuffer> sink) {
+        this.sink = sink;
+    }
+
+    public void onCustomer(long customerId, String name, String email, String phone) {
+        byte[] n = utf8(name), e = utf8(email), p = utf8(phone);
+        ByteBuffer body = record(CUSTOMER, 8 + 6 + n.length + e.length + p.length);
+        body.putLong(customerId);
+        putString(body, n);
+        putString(body, e);
+        putString(body, p);
+        emit(body);
+    }
+
+    public void onAddress(long customerId, String address) {
+        byte[] a = utf8(address);
+        ByteBuffer body = record(ADDRESS, 8 + 2 + a.length);
+        body.putLong(customerId);
+        putString(body, a);
+        emit(body);
+    }
+
+    public void onBooking(long reservationId, long customerId, int hotelIndex, int roomIndex,
+                          LocalDate checkIn, LocalDate checkOut, int guests, long roomCost, long discount,
+                          long totalAmount, String paymentMethod, long bookedAtEpochSecond) {
+        byte[] m = utf8(paymentMethod);
+        ByteBuffer body = record(BOOKING, 8 + 8 + 4 + 4 + 4 + 4 + 4 + 8 + 8 + 8 + 2 + m.length + 8);
+        body.putLong(reservationId);
+        body.putLong(customerId);
+        body.putInt(hotelIndex);
+        body.putInt(roomIndex);
+        body.putInt((int) checkIn.toEpochDay());
+        body.putInt((int) checkOut.toEpochDay());
+        body.putInt(guests);
+        body.putLong(roomCost);
+        body.putLong(discount);
+        body.putLong(totalAmount);
+        putString(body, m);
+        body.putLong(bookedAtEpochSecond);
+        emit(body);
+    }
+
+    public void onCancel(long reservationId, long retainedFee) {
+        ByteBuffer body = record(CANCEL, 8 + 8);
+        body.putLong(reservationId);
+        body.putLong(retainedFee);
+        emit(body);
+    }
+
+    public void onPoints(long customerId, int points) {
+        ByteBuffer body = record(POINTS, 8 + 4);
+        body.putLong(customerId);
+        body.putInt(points);
+        emit(body);
+    }
+
+    public void onReassign(long reservationId, int roomIndex) {
+        ByteBuffer body = record(REASSIGN, 8 + 4);
+        body.putLong(reservationId);
+        body.putInt(roomIndex);
+        emit(body);
+    }
+
+    static void decode(ByteBuffer body, JournalHandler handler) {
+        byte type = body.get();
+        switch (type) {
+            case CUSTOMER:
+                handler.onCustomer(body.getLong(), getString(body), getString(body), getString(body));
+                break;
+            case ADDRESS:
+                handler.onAddress(body.getLong(), getString(body));
+                break;
+            case BOOKING:
+                handler.onBooking(body.getLong(), body.getLong(), body.getInt(), body.getInt(),
+                        LocalDate.ofEpochDay(body.getInt()), LocalDate.ofEpochDay(body.getInt()),
+                        body.getInt(), body.getLong(), body.getLong(), body.getLong(), getString(body),
+                        body.getLong());
+                break;
+            case CANCEL:
+                handler.onCancel(body.getLong(), body.getLong());
+                break;
+            case POINTS:
+                handler.onPoints(body.getLong(), body.getInt());
+                break;
+            case REASSIGN:
+                handler.onReassign(body.getLong(), body.getInt());
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    private void emit(ByteBuffer record) {
+        record.flip();
+        CRC32 crc = new CRC32();
+        crc.update(record.duplicate().position(ReservationJournal.FRAME_HEADER));
+        record.putInt(0, record.limit() - ReservationJournal.FRAME_HEADER);
+        record.putInt(4, (int) crc.getValue());
+        sink.accept(record);
+    }
+
+    private static ByteBuffer record(byte type, int payloadLength) {
+        ByteBuffer buffer = ByteBuffer.allocate(ReservationJournal.FRAME_HEADER + 1 + payloadLength);
+        buffer.position(ReservationJournal.FRAME_HEADER);
+        buffer.put(type);
+        return buffer;
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
+
+class ReservationJournal implements AutoCloseable {
+    static final int FRAME_HEADER = 8;
+    private static final int MAGIC = 0x484A524E;
+    private static final int VERSION = 3;
+    private static final int FILE_HEADER = 16;
+    private static final int MAX_RECORD = 1 << 16;
+    private static final int MAX_BATCH = 1024;
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+    private static final Metrics.Timer COMMIT = Metrics.INSTANCE.timer("hotel_journal_commit_seconds",
+            "Journal appends until the group commit is durable");
+
+    private final Path dir;
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private FileChannel channel;
+    private long generation;
+    private long recoveredRecords;
+    private Thread writer;
+    private volatile boolean closed;
+
+    private static final class PendingWrite {
+        final ByteBuffer[] records;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        PendingWrite(ByteBuffer[] records) {
+            this.records = records;
+        }
+    }
+
+    private ReservationJournal(Path dir) {
+        this.dir = dir;
+    }
+
+    public static ReservationJournal disabled() {
+        return new ReservationJournal(null);
+    }
+
+    public static ReservationJournal open(Path dir, JournalHandler recovery) throws IOException {
+        ReservationJournal journal = new ReservationJournal(dir);
+        Files.createDirectories(dir);
+        Path snapshot = dir.resolve("snapshot.bin");
+        long covered = Files.exists(snapshot) ? journal.replay(snapshot, recovery) : -1;
+        Path log = dir.resolve("journal.log");
+        journal.generation = covered + 1;
+        if (Files.exists(log)) {
+            long logGeneration = readGeneration(log);
+            if (logGeneration > covered) {
+                journal.generation = logGeneration;
+                journal.replay(log, recovery);
+            } else {
+                Files.delete(log);
+            }
+        }
+        journal.openLog();
+        return journal;
+    }
+
+    public boolean isEnabled() { return dir != null; }
+    public long getRecoveredRecords() { return recoveredRecords; }
+
+    public CompletableFuture<Void> append(List<ByteBuffer> records) {
+        if (dir == null || records.isEmpty()) return DONE;
+        if (closed) throw new IllegalStateException("Journal is closed");
+        PendingWrite write = new PendingWrite(records.toArray(new ByteBuffer[0]));
+        long started = COMMIT.start();
+        queue.add(write);
+        if (started != 0) write.done.whenComplete((v, error) -> COMMIT.stop(started));
+        return write.done;
+    }
+
+    public synchronized void compact(Consumer<JournalHandler> exporter) throws IOException {
+        if (dir == null) return;
+        Path tmp = dir.resolve("snapshot.bin.tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(out, generation);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 20);
+            exporter.accept(new JournalCodec(record -> {
+                if (chunk.remaining() < record.remaining()) flush(out, chunk);
+                chunk.put(record);
+            }));
+            flush(out, chunk);
+            out.force(true);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(tmp, dir.resolve("snapshot.bin"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        closeLog();
+        generation++;
+        Files.deleteIfExists(dir.resolve("journal.log"));
+        openLog();
+    }
+
+    public synchronized void close() {
+        if (dir == null || closed) return;
+        try {
+            closeLog();
+        } catch (IOException e) {
+            System.out.println("Journal close failed: " + e.getMessage());
+        }
+        closed = true;
+    }
+
+    private long replay(Path file, JournalHandler handler) throws IOException {
+        long fileGeneration;
+        CRC32 crc = new CRC32();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            in.read(buffer);
+            buffer.flip();
+            if (buffer.remaining() < FILE_HEADER || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a reservation journal: " + file);
+            }
+            checkVersion(buffer.getInt(), file);
+            fileGeneration = buffer.getLong();
+            long position = FILE_HEADER;
+            while (true) {
+                if (buffer.remaining() < FRAME_HEADER
+                        || buffer.remaining() < FRAME_HEADER + buffer.getInt(buffer.position())) {
+                    buffer.compact();
+                    if (in.read(buffer) <= 0) {
+                        buffer.flip();
+                        break;
+                    }
+                    buffer.flip();
+                    continue;
+                }
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > MAX_RECORD) break;
+                ByteBuffer body = buffer.slice();
+                body.limit(length);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != checksum) break;
+                JournalCodec.decode(body, handler);
+                buffer.position(buffer.position() + length);
+                position += FRAME_HEADER + length;
+                recoveredRecords++;
+            }
+            if (position < in.size()) {
+                in.truncate(position);
+            }
+        }
+        return fileGeneration;
+    }
+
+    private static long readGeneration(Path log) throws IOException {
+        try (FileChannel in = FileChannel.open(log, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+            in.read(header, 0);
+            header.flip();
+            if (header.remaining() < FILE_HEADER || header.getInt() != MAGIC) {
+                throw new IOException("Not a reservation journal: " + log);
+            }
+            checkVersion(header.getInt(), log);
+            return header.getLong();
+        }
+    }
+
+    private static void checkVersion(int version, Path file) throws IOException {
+        if (version != VERSION) {
+            throw new IOException("Unsupported journal version " + version + " (expected " + VERSION + "): " + file);
+        }
+    }
+
+    private void openLog() throws IOException {
+        Path log = dir.resolve("journal.log");
+        boolean fresh = !Files.exists(log);
+        channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (fresh) {
+            writeHeader(channel, generation);
+            channel.force(true);
+        }
+        channel.position(channel.size());
+        writer = new Thread(this::drain, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void closeLog() throws IOException {
+        PendingWrite stop = new PendingWrite(null);
+        queue.add(stop);
+        stop.done.join();
+        channel.close();
+    }
+
+    private void drain() {
+        List<PendingWrite> batch = new ArrayList<>();
+        List<ByteBuffer> buffers = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            PendingWrite stop = null;
+            buffers.clear();
+            for (PendingWrite write : batch) {
+                if (write.records == null) {
+                    stop = write;
+                } else {
+                    buffers.addAll(Arrays.asList(write.records));
+                }
+            }
+            try {
+                if (!buffers.isEmpty()) {
+                    writeAll(channel, buffers);
+                    channel.force(false);
+                }
+                for (PendingWrite write : batch) {
+                    write.done.complete(null);
+                }
+            } catch (IOException e) {
+                for (PendingWrite write : batch) {
+                    write.done.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+            if (stop != null) return;
+        }
+    }
+
+    private static void writeHeader(FileChannel out, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        header.putInt(MAGIC).putInt(VERSION).putLong(generation).flip();
+        out.write(header, 0);
+        out.position(FILE_HEADER);
+    }
+
+    private static void writeAll(FileChannel out, List<ByteBuffer> records) throws IOException {
+        ByteBuffer[] array = records.toArray(new ByteBuffer[0]);
+        long remaining = 0;
+        for (ByteBuffer record : array) remaining += record.remaining();
+        while (remaining > 0) {
+            remaining -= out.write(array);
+        }
+    }
+
+    private static void flush(FileChannel out, ByteBuffer chunk) {
+        try {
+            chunk.flip();
+            while (chunk.hasRemaining()) out.write(chunk);
+            chunk.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
+
+class JournalRecovery implements JournalHandler {
+    private final List<Hotel> hotels;
+    private final CustomerRepository customers;
+    private final ReservationRepository reservations;
+    private final Map<Long, Customer> customersById = new HashMap<>();
+
+    public JournalRecovery(List<Hotel> hotels, CustomerRepository customers,
+                           ReservationRepository reservations) {
+        this.hotels = hotels;
+        this.customers = customers;
+        this.reservations = reservations;
+    }
+
+    public void onCustomer(long customerId, String name, String email, String phone) {
+        Customer customer = customers.register(new Customer(customerId, name, email, phone));
+        customersById.put(customerId, customer);
+    }
+
+    public void onAddress(long customerId, String address) {
+        Customer customer = customersById.get(customerId);
+        if (customer != null) customer.setAddress(address);
+    }
+
+    public void onBooking(long reservationId, long customerId, int hotelIndex, int roomIndex,
+                          LocalDate checkIn, LocalDate checkOut, int guests, long roomCost, long discount,
+                          long totalAmount, String paymentMethod, long bookedAtEpochSecond) {
+        Customer customer = customersById.get(customerId);
+        if (customer == null || hotelIndex >= hotels.size()) return;
+        Hotel hotel = hotels.get(hotelIndex);
+        Reservation reservation = new Reservation(reservationId, customer, hotel,
+                hotel.roomAt(roomIndex), checkIn, checkOut, guests, roomCost, discount, totalAmount,
+                LocalDateTime.ofEpochSecond(bookedAtEpochSecond, 0, ZoneOffset.UTC));
+        reservation.setPaymentMethod(paymentMethod);
+        reservation.setStatus("Confirmed");
+        reservations.add(reservation);
+    }
+
+    public void onCancel(long reservationId, long retainedFee) {
+        Reservation reservation = reservations.findById(reservationId);
+        if (reservation != null) {
+            reservation.setStatus("Cancelled");
+            reservation.setRetainedFee(retainedFee);
+        }
+    }
+
+    public void onPoints(long customerId, int points) {
+        Customer customer = customersById.get(customerId);
+        if (customer != null) customer.addPoints(points);
+    }
+
+    public void onReassign(long reservationId, int roomIndex) {
+        Reservation reservation = reservations.findById(reservationId);
+        if (reservation != null) reservation.assignRoom(reservation.getHotel().roomAt(roomIndex));
+    }
+
+    public void finish() {
+        List<Reservation> replayed = new ArrayList<>(reservations.all());
+        for (Reservation reservation : replayed) {
+            if (!reservation.getStatus().equals("Cancelled")) {
+                reservation.getHotel().occupyRoom(reservation.getRoom(),
+                        reservation.getCheckIn(), reservation.getCheckOut());
+            }
+        }
+        replayed.sort(ReservationRepository.BOOKING_ORDER);
+        for (Reservation reservation : replayed) {
+            reservation.getCustomer().addBooking(reservation);
+        }
+    }
+
+    public static void export(CustomerRepository customers, ReservationRepository reservations,
+                              JournalHandler out) {
+        for (Customer customer : customers.all()) {
+            out.onCustomer(customer.getId(), customer.getName(), customer.getEmail(),
+                    customer.getPhoneNumber());
+            if (customer.getAddress() != null) out.onAddress(customer.getId(), customer.getAddress());
+            if (customer.getLoyaltyPoints() != 0) out.onPoints(customer.getId(), customer.getLoyaltyPoints());
+            exportStays(reservations.history(customer), out);
+        }
+    }
+
+    static void exportStays(List<Reservation> stays, JournalHandler out) {
+        for (Reservation reservation : stays) {
+            BookingEngine.writeBooking(reservation, out);
+            if (reservation.getStatus().equals("Cancelled")) {
+                out.onCancel(reservation.getId(), reservation.getRetainedFee());
+            }
+        }
+    }
+}
+
+class ColdStartImage {
+    private static final int MAGIC = 0x48494D47;
+    private static final int VERSION = 2;
+    private static final int HEADER = 64;
+    private static final int HOTEL_ENTRY = 40;
+    private static final int ROOM_ENTRY = 16;
+    private static final int CUSTOMER_ENTRY = 32;
+    private static final int RESERVATION_ENTRY = 64;
+
+    private final MappedByteBuffer image;
+    private final int hotelCount;
+    private final int typeCount;
+    private final int customerCount;
+    private final int reservationCount;
+    private final int typesOffset;
+    private final int hotelsOffset;
+    private final int roomsOffset;
+    private final int customersOffset;
+    private final int reservationsOffset;
+    private final int stringsOffset;
+    private final String[] typeNames;
+
+    private ColdStartImage(MappedByteBuffer image) throws IOException {
+        this.image = image;
+        if (image.getInt(0) != MAGIC || image.getInt(4) != VERSION) {
+            throw new IOException("Not a cold start image");
+        }
+        hotelCount = image.getInt(8);
+        typeCount = image.getInt(12);
+        customerCount = image.getInt(20);
+        reservationCount = image.getInt(24);
+        typesOffset = image.getInt(28);
+        hotelsOffset = image.getInt(32);
+        roomsOffset = image.getInt(36);
+        customersOffset = image.getInt(40);
+        reservationsOffset = image.getInt(44);
+        stringsOffset = image.getInt(48);
+        typeNames = new String[typeCount];
+        for (int t = 0; t < typeCount; t++) {
+            typeNames[t] = string(typesOffset + 4 * t);
+        }
+    }
+
+    public static ColdStartImage open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ColdStartImage(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int hotelCount() { return hotelCount; }
+    public int customerCount() { return customerCount; }
+    public int reservationCount() { return reservationCount; }
+
+    public String hotelName(int hotel) { return string(hotelEntry(hotel)); }
+    public String hotelLocation(int hotel) { return string(hotelEntry(hotel) + 4); }
+    public int roomCount(int hotel) { return image.getInt(hotelEntry(hotel) + 20); }
+
+    public String roomNumber(int hotel, int room) { return string(roomEntry(hotel, room)); }
+    public String roomType(int hotel, int room) {
+        return typeNames[image.getShort(roomEntry(hotel, room) + 4)];
+    }
+
+    public long customerId(int customer) { return image.getLong(customersOffset + customer * CUSTOMER_ENTRY); }
+    public String customerEmail(int customer) { return string(customersOffset + customer * CUSTOMER_ENTRY + 12); }
+    public int customerPoints(int customer) { return image.getInt(customersOffset + customer * CUSTOMER_ENTRY + 24); }
+
+    public long reservationId(int reservation) {
+        return image.getLong(reservationsOffset + reservation * RESERVATION_ENTRY);
+    }
+
+    public String reservationStatus(int reservation) {
+        return string(reservationsOffset + reservation * RESERVATION_ENTRY + 52);
+    }
+
+    public int typeOrdinal(String type) {
+        for (int t = 0; t < typeNames.length; t++) {
+            if (typeNames[t].equals(type)) return t;
+        }
+        return -1;
+    }
+
+    public int countAvailableRooms(int hotel, String type, LocalDate from, LocalDate to) {
+        int count = 0;
+        for (long bits : availableRoomSet(hotel, type, from, to)) {
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+
+    public List<String> availableRoomNumbers(int hotel, String type, LocalDate from, LocalDate to) {
+        List<String> numbers = new ArrayList<>();
+        long[] free = availableRoomSet(hotel, type, from, to);
+        for (int w = 0; w < free.length; w++) {
+            for (long bits = free[w]; bits != 0; bits &= bits - 1) {
+                numbers.add(roomNumber(hotel, (w << 6) + Long.numberOfTrailingZeros(bits)));
+            }
+        }
+        return numbers;
+    }
+
+    private long[] availableRoomSet(int hotel, String type, LocalDate from, LocalDate to) {
+        int entry = hotelEntry(hotel);
+        int words = (image.getInt(entry + 20) + 63) >>> 6;
+        long[] free = new long[words];
+        int ordinal = typeOrdinal(type);
+        long first = from.toEpochDay() - image.getInt(entry + 24);
+        long last = to.toEpochDay() - image.getInt(entry + 24);
+        if (ordinal < 0 || first < 0 || last > image.getInt(entry + 28) || first >= last) return free;
+
+        int masks = image.getInt(entry + 36) + ordinal * words * 8;
+        int occupancy = image.getInt(entry + 32);
+        for (int w = 0; w < words; w++) {
+            long bits = image.getLong(masks + w * 8);
+            for (long n = first; n < last && bits != 0; n++) {
+                bits &= ~image.getLong(occupancy + (int) (n * words + w) * 8);
+            }
+            free[w] = bits;
+        }
+        return free;
+    }
+
+    public Hotel loadHotel(int hotel) {
+        int entry = hotelEntry(hotel);
+        int rooms = roomCount(hotel);
+        List<Room> list = new ArrayList<>(rooms);
+        for (int r = 0; r < rooms; r++) {
+            list.add(Room.of(roomType(hotel, r), roomNumber(hotel, r)));
+        }
+        Hotel loaded = new Hotel(hotelName(hotel), hotelLocation(hotel), list);
+        loaded.setAddress(string(entry + 8));
+        loaded.setPhone(string(entry + 12));
+        loaded.setIndex(hotel);
+
+        int words = (rooms + 63) >>> 6;
+        int occupancy = image.getInt(entry + 32);
+        long start = image.getInt(entry + 24);
+        for (int n = 0, horizon = image.getInt(entry + 28); n < horizon; n++) {
+            LocalDate night = LocalDate.ofEpochDay(start + n);
+            for (int w = 0; w < words; w++) {
+                loaded.getCalendar().occupyWord(night, w, image.getLong(occupancy + (n * words + w) * 8));
+            }
+        }
+        loaded.invalidateRates();
+        return loaded;
+    }
+
+    private int hotelEntry(int hotel) {
+        return hotelsOffset + hotel * HOTEL_ENTRY;
+    }
+
+    private int roomEntry(int hotel, int room) {
+        return roomsOffset + (image.getInt(hotelEntry(hotel) + 16) + room) * ROOM_ENTRY;
+    }
+
+    private String string(int refPosition) {
+        int ref = image.getInt(refPosition);
+        if (ref < 0) return null;
+        int position = stringsOffset + ref;
+        byte[] value = new byte[image.getShort(position) & 0xFFFF];
+        image.get(position + 2, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    public static void write(Path file, List<Hotel> hotels, CustomerRepository customers,
+                             ReservationRepository reservations) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        int[] poolSize = {0};
+        java.util.function.ToIntFunction<String> ref = value -> value == null ? -1
+                : strings.computeIfAbsent(value, v -> {
+                    int offset = poolSize[0];
+                    poolSize[0] += 2 + v.getBytes(StandardCharsets.UTF_8).length;
+                    return offset;
+                });
+
+        List<String> types = new ArrayList<>();
+        int roomCount = 0;
+        long bitmapBytes = 0;
+        for (Hotel hotel : hotels) {
+            for (Room room : hotel.getRooms()) {
+                if (!types.contains(room.getType())) types.add(room.getType());
+            }
+            roomCount += hotel.getRooms().size();
+        }
+        for (Hotel hotel : hotels) {
+            AvailabilityCalendar calendar = hotel.getCalendar();
+            bitmapBytes += 8L * calendar.getWordsPerNight() * (types.size() + calendar.getHorizonDays());
+        }
+        List<Customer> customerList = new ArrayList<>(customers.all());
+        List<Reservation> reservationList = new ArrayList<>(reservations.all());
+
+        int typesOffset = HEADER;
+        int hotelsOffset = typesOffset + 4 * types.size();
+        int roomsOffset = hotelsOffset + HOTEL_ENTRY * hotels.size();
+        long bitmapsOffset = align(roomsOffset + (long) ROOM_ENTRY * roomCount);
+        long customersOffset = bitmapsOffset + bitmapBytes;
+        long reservationsOffset = customersOffset + (long) CUSTOMER_ENTRY * customerList.size();
+        long stringsOffset = reservationsOffset + (long) RESERVATION_ENTRY * reservationList.size();
+
+        ByteBuffer fixed = ByteBuffer.allocate(Math.toIntExact(stringsOffset));
+        for (int t = 0; t < types.size(); t++) {
+            fixed.putInt(typesOffset + 4 * t, ref.applyAsInt(types.get(t)));
+        }
+        int firstRoom = 0;
+        long bitmaps = bitmapsOffset;
+        for (int h = 0; h < hotels.size(); h++) {
+            Hotel hotel = hotels.get(h);
+            AvailabilityCalendar calendar = hotel.getCalendar();
+            int words = calendar.getWordsPerNight();
+            int entry = hotelsOffset + h * HOTEL_ENTRY;
+            fixed.putInt(entry, ref.applyAsInt(hotel.getName()));
+            fixed.putInt(entry + 4, ref.applyAsInt(hotel.getLocation()));
+            fixed.putInt(entry + 8, ref.applyAsInt(hotel.getAddress()));
+            fixed.putInt(entry + 12, ref.applyAsInt(hotel.getPhone()));
+            fixed.putInt(entry + 16, firstRoom);
+            fixed.putInt(entry + 20, hotel.getRooms().size());
+            fixed.putInt(entry + 24, (int) calendar.getStart().toEpochDay());
+            fixed.putInt(entry + 28, calendar.getHorizonDays());
+            fixed.putInt(entry + 36, (int) bitmaps);
+            for (Room room : hotel.getRooms()) {
+                int roomEntry = roomsOffset + (firstRoom + room.getIndex()) * ROOM_ENTRY;
+                int ordinal = types.indexOf(room.getType());
+                fixed.putInt(roomEntry, ref.applyAsInt(room.getRoomNumber()));
+                fixed.putShort(roomEntry + 4, (short) ordinal);
+                fixed.putShort(roomEntry + 6, (short) room.getMaxGuests());
+                fixed.putLong(roomEntry + 8, room.getPricePerNight());
+                int mask = (int) bitmaps + (ordinal * words + (room.getIndex() >>> 6)) * 8;
+                fixed.putLong(mask, fixed.getLong(mask) | 1L << room.getIndex());
+            }
+            bitmaps += 8L * words * types.size();
+            fixed.putInt(entry + 32, (int) bitmaps);
+            for (int n = 0; n < calendar.getHorizonDays(); n++) {
+                for (int w = 0; w < words; w++) {
+                    fixed.putLong((int) bitmaps, calendar.getWord(n, w));
+                    bitmaps += 8;
+                }
+            }
+            firstRoom += hotel.getRooms().size();
+        }
+        for (int c = 0; c < customerList.size(); c++) {
+            Customer customer = customerList.get(c);
+            int entry = (int) customersOffset + c * CUSTOMER_ENTRY;
+            fixed.putLong(entry, customer.getId());
+            fixed.putInt(entry + 8, ref.applyAsInt(customer.getName()));
+            fixed.putInt(entry + 12, ref.applyAsInt(customer.getEmail()));
+            fixed.putInt(entry + 16, ref.applyAsInt(customer.getPhoneNumber()));
+            fixed.putInt(entry + 20, ref.applyAsInt(customer.getAddress()));
+            fixed.putInt(entry + 24, customer.getLoyaltyPoints());
+        }
+        for (int r = 0; r < reservationList.size(); r++) {
+            Reservation reservation = reservationList.get(r);
+            int entry = (int) reservationsOffset + r * RESERVATION_ENTRY;
+            fixed.putLong(entry, reservation.getId());
+            fixed.putLong(entry + 8, reservation.getCustomer().getId());
+            fixed.putInt(entry + 16, reservation.getHotel().getIndex());
+            fixed.putInt(entry + 20, reservation.getHotel().roomRef(reservation.getRoom()));
+            fixed.putInt(entry + 24, (int) reservation.getCheckIn().toEpochDay());
+            fixed.putInt(entry + 28, (int) reservation.getCheckOut().toEpochDay());
+            fixed.putLong(entry + 32, reservation.getTotalAmount());
+            fixed.putLong(entry + 40, reservation.getBookingTime().toEpochSecond(ZoneOffset.UTC));
+            fixed.putInt(entry + 48, ref.applyAsInt(reservation.getPaymentMethod()));
+            fixed.putInt(entry + 52, ref.applyAsInt(reservation.getStatus()));
+            fixed.putInt(entry + 56, reservation.getGuests());
+        }
+
+        fixed.putInt(0, MAGIC);
+        fixed.putInt(4, VERSION);
+        fixed.putInt(8, hotels.size());
+        fixed.putInt(12, types.size());
+        fixed.putInt(16, roomCount);
+        fixed.putInt(20, customerList.size());
+        fixed.putInt(24, reservationList.size());
+        fixed.putInt(28, typesOffset);
+        fixed.putInt(32, hotelsOffset);
+        fixed.putInt(36, roomsOffset);
+        fixed.putInt(40, (int) customersOffset);
+        fixed.putInt(44, (int) reservationsOffset);
+        fixed.putInt(48, (int) stringsOffset);
+
+        ByteBuffer pool = ByteBuffer.allocate(poolSize[0]);
+        for (String value : strings.keySet()) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            pool.putShort((short) bytes.length).put(bytes);
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] parts = { fixed.clear(), pool.flip() };
+            long remaining = fixed.remaining() + pool.remaining();
+            while (remaining > 0) {
+                remaining -= out.write(parts);
+            }
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+}
+
+class BookingRequest {
+    private final Customer customer;
+    private final Hotel hotel;
+    private final String roomType;
+    private final LocalDate checkIn;
+    private final LocalDate checkOut;
+    private final int guests;
+    private final String paymentMethod;
+
+    public BookingRequest(Customer customer, Hotel hotel, String roomType, LocalDate checkIn,
+                          LocalDate checkOut, int guests, String paymentMethod) {
+        this.customer = customer;
+        this.hotel = hotel;
+        this.roomType = roomType;
+        this.checkIn = checkIn;
+        this.checkOut = checkOut;
+        this.guests = guests;
+        this.paymentMethod = paymentMethod;
+    }
+
+    public Customer getCustomer() { return customer; }
+    public Hotel getHotel() { return hotel; }
+    public String getRoomType() { return roomType; }
+    public LocalDate getCheckIn() { return checkIn; }
+    public LocalDate getCheckOut() { return checkOut; }
+    public int getGuests() { return guests; }
+    public String getPaymentMethod() { return paymentMethod; }
+
+    String validate() {
+        RoomType type = RoomType.byName(roomType);
+        if (type == null) return "Unknown room type: " + roomType;
+        if (checkIn == null || checkOut == null || !checkOut.isAfter(checkIn)) return "Invalid dates";
+        if (!hotel.isBookable(checkIn, checkOut)) return "Dates outside the booking window";
+        if (guests < 1 || guests > type.getMaxGuests()) return "Guests exceed room capacity";
+        return null;
+    }
+}
+
+class BatchResult {
+    private final Reservation[] reservations;
+    private final String[] failures;
+
+    BatchResult(int size) {
+        this.reservations = new Reservation[size];
+        this.failures = new String[size];
+    }
+
+    public Reservation getReservation(int request) { return reservations[request]; }
+    public String getFailure(int request) { return failures[request]; }
+    public int size() { return reservations.length; }
+
+    public int bookedCount() {
+        int booked = 0;
+        for (Reservation reservation : reservations) {
+            if (reservation != null && reservation.getStatus().equals("Confirmed")) booked++;
+        }
+        return booked;
+    }
+
+    void book(int request, Reservation reservation) { reservations[request] = reservation; }
+    void fail(int request, String reason) { failures[request] = reason; }
+
+    void failAll(String reason) {
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] == null) failures[i] = reason;
+        }
+    }
+}
+
+interface BookingListener {
+    default void onCreated(Reservation reservation) {}
+    void onConfirmed(Reservation reservation);
+    void onCancelled(Reservation reservation);
+    default void onPaymentFailed(Reservation reservation) {}
+    default void onExpired(Reservation reservation) {}
+}
+
+class BookingEventBus implements AutoCloseable {
+    static final byte CREATED = 1;
+    static final byte CONFIRMED = 2;
+    static final byte CANCELLED = 3;
+    static final byte PAYMENT_FAILED = 4;
+    static final byte EXPIRED = 5;
+
+    private static final int SPINS = 200;
+
+    private final int capacity;
+    private final int mask;
+    private final byte[] types;
+    private final Reservation[] reservations;
+    private final AtomicLongArray published;
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final AtomicLong backPressureWaits = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong(Long.MAX_VALUE);
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private volatile long gatingCache = -1;
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    private final class Subscriber implements Runnable {
+        final String name;
+        final BookingListener listener;
+        final AtomicLong sequence = new AtomicLong(-1);
+        volatile boolean parked;
+        Thread thread;
+
+        Subscriber(String name, BookingListener listener) {
+            this.name = name;
+            this.listener = listener;
+        }
+
+        public void run() {
+            long next = sequence.get() + 1;
+            while (true) {
+                long available = waitFor(next);
+                if (available < next) return;
+                for (long seq = next; seq <= available; seq++) {
+                    int slot = (int) seq & mask;
+                    try {
+                        dispatch(listener, types[slot], reservations[slot]);
+                    } catch (RuntimeException e) {
+                        System.out.println("Event consumer " + name + " failed: " + e);
+                    }
+                }
+                sequence.lazySet(available);
+                next = available + 1;
+            }
+        }
+
+        private long waitFor(long next) {
+            int idle = 0;
+            while (published.get((int) next & mask) != next) {
+                if (closed && (cursor.get() < next || abandoned.get() <= next)) return next - 1;
+                if (++idle < SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    parked = true;
+                    if (published.get((int) next & mask) != next && !closed) LockSupport.parkNanos(1_000_000);
+                    parked = false;
+                }
+            }
+            long available = next;
+            while (published.get((int) (available + 1) & mask) == available + 1) available++;
+            return available;
+        }
+    }
+
+    private BookingEventBus(int capacity) {
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.types = new byte[capacity];
+        this.reservations = new Reservation[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) published.set(i, -1);
+    }
+
+    public static BookingEventBus ring(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        return new BookingEventBus(capacity);
+    }
+
+    public static BookingEventBus direct() {
+        return new BookingEventBus(0) {
+            @Override
+            public void publish(byte type, Reservation reservation) {
+                for (Subscriber subscriber : subscribers()) dispatch(subscriber.listener, type, reservation);
+            }
+
+            @Override
+            public void start() {}
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    public synchronized void subscribe(String name, BookingListener listener) {
+        if (started) throw new IllegalStateException("Subscribe before the event bus is started");
+        subscribers.add(new Subscriber(name, listener));
+    }
+
+    List<Subscriber> subscribers() { return subscribers; }
+
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        for (Subscriber subscriber : subscribers) {
+            subscriber.thread = new Thread(subscriber, "events-" + subscriber.name);
+            subscriber.thread.setDaemon(true);
+            subscriber.thread.start();
+        }
+    }
+
+    public void publish(byte type, Reservation reservation) {
+        if (subscribers.isEmpty() || closed) return;
+        long seq = cursor.incrementAndGet();
+        long wrap = seq - capacity;
+        if (wrap > gatingCache) {
+            long min = awaitCapacity(wrap);
+            if (closed && wrap > min) {
+                abandoned.accumulateAndGet(seq, Math::min);
+                return;
+            }
+            gatingCache = min;
+        }
+        int slot = (int) seq & mask;
+        types[slot] = type;
+        reservations[slot] = reservation;
+        published.set(slot, seq);
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.parked) LockSupport.unpark(subscriber.thread);
+        }
+    }
+
+    private long awaitCapacity(long wrap) {
+        boolean waited = false;
+        while (true) {
+            long min = Long.MAX_VALUE;
+            for (Subscriber subscriber : subscribers) {
+                min = Math.min(min, subscriber.sequence.get());
+            }
+            if (wrap <= min || !started || closed) return min;
+            if (!waited) {
+                waited = true;
+                backPressureWaits.incrementAndGet();
+            }
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.parked) LockSupport.unpark(subscriber.thread);
+            }
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    private static void dispatch(BookingListener listener, byte type, Reservation reservation) {
+        switch (type) {
+            case CREATED: listener.onCreated(reservation); break;
+            case CONFIRMED: listener.onConfirmed(reservation); break;
+            case CANCELLED: listener.onCancelled(reservation); break;
+            case PAYMENT_FAILED: listener.onPaymentFailed(reservation); break;
+            case EXPIRED: listener.onExpired(reservation); break;
+            default: throw new IllegalStateException("Unknown booking event " + type);
+        }
+    }
+
+    public int getCapacity() { return capacity; }
+    public long getPublished() { return cursor.get() + 1; }
+    public long getBackPressureWaits() { return backPressureWaits.get(); }
+
+    public long getLag(String name) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.name.equals(name)) return cursor.get() - subscriber.sequence.get();
+        }
+        throw new IllegalArgumentException("No subscriber " + name);
+    }
+
+    public void close() {
+        closed = true;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.thread == null) continue;
+            LockSupport.unpark(subscriber.thread);
+            try {
+                subscriber.thread.join(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
+
+class LoyaltyListener implements BookingListener {
+    private final LoyaltyEngine loyalty;
+
+    LoyaltyListener(LoyaltyEngine loyalty) {
+        this.loyalty = loyalty;
+    }
+
+    public void onConfirmed(Reservation reservation) {
+        loyalty.accrue(reservation.getCustomer(), BookingEngine.pointsFor(reservation),
+                reservation.getBookingTime().toLocalDate());
+    }
+
+    public void onCancelled(Reservation reservation) {}
+}
+
+class NotificationOutbox implements BookingListener {
+    private static final int PER_CUSTOMER = 20;
+
+    private final Map<Long, Deque<String>> messages = new ConcurrentHashMap<>();
+
+    public void onConfirmed(Reservation reservation) {
+        send(reservation, "Booking " + reservation.getReservationId() + " confirmed: "
+                + reservation.getHotel().getName() + ", " + reservation.getRoom().getType() + " room "
+                + reservation.getRoom().getRoomNumber() + ", " + reservation.getCheckIn() + " to "
+                + reservation.getCheckOut() + ", total "
+                + Money.format(reservation.getTotalAmount(), reservation.getCurrency()));
+    }
+
+    public void onCancelled(Reservation reservation) {
+        send(reservation, "Booking " + reservation.getReservationId() + " cancelled. Refund of "
+                + Money.format(reservation.getTotalAmount() - reservation.getRetainedFee(), reservation.getCurrency())
+                + " will be processed in 5-7 days.");
+    }
+
+    public void onPaymentFailed(Reservation reservation) {
+        send(reservation, "Payment for your " + reservation.getHotel().getName() + " booking on "
+                + reservation.getCheckIn() + " failed. The room has been released.");
+    }
+
+    public void onExpired(Reservation reservation) {
+        send(reservation, "Your hold on a " + reservation.getRoom().getType() + " room at "
+                + reservation.getHotel().getName() + " for " + reservation.getCheckIn() + " to "
+                + reservation.getCheckOut() + " expired before payment. The room has been released.");
+    }
+
+    private void send(Reservation reservation, String message) {
+        Deque<String> inbox = messages.computeIfAbsent(reservation.getCustomer().getId(),
+                id -> new ArrayDeque<>());
+        synchronized (inbox) {
+            if (inbox.size() == PER_CUSTOMER) inbox.removeFirst();
+            inbox.addLast(message);
+        }
+    }
+
+    public List<String> messagesFor(Customer customer) {
+        Deque<String> inbox = messages.get(customer.getId());
+        if (inbox == null) return List.of();
+        synchronized (inbox) {
+            return new ArrayList<>(inbox);
+        }
+    }
+}
+
+class RoomAssignmentOptimizer {
+    private static final Comparator<Reservation> ARRIVAL_ORDER = Comparator
+            .comparing(Reservation::getCheckIn)
+            .thenComparing(Reservation::getCheckOut, Comparator.reverseOrder())
+            .thenComparingLong(Reservation::getId);
+
+    public List<Reservation> optimize(Hotel hotel, Collection<Reservation> reservations, LocalDate today) {
+        List<Reservation> stays = new ArrayList<>();
+        for (Reservation reservation : reservations) {
+            if (reservation.getHotel() == hotel && reservation.getStatus().equals("Confirmed")
+                    && reservation.getRoom().isAssigned() && reservation.getCheckIn().isAfter(today)) {
+                stays.add(reservation);
+            }
+        }
+        stays.sort(ARRIVAL_ORDER);
+        List<Reservation> moved = new ArrayList<>();
+        for (Reservation stay : stays) {
+            synchronized (stay) {
+                if (!stay.getStatus().equals("Confirmed")) continue;
+                Room better = hotel.moveToBestFit(stay.getRoom(), stay.getCheckIn(), stay.getCheckOut());
+                if (better == null) continue;
+                stay.assignRoom(better);
+                moved.add(stay);
+            }
+        }
+        return moved;
+    }
+
+    public static int orphanNights(Hotel hotel, LocalDate from, LocalDate to, int maxGap) {
+        AvailabilityCalendar calendar = hotel.getCalendar();
+        int first = (int) Math.max(0, from.toEpochDay() - calendar.getStart().toEpochDay());
+        int last = (int) Math.min(calendar.getHorizonDays(), to.toEpochDay() - calendar.getStart().toEpochDay());
+        int orphans = 0;
+        for (Room room : hotel.getRooms()) {
+            int word = room.getIndex() >>> 6;
+            long bit = 1L << room.getIndex();
+            int lastOccupied = -1;
+            for (int n = first; n < last; n++) {
+                if ((calendar.getWord(n, word) & bit) == 0) continue;
+                int gap = n - lastOccupied - 1;
+                if (lastOccupied >= 0 && gap > 0 && gap <= maxGap) orphans += gap;
+                lastOccupied = n;
+            }
+        }
+        return orphans;
+    }
+}
+
+class WaitlistEntry {
+    private final long sequence;
+    private final int tierRank;
+    private final Customer customer;
+    private final Hotel hotel;
+    private final RoomType roomType;
+    private final LocalDate checkIn;
+    private final LocalDate checkOut;
+    private final int guests;
+
+    WaitlistEntry(long sequence, Customer customer, Hotel hotel, RoomType roomType,
+                  LocalDate checkIn, LocalDate checkOut, int guests) {
+        this.sequence = sequence;
+        this.tierRank = customer.getTier().getRank();
+        this.customer = customer;
+        this.hotel = hotel;
+        this.roomType = roomType;
+        this.checkIn = checkIn;
+        this.checkOut = checkOut;
+        this.guests = guests;
+    }
+
+    public long getSequence() { return sequence; }
+    public int getTierRank() { return tierRank; }
+    public Customer getCustomer() { return customer; }
+    public Hotel getHotel() { return hotel; }
+    public RoomType getRoomType() { return roomType; }
+    public LocalDate getCheckIn() { return checkIn; }
+    public LocalDate getCheckOut() { return checkOut; }
+    public int getGuests() { return guests; }
+
+    boolean overlaps(LocalDate from, LocalDate to) {
+        return checkIn.isBefore(to) && checkOut.isAfter(from);
+    }
+}
+
+class Waitlist {
+    private static final Metrics.Counter PROMOTED = Metrics.INSTANCE.counter("hotel_waitlist_promoted",
+            "Waitlisted guests booked into a freed room");
+    private static final Metrics.Counter PLACED = Metrics.INSTANCE.counter("hotel_overbooking_placed",
+            "Overbooked stays moved into a freed room");
+    private static final Comparator<WaitlistEntry> ORDER = Comparator
+            .comparingInt(WaitlistEntry::getTierRank).reversed()
+            .thenComparingLong(WaitlistEntry::getSequence);
+
+    private final int scanLimit;
+    private final Clock clock;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Hotel, Lane[]> lanes = new ConcurrentHashMap<>();
+
+    private static final class Lane {
+        final PriorityQueue<WaitlistEntry> waiting = new PriorityQueue<>(ORDER);
+        final List<Reservation> unassigned = new ArrayList<>();
+    }
+
+    public Waitlist(int scanLimit, Clock clock) {
+        if (scanLimit < 1) throw new IllegalArgumentException("Scan limit must be positive");
+        this.scanLimit = scanLimit;
+        this.clock = clock;
+    }
+
+    public int getScanLimit() { return scanLimit; }
+
+    public WaitlistEntry join(Customer customer, Hotel hotel, String roomType,
+                              LocalDate checkIn, LocalDate checkOut, int guests) {
+        RoomType type = RoomType.byName(roomType);
+        if (type == null) throw new IllegalArgumentException("Unknown room type: " + roomType);
+        WaitlistEntry entry = new WaitlistEntry(sequence.incrementAndGet(), customer, hotel, type,
+                checkIn, checkOut, guests);
+        Lane lane = lane(hotel, type);
+        synchronized (lane) {
+            lane.waiting.add(entry);
+        }
+        return entry;
+    }
+
+    public boolean leave(WaitlistEntry entry) {
+        Lane lane = lane(entry.getHotel(), entry.getRoomType());
+        synchronized (lane) {
+            return lane.waiting.remove(entry);
+        }
+    }
+
+    public int depth(Hotel hotel, String roomType) {
+        RoomType type = RoomType.byName(roomType);
+        if (type == null) return 0;
+        Lane lane = lane(hotel, type);
+        synchronized (lane) {
+            return lane.waiting.size();
+        }
+    }
+
+    public int unassigned(Hotel hotel, String roomType) {
+        RoomType type = RoomType.byName(roomType);
+        if (type == null) return 0;
+        Lane lane = lane(hotel, type);
+        synchronized (lane) {
+            return lane.unassigned.size();
+        }
+    }
+
+    void track(Reservation reservation) {
+        Lane lane = lane(reservation.getHotel(), reservation.getRoom().getRoomType());
+        synchronized (lane) {
+            lane.unassigned.add(reservation);
+        }
+    }
+
+    void untrack(Reservation reservation) {
+        Lane lane = lane(reservation.getHotel(), reservation.getRoom().getRoomType());
+        synchronized (lane) {
+            lane.unassigned.remove(reservation);
+        }
+    }
+
+    void trackAll(Collection<Reservation> reservations) {
+        for (Reservation reservation : reservations) {
+            if (!reservation.getRoom().isAssigned() && !reservation.getStatus().equals("Cancelled")) {
+                track(reservation);
+            }
+        }
+    }
+
+    void reallocate(Hotel hotel, RoomType type, LocalDate from, LocalDate to,
+                    List<Reservation> moved, List<Reservation> promoted) {
+        Lane lane = lane(hotel, type);
+        LocalDate today = LocalDate.now(clock);
+        synchronized (lane) {
+            int budget = scanLimit;
+            for (Iterator<Reservation> it = lane.unassigned.iterator(); it.hasNext() && budget > 0; ) {
+                Reservation reservation = it.next();
+                budget--;
+                if (!reservation.getCheckIn().isBefore(to) || !reservation.getCheckOut().isAfter(from)) continue;
+                synchronized (reservation) {
+                    if (!reservation.isActive()) {
+                        it.remove();
+                        continue;
+                    }
+                    Room room = hotel.claimRoom(type.getName(), reservation.getCheckIn(), reservation.getCheckOut());
+                    if (room == null) continue;
+                    hotel.releaseRoom(reservation.getRoom(), reservation.getCheckIn(), reservation.getCheckOut());
+                    reservation.assignRoom(room);
+                }
+                it.remove();
+                moved.add(reservation);
+                PLACED.increment(hotel);
+            }
+
+            List<WaitlistEntry> skipped = new ArrayList<>();
+            while (budget > 0 && !lane.waiting.isEmpty()) {
+                WaitlistEntry entry = lane.waiting.poll();
+                budget--;
+                if (entry.getCheckIn().isBefore(today)) continue;
+                if (!entry.overlaps(from, to)) {
+                    skipped.add(entry);
+                    continue;
+                }
+                Room room = hotel.claimRoom(type.getName(), entry.getCheckIn(), entry.getCheckOut());
+                if (room == null) {
+                    skipped.add(entry);
+                    continue;
+                }
+                Reservation reservation = new Reservation(entry.getCustomer(), hotel, room,
+                        entry.getCheckIn(), entry.getCheckOut(), entry.getGuests());
+                reservation.setPaymentMethod("Cash");
+                promoted.add(reservation);
+                PROMOTED.increment(hotel);
+            }
+            lane.waiting.addAll(skipped);
+        }
+    }
+
+    private Lane lane(Hotel hotel, RoomType type) {
+        Lane[] byType = lanes.get(hotel);
+        if (byType == null || type.ordinal() >= byType.length) {
+            byType = lanes.compute(hotel, (h, current) -> {
+                if (current != null && type.ordinal() < current.length) return current;
+                int known = current == null ? 0 : current.length;
+                Lane[] grown = current == null ? new Lane[RoomType.count()] : Arrays.copyOf(current, RoomType.count());
+                for (int t = known; t < grown.length; t++) grown[t] = new Lane();
+                return grown;
+            });
+        }
+        return byType[type.ordinal()];
+    }
+}
+
+final class Hold {
+    private static final AtomicIntegerFieldUpdater<Hold> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Hold.class, "state");
+    private static final int PENDING = 0;
+    private static final int SETTLED = 1;
+    private static final int EXPIRED = 2;
+    private static final int RELEASED = 3;
+
+    final Reservation reservation;
+    long deadlineTick;
+    Hold prev;
+    Hold next;
+    private volatile int state;
+
+    Hold(Reservation reservation) {
+        this.reservation = reservation;
+    }
+
+    public Reservation getReservation() { return reservation; }
+    boolean settle() { return STATE.compareAndSet(this, PENDING, SETTLED); }
+    boolean expire() { return STATE.compareAndSet(this, PENDING, EXPIRED); }
+    boolean release() { return STATE.compareAndSet(this, PENDING, RELEASED); }
+    public boolean isExpired() { return state == EXPIRED; }
+}
+
+class HoldTimer {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private final long tickMillis;
+    private final Hold[] slots = new Hold[LEVELS * SLOTS];
+    private long nextTick;
+    private int size;
+
+    public HoldTimer(long tickMillis, long nowMillis) {
+        if (tickMillis < 1) throw new IllegalArgumentException("Tick must be at least 1 ms");
+        this.tickMillis = tickMillis;
+        this.nextTick = nowMillis / tickMillis + 1;
+        for (int i = 0; i < slots.length; i++) {
+            Hold head = new Hold(null);
+            head.prev = head;
+            head.next = head;
+            slots[i] = head;
+        }
+    }
+
+    public long getTickMillis() { return tickMillis; }
+    public synchronized int size() { return size; }
+
+    public synchronized void schedule(Hold hold, long deadlineMillis) {
+        hold.deadlineTick = (deadlineMillis + tickMillis - 1) / tickMillis;
+        place(hold);
+        size++;
+    }
+
+    public synchronized boolean cancel(Hold hold) {
+        if (hold.next == null) return false;
+        unlink(hold);
+        size--;
+        return true;
+    }
+
+    public List<Hold> advance(long nowMillis) {
+        List<Hold> expired = new ArrayList<>();
+        long target = nowMillis / tickMillis;
+        synchronized (this) {
+            while (nextTick <= target) {
+                if (size == 0) {
+                    nextTick = target + 1;
+                    break;
+                }
+                long tick = nextTick;
+                for (int level = LEVELS - 1; level > 0; level--) {
+                    if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) cascade(level, tick);
+                }
+                Hold head = slots[(int) (tick & (SLOTS - 1))];
+                for (Hold hold = head.next; hold != head; ) {
+                    Hold following = hold.next;
+                    if (hold.deadlineTick <= tick) {
+                        unlink(hold);
+                        size--;
+                        expired.add(hold);
+                    }
+                    hold = following;
+                }
+                nextTick = tick + 1;
+            }
+        }
+        return expired;
+    }
+
+    private void cascade(int level, long tick) {
+        Hold head = slots[level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1))];
+        Hold hold = head.next;
+        head.prev = head;
+        head.next = head;
+        while (hold != head) {
+            Hold following = hold.next;
+            place(hold);
+            hold = following;
+        }
+    }
+
+    private void place(Hold hold) {
+        long due = Math.min(Math.max(hold.deadlineTick, nextTick), nextTick + SPAN - 1);
+        long delta = due - nextTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) level++;
+        Hold head = slots[level * SLOTS + (int) ((due >>> (SLOT_BITS * level)) & (SLOTS - 1))];
+        hold.prev = head.prev;
+        hold.next = head;
+        head.prev.next = hold;
+        head.prev = hold;
+    }
+
+    private static void unlink(Hold hold) {
+        hold.prev.next = hold.next;
+        hold.next.prev = hold.prev;
+        hold.prev = null;
+        hold.next = null;
+    }
+}
+
+class BookingEngine {
+    private static final Metrics.Timer RESERVE = Metrics.INSTANCE.timer("hotel_booking_reserve_seconds",
+            "Holding a room for a new booking");
+    private static final Metrics.Timer PAYMENT = Metrics.INSTANCE.timer("hotel_payment_seconds",
+            "Payment authorization, including the gateway round trip");
+    private static final Metrics.Timer CANCEL = Metrics.INSTANCE.timer("hotel_booking_cancel_seconds",
+            "Cancellation, including waitlist reallocation");
+    private static final Metrics.Timer BATCH = Metrics.INSTANCE.timer("hotel_booking_batch_seconds",
+            "Batch bookings until every reservation is settled");
+    private static final Metrics.Counter SOLD_OUT = Metrics.INSTANCE.counter("hotel_booking_sold_out",
+            "Booking attempts with no room of the requested type");
+    private static final Metrics.Counter OVERBOOKED = Metrics.INSTANCE.counter("hotel_booking_overbooked",
+            "Bookings taken beyond physical inventory");
+    private static final Metrics.Counter PAYMENT_FAILED = Metrics.INSTANCE.counter("hotel_payment_failed",
+            "Declined or failed payments");
+    private static final Metrics.Counter REFUND_FAILED = Metrics.INSTANCE.counter("hotel_refund_failed",
+            "Declined or failed refunds");
+    private static final Metrics.Counter HOLD_EXPIRED = Metrics.INSTANCE.counter("hotel_hold_expired",
+            "Unpaid holds released after their time-to-live");
+    private static final Metrics.Counter HOLD_EXPIRY_FAILED = Metrics.INSTANCE.counter("hotel_hold_expiry_failed",
+            "Hold expiry batches whose waitlist promotions could not be journaled");
+
+    private final CustomerRepository customers;
+    private final ReservationRepository reservations;
+    private final PaymentProcessor payments;
+    private final ReservationJournal journal;
+    private final BookingEventBus events;
+    private final Waitlist waitlist;
+    private final RoomAssignmentOptimizer optimizer = new RoomAssignmentOptimizer();
+    private final long holdMillis = TimeUnit.SECONDS.toMillis(Integer.getInteger("holds.ttlSeconds", 900));
+    private final Clock clock;
+    private final HoldTimer holds;
+    private final LoyaltyEngine loyalty;
+
+    public BookingEngine(CustomerRepository customers, ReservationRepository reservations,
+                         PaymentProcessor payments, ReservationJournal journal) {
+        this(customers, reservations, payments, journal, BookingEventBus.direct());
+    }
+
+    public BookingEngine(CustomerRepository customers, ReservationRepository reservations,
+                         PaymentProcessor payments, ReservationJournal journal, BookingEventBus events) {
+        this(customers, reservations, payments, journal, events, Clock.systemDefaultZone());
+    }
+
+    public BookingEngine(CustomerRepository customers, ReservationRepository reservations,
+                         PaymentProcessor payments, ReservationJournal journal, BookingEventBus events,
+                         Clock clock) {
+        this.customers = customers;
+        this.reservations = reservations;
+        this.payments = payments;
+        this.journal = journal;
+        this.events = events;
+        this.clock = clock;
+        this.waitlist = new Waitlist(Integer.getInteger("waitlist.scanLimit", 64), clock);
+        this.holds = new HoldTimer(1000, clock.millis());
+        this.loyalty = new LoyaltyEngine(Integer.getInteger("loyalty.expiryDays", 365), LocalDate.now(clock));
+        loyalty.restore(reservations);
+        events.subscribe("loyalty", new LoyaltyListener(loyalty));
+        waitlist.trackAll(reservations.all());
+    }
+
+    public BookingEventBus getEvents() { return events; }
+    public LoyaltyEngine getLoyalty() { return loyalty; }
+    public HoldTimer getHolds() { return holds; }
+    public Clock getClock() { return clock; }
+    public Waitlist getWaitlist() { return waitlist; }
+
+    public Customer register(Customer customer) {
+        Customer registered = customers.register(customer);
+        if (registered == customer && journal.isEnabled()) {
+            List<ByteBuffer> records = new ArrayList<>(1);
+            new JournalCodec(records::add).onCustomer(customer.getId(), customer.getName(),
+                    customer.getEmail(), customer.getPhoneNumber());
+            journal.append(records).join();
+        }
+        return registered;
+    }
+
+    public void enroll(Customer customer) {
+        if (!journal.isEnabled()) return;
+        List<ByteBuffer> records = new ArrayList<>(2);
+        JournalCodec codec = new JournalCodec(records::add);
+        codec.onCustomer(customer.getId(), customer.getName(), customer.getEmail(), customer.getPhoneNumber());
+        if (customer.getAddress() != null) codec.onAddress(customer.getId(), customer.getAddress());
+        journal.append(records).join();
+    }
+
+    public void updateAddress(Customer customer, String address) {
+        customer.setAddress(address);
+        if (journal.isEnabled()) {
+            List<ByteBuffer> records = new ArrayList<>(1);
+            new JournalCodec(records::add).onAddress(customer.getId(), address);
+            journal.append(records).join();
+        }
+    }
+
+    public Reservation reserve(Customer customer, Hotel hotel, String roomType,
+                               LocalDate checkIn, LocalDate checkOut, int guests) {
+        long started = RESERVE.start();
+        Room room = hotel.claimRoom(roomType, checkIn, checkOut);
+        if (room == null) room = hotel.overbook(roomType, checkIn, checkOut);
+        if (room == null) {
+            SOLD_OUT.increment(hotel);
+            return null;
+        }
+        Reservation reservation = new Reservation(customer, hotel, room, checkIn, checkOut, guests);
+        Hold hold = new Hold(reservation);
+        reservation.setHold(hold);
+        holds.schedule(hold, clock.millis() + holdMillis);
+        if (!room.isAssigned()) {
+            waitlist.track(reservation);
+            OVERBOOKED.increment(hotel);
+        }
+        events.publish(BookingEventBus.CREATED, reservation);
+        RESERVE.stop(hotel, started);
+        return reservation;
+    }
+
+    public WaitlistEntry joinWaitlist(Customer customer, Hotel hotel, String roomType,
+                                      LocalDate checkIn, LocalDate checkOut, int guests) {
+        return waitlist.join(customer, hotel, roomType, checkIn, checkOut, guests);
+    }
+
+    public CompletableFuture<Reservation> pay(Reservation reservation, String paymentMethod) {
+        if (!settle(reservation)) return CompletableFuture.completedFuture(reservation);
+        reservation.setPaymentMethod(paymentMethod);
+        if (paymentMethod.equals("Cash")) {
+            return confirm(reservation).thenApply(v -> reservation);
+        }
+        long started = PAYMENT.start();
+        return payments.charge(reservation)
+                .handle((paid, error) -> {
+                    PAYMENT.stop(reservation.getHotel(), started);
+                    return error == null && paid;
+                })
+                .thenCompose(paid -> {
+                    if (paid) return confirm(reservation).thenApply(v -> reservation);
+                    PAYMENT_FAILED.increment(reservation.getHotel());
+                    Room room = close(reservation, "Pending", "Payment Failed");
+                    List<ByteBuffer> records = new ArrayList<>();
+                    JournalCodec codec = journal.isEnabled() ? new JournalCodec(records::add) : null;
+                    List<Reservation> promoted = vacate(reservation, room, codec);
+                    events.publish(BookingEventBus.PAYMENT_FAILED, reservation);
+                    return confirmAll(promoted, records, codec).thenApply(v -> reservation);
+                });
+    }
+
+    public CompletableFuture<Void> confirm(Reservation reservation) {
+        return confirmAll(List.of(reservation));
+    }
+
+    private CompletableFuture<Void> confirmAll(List<Reservation> batch) {
+        List<ByteBuffer> records = new ArrayList<>(journal.isEnabled() ? batch.size() * 2 : 0);
+        return confirmAll(batch, records, journal.isEnabled() ? new JournalCodec(records::add) : null);
+    }
+
+    private CompletableFuture<Void> confirmAll(List<Reservation> batch, List<ByteBuffer> records,
+                                               JournalCodec codec) {
+        for (Reservation reservation : batch) {
+            reservation.setStatus("Confirmed");
+            reservations.add(reservation);
+            reservation.getCustomer().addBooking(reservation);
+
+            if (codec != null) {
+                writeBooking(reservation, codec);
+                codec.onPoints(reservation.getCustomer().getId(), pointsFor(reservation));
+            }
+            events.publish(BookingEventBus.CONFIRMED, reservation);
+        }
+        return journal.append(records);
+    }
+
+    public CompletableFuture<BatchResult> bookBatch(List<BookingRequest> requests, boolean allOrNothing) {
+        long started = BATCH.start();
+        return placeBatch(requests, allOrNothing).whenComplete((result, error) -> BATCH.stop(started));
+    }
+
+    private CompletableFuture<BatchResult> placeBatch(List<BookingRequest> requests, boolean allOrNothing) {
+        BatchResult result = new BatchResult(requests.size());
+        boolean invalid = false;
+        for (int i = 0; i < requests.size(); i++) {
+            String problem = requests.get(i).validate();
+            if (problem != null) {
+                result.fail(i, problem);
+                invalid = true;
+            }
+        }
+        if (invalid && allOrNothing) {
+            result.failAll("Batch rejected: another request is invalid");
+            return CompletableFuture.completedFuture(result);
+        }
+
+        Map<List<Object>, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (result.getFailure(i) != null) continue;
+            BookingRequest request = requests.get(i);
+            groups.computeIfAbsent(List.of(request.getHotel(), request.getRoomType(),
+                    request.getCheckIn(), request.getCheckOut()), k -> new ArrayList<>()).add(i);
+        }
+
+        List<Reservation> held = new ArrayList<>();
+        List<Integer> heldRequests = new ArrayList<>();
+        for (List<Integer> group : groups.values()) {
+            BookingRequest first = requests.get(group.get(0));
+            List<Room> rooms = first.getHotel().claimRooms(first.getRoomType(),
+                    first.getCheckIn(), first.getCheckOut(), group.size());
+            for (int g = 0; g < group.size(); g++) {
+                int index = group.get(g);
+                if (g >= rooms.size()) {
+                    result.fail(index, "No " + first.getRoomType() + " rooms available");
+                    continue;
+                }
+                BookingRequest request = requests.get(index);
+                Reservation reservation = new Reservation(request.getCustomer(), request.getHotel(),
+                        rooms.get(g), request.getCheckIn(), request.getCheckOut(), request.getGuests());
+                reservation.setPaymentMethod(request.getPaymentMethod());
+                result.book(index, reservation);
+                held.add(reservation);
+                heldRequests.add(index);
+            }
+            if (rooms.size() < group.size() && allOrNothing) {
+                held.forEach(this::release);
+                result.failAll("Batch rejected: not enough rooms for every request");
+                return CompletableFuture.completedFuture(result);
+            }
+        }
+        for (Reservation reservation : held) {
+            events.publish(BookingEventBus.CREATED, reservation);
+        }
+
+        List<CompletableFuture<Boolean>> charges = new ArrayList<>(held.size());
+        for (Reservation reservation : held) {
+            charges.add(reservation.getPaymentMethod().equals("Cash")
+                    ? CompletableFuture.completedFuture(true)
+                    : payments.charge(reservation).handle((paid, error) -> error == null && paid));
+        }
+        return CompletableFuture.allOf(charges.toArray(new CompletableFuture<?>[0])).thenCompose(v -> {
+            boolean rejected = false;
+            for (CompletableFuture<Boolean> charge : charges) {
+                if (!charge.join() && allOrNothing) rejected = true;
+            }
+            List<Reservation> paid = new ArrayList<>(held.size());
+            List<CompletableFuture<?>> settled = new ArrayList<>();
+            for (int h = 0; h < held.size(); h++) {
+                Reservation reservation = held.get(h);
+                int index = heldRequests.get(h);
+                boolean charged = charges.get(h).join();
+                if (charged && !rejected) {
+                    paid.add(reservation);
+                } else if (charged) {
+                    if (!release(reservation)) continue;
+                    result.fail(index, "Batch rejected: another payment failed");
+                    events.publish(BookingEventBus.CANCELLED, reservation);
+                    settled.add(payments.refund(reservation).handle((refunded, error) -> {
+                        if (error == null && refunded) return null;
+                        REFUND_FAILED.increment(reservation.getHotel());
+                        result.fail(index, "Batch rejected: another payment failed, and the refund failed");
+                        return null;
+                    }));
+                } else if (close(reservation, "Pending", "Payment Failed") != null) {
+                    PAYMENT_FAILED.increment(reservation.getHotel());
+                    result.fail(index, "Payment failed");
+                    events.publish(BookingEventBus.PAYMENT_FAILED, reservation);
+                }
+            }
+            settled.add(confirmAll(paid));
+            return CompletableFuture.allOf(settled.toArray(new CompletableFuture<?>[0])).thenApply(done -> result);
+        });
+    }
+
+    static void writeBooking(Reservation reservation, JournalHandler out) {
+        out.onBooking(reservation.getId(), reservation.getCustomer().getId(),
+                reservation.getHotel().getIndex(), reservation.getHotel().roomRef(reservation.getRoom()),
+                reservation.getCheckIn(), reservation.getCheckOut(), reservation.getGuests(),
+                reservation.getRoomCost(), reservation.getDiscount(), reservation.getTotalAmount(),
+                reservation.getPaymentMethod(),
+                reservation.getBookingTime().toEpochSecond(ZoneOffset.UTC));
+    }
+
+    public static int pointsFor(Reservation reservation) {
+        return Money.points(reservation.getTotalAmount());
+    }
+
+    private boolean settle(Reservation reservation) {
+        Hold hold = reservation.getHold();
+        if (hold == null) return reservation.getStatus().equals("Pending");
+        if (!hold.settle()) return false;
+        holds.cancel(hold);
+        return true;
+    }
+
+    private boolean releaseHeld(Reservation reservation) {
+        Hold hold = reservation.getHold();
+        if (hold == null || !hold.release()) return false;
+        holds.cancel(hold);
+        return true;
+    }
+
+    public CompletableFuture<Void> releaseHold(Reservation reservation) {
+        if (!releaseHeld(reservation)) return CompletableFuture.completedFuture(null);
+        Room room = close(reservation, "Pending", "Cancelled");
+        List<ByteBuffer> records = new ArrayList<>();
+        JournalCodec codec = journal.isEnabled() ? new JournalCodec(records::add) : null;
+        List<Reservation> promoted = vacate(reservation, room, codec);
+        return confirmAll(promoted, records, codec);
+    }
+
+    public int expireHolds() {
+        return expireHolds(clock.millis());
+    }
+
+    int expireHolds(long nowMillis) {
+        List<Hold> due = holds.advance(nowMillis);
+        if (due.isEmpty()) return 0;
+        List<ByteBuffer> records = new ArrayList<>();
+        JournalCodec codec = journal.isEnabled() ? new JournalCodec(records::add) : null;
+        List<Reservation> promoted = new ArrayList<>();
+        int expired = 0;
+        for (Hold hold : due) {
+            if (!hold.expire()) continue;
+            Reservation reservation = hold.getReservation();
+            Room room = close(reservation, "Pending", "Expired");
+            if (room == null) continue;
+            promoted.addAll(vacate(reservation, room, codec));
+            HOLD_EXPIRED.increment(reservation.getHotel());
+            events.publish(BookingEventBus.EXPIRED, reservation);
+            expired++;
+        }
+        confirmAll(promoted, records, codec).whenComplete((v, error) -> {
+            if (error == null) return;
+            HOLD_EXPIRY_FAILED.increment();
+            System.out.println("Journaling promotions after hold expiry failed: " + error.getMessage());
+        });
+        return expired;
+    }
+
+    public boolean release(Reservation reservation) {
+        Room room = close(reservation, "Pending", "Cancelled");
+        if (room == null) return false;
+        if (!room.isAssigned()) waitlist.untrack(reservation);
+        return true;
+    }
+
+    private Room close(Reservation reservation, String from, String to) {
+        synchronized (reservation) {
+            if (!reservation.compareAndSetStatus(from, to)) return null;
+            Room room = reservation.getRoom();
+            reservation.getHotel().releaseRoom(room, reservation.getCheckIn(), reservation.getCheckOut());
+            return room;
+        }
+    }
+
+    private List<Reservation> vacate(Reservation reservation, Room room, JournalCodec codec) {
+        if (room == null) return List.of();
+        if (!room.isAssigned()) {
+            waitlist.untrack(reservation);
+            return List.of();
+        }
+        Hotel hotel = reservation.getHotel();
+        List<Reservation> moved = new ArrayList<>();
+        List<Reservation> promoted = new ArrayList<>();
+        waitlist.reallocate(hotel, room.getRoomType(), reservation.getCheckIn(), reservation.getCheckOut(),
+                moved, promoted);
+        if (codec != null) {
+            for (Reservation reassigned : moved) {
+                codec.onReassign(reassigned.getId(), hotel.roomRef(reassigned.getRoom()));
+            }
+        }
+        return promoted;
+    }
+
+    public CompletableFuture<Integer> reoptimize(Hotel hotel) {
+        LocalDate today = LocalDate.now(clock);
+        List<Reservation> moved = optimizer.optimize(hotel, reservations.findByHotel(hotel.getId()), today);
+        List<Reservation> promoted = new ArrayList<>();
+        for (RoomType type : RoomType.all()) {
+            if (waitlist.unassigned(hotel, type.getName()) == 0 && waitlist.depth(hotel, type.getName()) == 0) continue;
+            waitlist.reallocate(hotel, type, today, hotel.getCalendar().getEnd(), moved, promoted);
+        }
+        List<ByteBuffer> records = new ArrayList<>();
+        JournalCodec codec = journal.isEnabled() ? new JournalCodec(records::add) : null;
+        if (codec != null) {
+            for (Reservation reassigned : moved) {
+                codec.onReassign(reassigned.getId(), hotel.roomRef(reassigned.getRoom()));
+            }
+        }
+        return confirmAll(promoted, records, codec).thenApply(v -> moved.size());
+    }
+
+    public boolean canCancel(Reservation reservation) {
+        return reservation.canCancel(LocalDate.now(clock));
+    }
+
+    public long cancellationFee(Reservation reservation) {
+        return reservation.getCancellationFee(LocalDate.now(clock));
+    }
+
+    public RefundExposure refundExposure(List<Hotel> hotels) {
+        return RefundExposure.of(hotels, reservations.all(), LocalDate.now(clock));
+    }
+
+    public CompletableFuture<Boolean> cancel(Reservation reservation) {
+        long started = CANCEL.start();
+        boolean held = releaseHeld(reservation);
+        long fee = held ? 0 : cancellationFee(reservation);
+        Room room = close(reservation, held ? "Pending" : "Confirmed", "Cancelled");
+        if (room == null) {
+            CANCEL.stop(reservation.getHotel(), started);
+            return CompletableFuture.completedFuture(false);
+        }
+        reservation.setRetainedFee(fee);
+        List<ByteBuffer> records = new ArrayList<>();
+        JournalCodec codec = journal.isEnabled() ? new JournalCodec(records::add) : null;
+        if (codec != null && !held) codec.onCancel(reservation.getId(), fee);
+        List<Reservation> promoted = vacate(reservation, room, codec);
+        if (!held) events.publish(BookingEventBus.CANCELLED, reservation);
+        CompletableFuture<Boolean> done = confirmAll(promoted, records, codec).thenApply(v -> true);
+        CANCEL.stop(reservation.getHotel(), started);
+        return done;
+    }
+}
+
+class RefundExposure {
+    private static final int LEAF_SIZE = 16_384;
+
+    private final List<Hotel> hotels;
+    private final LocalDate asOf;
+    private final int[] future;
+    private final int[] locked;
+    private final long[] booked;
+    private final long[] refundable;
+    private final long[] fees;
+    private final long[] lockedValue;
+
+    private RefundExposure(List<Hotel> hotels, LocalDate asOf) {
+        this.hotels = hotels;
+        this.asOf = asOf;
+        int n = hotels.size();
+        future = new int[n];
+        locked = new int[n];
+        booked = new long[n];
+        refundable = new long[n];
+        fees = new long[n];
+        lockedValue = new long[n];
+    }
+
+    public static RefundExposure of(List<Hotel> hotels, Collection<Reservation> reservations, LocalDate asOf) {
+        Reservation[] all = reservations.toArray(new Reservation[0]);
+        int types = RoomType.count();
+        int horizon = 0;
+        for (Hotel hotel : hotels) {
+            for (RoomType type : RoomType.all()) {
+                horizon = Math.max(horizon, hotel.getCancellationPolicy(type).horizon());
+            }
+        }
+        int[] schedule = new int[hotels.size() * types * (horizon + 1)];
+        for (int h = 0; h < hotels.size(); h++) {
+            for (int t = 0; t < types; t++) {
+                CancellationPolicy policy = hotels.get(h).getCancellationPolicy(RoomType.byOrdinal(t));
+                int base = (h * types + t) * (horizon + 1);
+                for (int d = 0; d <= horizon; d++) {
+                    schedule[base + d] = policy.allows(d) ? policy.feeBasisPoints(d) : -1;
+                }
+            }
+        }
+        Columns columns = new Columns(all.length);
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int leafSize = Math.max(LEAF_SIZE, all.length / (pool.getParallelism() * 4) + 1);
+        pool.invoke(new Load(all, hotels, asOf.toEpochDay(), horizon, columns, 0, all.length, leafSize));
+        long[][] sums = pool.invoke(new Sum(hotels.size(), types, horizon, schedule, columns,
+                0, all.length, leafSize));
+        RefundExposure report = new RefundExposure(hotels, asOf);
+        for (int h = 0; h < hotels.size(); h++) {
+            report.future[h] = (int) sums[h][0];
+            report.locked[h] = (int) sums[h][1];
+            report.booked[h] = sums[h][2];
+            report.refundable[h] = sums[h][3];
+            report.fees[h] = sums[h][4];
+            report.lockedValue[h] = sums[h][5];
+        }
+        return report;
+    }
+
+    private static final class Columns {
+        final int[] plan;
+        final int[] days;
+        final long[] totals;
+
+        Columns(int size) {
+            plan = new int[size];
+            days = new int[size];
+            totals = new long[size];
+        }
+    }
+
+    private static final class Load extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Reservation[] reservations;
+        private final List<Hotel> hotels;
+        private final long asOf;
+        private final int horizon;
+        private final Columns columns;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        Load(Reservation[] reservations, List<Hotel> hotels, long asOf, int horizon, Columns columns,
+             int from, int to, int leafSize) {
+            this.reservations = reservations;
+            this.hotels = hotels;
+            this.asOf = asOf;
+            this.horizon = horizon;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        protected void compute() {
+            if (to - from > leafSize) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Load(reservations, hotels, asOf, horizon, columns, from, mid, leafSize),
+                        new Load(reservations, hotels, asOf, horizon, columns, mid, to, leafSize));
+                return;
+            }
+            int types = RoomType.count();
+            for (int r = from; r < to; r++) {
+                Reservation reservation = reservations[r];
+                Hotel hotel = reservation.getHotel();
+                int h = hotel.getIndex();
+                long until = reservation.getCheckIn().toEpochDay() - asOf;
+                if (h < 0 || h >= hotels.size() || hotels.get(h) != hotel || until <= 0
+                        || !reservation.getStatus().equals("Confirmed")) {
+                    columns.plan[r] = -1;
+                    continue;
+                }
+                columns.plan[r] = h * types + reservation.getRoom().getTypeOrdinal();
+                columns.days[r] = (int) Math.min(until, horizon);
+                columns.totals[r] = reservation.getTotalAmount();
+            }
+        }
+    }
+
+    private static final class Sum extends RecursiveTask<long[][]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int hotelCount;
+        private final int types;
+        private final int horizon;
+        private final int[] schedule;
+        private final Columns columns;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        Sum(int hotelCount, int types, int horizon, int[] schedule, Columns columns, int from, int to, int leafSize) {
+            this.hotelCount = hotelCount;
+            this.types = types;
+            this.horizon = horizon;
+            this.schedule = schedule;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        protected long[][] compute() {
+            if (to - from > leafSize) {
+                int mid = (from + to) >>> 1;
+                Sum left = new Sum(hotelCount, types, horizon, schedule, columns, from, mid, leafSize);
+                left.fork();
+                long[][] right = new Sum(hotelCount, types, horizon, schedule, columns, mid, to, leafSize).compute();
+                long[][] merged = left.join();
+                for (int h = 0; h < hotelCount; h++) {
+                    for (int c = 0; c < merged[h].length; c++) merged[h][c] += right[h][c];
+                }
+                return merged;
+            }
+            int[] plan = columns.plan;
+            int[] days = columns.days;
+            long[] totals = columns.totals;
+            long[][] sums = new long[hotelCount][6];
+            for (int r = from; r < to; r++) {
+                int p = plan[r];
+                if (p < 0) continue;
+                long[] hotel = sums[p / types];
+                long total = totals[r];
+                int fee = schedule[p * (horizon + 1) + days[r]];
+                hotel[0]++;
+                hotel[2] += total;
+                if (fee < 0) {
+                    hotel[1]++;
+                    hotel[5] += total;
+                } else {
+                    long retained = Money.percent(total, fee);
+                    hotel[3] += total - retained;
+                    hotel[4] += retained;
+                }
+            }
+            return sums;
+        }
+    }
+
+    public LocalDate getAsOf() { return asOf; }
+    public int getFutureReservations(int hotel) { return future[hotel]; }
+    public long getBooked(int hotel) { return booked[hotel]; }
+    public long getRefundable(int hotel) { return refundable[hotel]; }
+    public long getFees(int hotel) { return fees[hotel]; }
+    public long getNonRefundable(int hotel) { return lockedValue[hotel]; }
+
+    public void print() {
+        System.out.println("\n=== REFUND LIABILITY AS OF " + asOf + " ===\n");
+        System.out.printf("%-20s %8s %8s %14s %14s %12s %14s%n", "Hotel", "Future", "Locked",
+                "Booked", "Refundable", "Fees", "Non-refundable");
+        Map<Currency, long[]> totals = new LinkedHashMap<>();
+        for (int h = 0; h < hotels.size(); h++) {
+            Currency currency = hotels.get(h).getCurrency();
+            System.out.printf("%-20s %8d %8d %14s %14s %12s %14s%n", hotels.get(h).getName(), future[h], locked[h],
+                    Money.format(booked[h], currency), Money.format(refundable[h], currency),
+                    Money.format(fees[h], currency), Money.format(lockedValue[h], currency));
+            long[] sum = totals.computeIfAbsent(currency, c -> new long[2]);
+            sum[0] += booked[h];
+            sum[1] += refundable[h];
+        }
+        for (Map.Entry<Currency, long[]> entry : totals.entrySet()) {
+            Currency currency = entry.getKey();
+            System.out.println("\n" + currency.getCurrencyCode() + ": " + Money.format(entry.getValue()[1], currency)
+                    + " refundable of " + Money.format(entry.getValue()[0], currency) + " booked for future stays");
+        }
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"asOf\":\"").append(asOf).append("\",\"hotels\":[");
+        for (int h = 0; h < hotels.size(); h++) {
+            if (h > 0) json.append(',');
+            json.append("{\"hotel\":").append(h + 1)
+                .append(",\"currency\":\"").append(hotels.get(h).getCurrency().getCurrencyCode()).append('"')
+                .append(",\"future\":").append(future[h])
+                .append(",\"locked\":").append(locked[h]);
+            Money.appendDecimal(json.append(",\"booked\":"), booked[h]);
+            Money.appendDecimal(json.append(",\"refundable\":"), refundable[h]);
+            Money.appendDecimal(json.append(",\"fees\":"), fees[h]);
+            Money.appendDecimal(json.append(",\"nonRefundable\":"), lockedValue[h]);
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+}
+
+class ReconciliationReport {
+    private final List<Hotel> hotels;
+    private final int[] confirmed;
+    private final int[] cancelled;
+    private final int[] unpaid;
+    private final long[] listRevenue;
+    private final long[] discounts;
+    private final long[] charged;
+    private final long[] refunds;
+    private final long[] retainedFees;
+    private final long[] points;
+    private int mismatches;
+
+    private ReconciliationReport(List<Hotel> hotels) {
+        this.hotels = hotels;
+        int n = hotels.size();
+        confirmed = new int[n];
+        cancelled = new int[n];
+        unpaid = new int[n];
+        listRevenue = new long[n];
+        discounts = new long[n];
+        charged = new long[n];
+        refunds = new long[n];
+        retainedFees = new long[n];
+        points = new long[n];
+    }
+
+    public static ReconciliationReport of(List<Hotel> hotels, Collection<Reservation> reservations) {
+        ReconciliationReport report = new ReconciliationReport(hotels);
+        for (Reservation reservation : reservations) {
+            report.add(reservation);
+        }
+        return report;
+    }
+
+    public static ReconciliationReport of(List<Hotel> hotels, ReservationRepository reservations) {
+        ReconciliationReport report = of(hotels, reservations.all());
+        reservations.forEachArchived(report::add);
+        return report;
+    }
+
+    private void add(Reservation reservation) {
+        int h = reservation.getHotel().getIndex();
+        if (h < 0 || h >= hotels.size()) return;
+        String status = reservation.getStatus();
+        boolean isCancelled = status.equals("Cancelled");
+        if (!isCancelled && !status.equals("Confirmed")) {
+            unpaid[h]++;
+            return;
+        }
+        long total = reservation.getTotalAmount();
+        if (reservation.getRoomCost() - reservation.getDiscount() != total) mismatches++;
+        listRevenue[h] += reservation.getRoomCost();
+        discounts[h] += reservation.getDiscount();
+        charged[h] += total;
+        points[h] += Money.points(total);
+        if (isCancelled) {
+            cancelled[h]++;
+            retainedFees[h] += reservation.getRetainedFee();
+            refunds[h] += total - reservation.getRetainedFee();
+        } else {
+            confirmed[h]++;
+        }
+    }
+
+    public long getCollected(int hotel) { return charged[hotel] - refunds[hotel]; }
+    public long getCharged(int hotel) { return charged[hotel]; }
+    public long getRefunds(int hotel) { return refunds[hotel]; }
+    public long getRetainedFees(int hotel) { return retainedFees[hotel]; }
+    public long getPoints(int hotel) { return points[hotel]; }
+    public int getMismatches() { return mismatches; }
+
+    public void print() {
+        System.out.println("\n=== RECONCILIATION ===\n");
+        System.out.printf("%-20s %9s %9s %7s %14s %12s %14s %12s %12s %14s %10s%n", "Hotel", "Confirmed",
+                "Cancelled", "Unpaid", "List", "Discounts", "Charged", "Refunds", "Fees kept", "Collected", "Points");
+        Map<Currency, long[]> totals = new LinkedHashMap<>();
+        for (int h = 0; h < hotels.size(); h++) {
+            Currency currency = hotels.get(h).getCurrency();
+            System.out.printf("%-20s %9d %9d %7d %14s %12s %14s %12s %12s %14s %10d%n", hotels.get(h).getName(),
+                    confirmed[h], cancelled[h], unpaid[h], Money.format(listRevenue[h], currency),
+                    Money.format(discounts[h], currency), Money.format(charged[h], currency),
+                    Money.format(refunds[h], currency), Money.format(retainedFees[h], currency),
+                    Money.format(getCollected(h), currency), points[h]);
+            long[] sum = totals.computeIfAbsent(currency, c -> new long[5]);
+            sum[0] += charged[h];
+            sum[1] += refunds[h];
+            sum[2] += getCollected(h);
+            sum[3] += retainedFees[h];
+            sum[4] += points[h];
+        }
+        for (Map.Entry<Currency, long[]> entry : totals.entrySet()) {
+            long[] sum = entry.getValue();
+            Currency currency = entry.getKey();
+            System.out.println("\n" + currency.getCurrencyCode() + ": charged " + Money.format(sum[0], currency)
+                    + " - refunds " + Money.format(sum[1], currency) + " = collected "
+                    + Money.format(sum[2], currency) + " (fees kept " + Money.format(sum[3], currency)
+                    + ", " + sum[4] + " points issued)");
+        }
+        System.out.println(mismatches == 0 ? "All reservations reconcile (list - discount = total)."
+                : mismatches + " reservations do not reconcile (list - discount != total).");
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"hotels\":[");
+        for (int h = 0; h < hotels.size(); h++) {
+            if (h > 0) json.append(',');
+            json.append("{\"hotel\":").append(h + 1)
+                .append(",\"currency\":\"").append(hotels.get(h).getCurrency().getCurrencyCode()).append('"')
+                .append(",\"confirmed\":").append(confirmed[h])
+                .append(",\"cancelled\":").append(cancelled[h])
+                .append(",\"unpaid\":").append(unpaid[h]);
+            Money.appendDecimal(json.append(",\"list\":"), listRevenue[h]);
+            Money.appendDecimal(json.append(",\"discounts\":"), discounts[h]);
+            Money.appendDecimal(json.append(",\"charged\":"), charged[h]);
+            Money.appendDecimal(json.append(",\"refunds\":"), refunds[h]);
+            Money.appendDecimal(json.append(",\"feesKept\":"), retainedFees[h]);
+            Money.appendDecimal(json.append(",\"collected\":"), getCollected(h));
+            json.append(",\"points\":").append(points[h]).append('}');
+        }
+        return json.append("],\"mismatches\":").append(mismatches).append('}').toString();
+    }
+}
+
+class OccupancyAnalytics implements BookingListener {
+    private static final int NIGHTS = 0;
+    private static final int REVENUE = 1;
+    private static final int LEAF_SIZE = 50_000;
+
+    private final List<Hotel> hotels;
+    private final int days;
+    private final int typeCount;
+    private final int[][] capacity;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Window window;
+
+    public OccupancyAnalytics(List<Hotel> hotels, LocalDate firstDay, int days) {
+        this.hotels = hotels;
+        this.days = days;
+        this.typeCount = RoomType.count();
+        this.capacity = new int[hotels.size()][typeCount];
+        for (int h = 0; h < hotels.size(); h++) {
+            for (Room room : hotels.get(h).getRooms()) {
+                capacity[h][room.getTypeOrdinal()]++;
+            }
+        }
+        AtomicLongArray[] empty = new AtomicLongArray[hotels.size()];
+        for (int h = 0; h < empty.length; h++) empty[h] = new AtomicLongArray(treeLength());
+        this.window = new Window(firstDay.toEpochDay(), empty);
+    }
+
+    private static final class Window {
+        final long firstDay;
+        final AtomicLongArray[] trees;
+
+        Window(long firstDay, AtomicLongArray[] trees) {
+            this.firstDay = firstDay;
+            this.trees = trees;
+        }
+    }
+
+    public LocalDate getFirstDay() { return LocalDate.ofEpochDay(window.firstDay); }
+    public LocalDate getEndDay() { return LocalDate.ofEpochDay(window.firstDay + days); }
+
+    public void onConfirmed(Reservation reservation) {
+        apply(reservation, 1);
+    }
+
+    public void onCancelled(Reservation reservation) {
+        apply(reservation, -1);
+    }
+
+    private void apply(Reservation reservation, int sign) {
+        int h = reservation.getHotel().getIndex();
+        if (h < 0 || h >= capacity.length) return;
+        lock.readLock().lock();
+        try {
+            Window current = window;
+            AtomicLongArray tree = current.trees[h];
+            int type = reservation.getRoom().getTypeOrdinal();
+            if (type >= typeCount) return;
+            int nightsOffset = offset(type, NIGHTS);
+            int revenueOffset = offset(type, REVENUE);
+            long first = reservation.getCheckIn().toEpochDay();
+            int nights = (int) (reservation.getCheckOut().toEpochDay() - first);
+            long perNight = reservation.getTotalAmount() / nights;
+            long remainder = reservation.getTotalAmount() % nights;
+            for (int i = 0; i < nights; i++) {
+                long day = first + i - current.firstDay;
+                if (day < 0 || day >= days) continue;
+                add(tree, nightsOffset, (int) day, sign);
+                add(tree, revenueOffset, (int) day, sign * (perNight + (i < remainder ? 1 : 0)));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void rebuild(Collection<Reservation> reservations) {
+        Reservation[] all = reservations.toArray(new Reservation[0]);
+        lock.writeLock().lock();
+        try {
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            int leafSize = Math.max(LEAF_SIZE, all.length / (pool.getParallelism() * 4) + 1);
+            long firstDay = window.firstDay;
+            long[][] daily = pool.invoke(new Rebuild(all, firstDay, 0, all.length, leafSize));
+            AtomicLongArray[] rebuilt = new AtomicLongArray[hotels.size()];
+            for (int h = 0; h < rebuilt.length; h++) {
+                rebuilt[h] = build(daily[h] == null ? new long[treeLength()] : daily[h]);
+            }
+            window = new Window(firstDay, rebuilt);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void advanceTo(LocalDate start) {
+        lock.writeLock().lock();
+        try {
+            long shift = start.toEpochDay() - window.firstDay;
+            if (shift <= 0) return;
+            AtomicLongArray[] shifted = new AtomicLongArray[window.trees.length];
+            for (int h = 0; h < shifted.length; h++) {
+                AtomicLongArray tree = window.trees[h];
+                long[] cells = new long[treeLength()];
+                for (int series = 0; series < typeCount * 2; series++) {
+                    int base = series * (days + 1);
+                    for (long day = shift; day < days; day++) {
+                        cells[base + 1 + (int) (day - shift)] =
+                                prefix(tree, base, (int) day + 1) - prefix(tree, base, (int) day);
+                    }
+                }
+                shifted[h] = build(cells);
+            }
+            window = new Window(start.toEpochDay(), shifted);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private AtomicLongArray build(long[] cells) {
+        for (int series = 0; series < typeCount * 2; series++) {
+            int base = series * (days + 1);
+            for (int i = 1; i <= days; i++) {
+                int parent = i + (i & -i);
+                if (parent <= days) cells[base + parent] += cells[base + i];
+            }
+        }
+        return new AtomicLongArray(cells);
+    }
+
+    private final class Rebuild extends RecursiveTask<long[][]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Reservation[] reservations;
+        private final long firstDay;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        Rebuild(Reservation[] reservations, long firstDay, int from, int to, int leafSize) {
+            this.reservations = reservations;
+            this.firstDay = firstDay;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        protected long[][] compute() {
+            if (to - from > leafSize) {
+                int mid = (from + to) >>> 1;
+                Rebuild left = new Rebuild(reservations, firstDay, from, mid, leafSize);
+                left.fork();
+                long[][] right = new Rebuild(reservations, firstDay, mid, to, leafSize).compute();
+                return merge(left.join(), right);
+            }
+            long[][] daily = new long[hotels.size()][];
+            for (int r = from; r < to; r++) {
+                Reservation reservation = reservations[r];
+                int h = reservation.getHotel().getIndex();
+                if (h < 0 || h >= daily.length || !reservation.getStatus().equals("Confirmed")) continue;
+                int type = reservation.getRoom().getTypeOrdinal();
+                if (type >= typeCount) continue;
+                if (daily[h] == null) daily[h] = new long[treeLength()];
+                long[] cells = daily[h];
+                int nightsOffset = offset(type, NIGHTS) + 1;
+                int revenueOffset = offset(type, REVENUE) + 1;
+                long first = reservation.getCheckIn().toEpochDay();
+                int nights = (int) (reservation.getCheckOut().toEpochDay() - first);
+                long perNight = reservation.getTotalAmount() / nights;
+                long remainder = reservation.getTotalAmount() % nights;
+                for (int i = 0; i < nights; i++) {
+                    long day = first + i - firstDay;
+                    if (day < 0 || day >= days) continue;
+                    cells[nightsOffset + (int) day]++;
+                    cells[revenueOffset + (int) day] += perNight + (i < remainder ? 1 : 0);
+                }
+            }
+            return daily;
+        }
+
+        private long[][] merge(long[][] left, long[][] right) {
+            for (int h = 0; h < left.length; h++) {
+                if (left[h] == null) {
+                    left[h] = right[h];
+                } else if (right[h] != null) {
+                    for (int i = 0; i < left[h].length; i++) left[h][i] += right[h][i];
+                }
+            }
+            return left;
+        }
+    }
+
+    public long roomNightsSold(Hotel hotel, RoomType type, LocalDate from, LocalDate to) {
+        return sum(hotel, type, NIGHTS, from, to);
+    }
+
+    public long roomRevenue(Hotel hotel, RoomType type, LocalDate from, LocalDate to) {
+        return sum(hotel, type, REVENUE, from, to);
+    }
+
+    public long roomNightsAvailable(Hotel hotel, RoomType type, LocalDate from, LocalDate to) {
+        int[] rooms = capacity[hotel.getIndex()];
+        long count = 0;
+        for (int t = 0; t < typeCount; t++) {
+            if (type == null || type.ordinal() == t) count += rooms[t];
+        }
+        long firstDay = window.firstDay;
+        return count * (clamp(firstDay, to) - clamp(firstDay, from));
+    }
+
+    public double occupancy(Hotel hotel, RoomType type, LocalDate from, LocalDate to) {
+        long available = roomNightsAvailable(hotel, type, from, to);
+        return available == 0 ? 0 : (double) roomNightsSold(hotel, type, from, to) / available;
+    }
+
+    public long averageDailyRate(Hotel hotel, RoomType type, LocalDate from, LocalDate to) {
+        long sold = roomNightsSold(hotel, type, from, to);
+        return sold == 0 ? 0 : roomRevenue(hotel, type, from, to) / sold;
+    }
+
+    public long revPar(Hotel hotel, RoomType type, LocalDate from, LocalDate to) {
+        long available = roomNightsAvailable(hotel, type, from, to);
+        return available == 0 ? 0 : roomRevenue(hotel, type, from, to) / available;
+    }
+
+    private long sum(Hotel hotel, RoomType type, int metric, LocalDate from, LocalDate to) {
+        Window current = window;
+        AtomicLongArray tree = current.trees[hotel.getIndex()];
+        int first = clamp(current.firstDay, from);
+        int last = clamp(current.firstDay, to);
+        long total = 0;
+        for (int t = 0; t < typeCount; t++) {
+            if (type != null && type.ordinal() != t) continue;
+            int offset = offset(t, metric);
+            total += prefix(tree, offset, last) - prefix(tree, offset, first);
+        }
+        return total;
+    }
+
+    private int treeLength() {
+        return typeCount * 2 * (days + 1);
+    }
+
+    private int offset(int type, int metric) {
+        return (type * 2 + metric) * (days + 1);
+    }
+
+    private int clamp(long firstDay, LocalDate date) {
+        long n = date.toEpochDay() - firstDay;
+        return (int) Math.max(0, Math.min(days, n));
+    }
+
+    private void add(AtomicLongArray tree, int offset, int day, long delta) {
+        for (int i = day + 1; i <= days; i += i & -i) {
+            tree.getAndAdd(offset + i, delta);
+        }
+    }
+
+    private long prefix(AtomicLongArray tree, int offset, int count) {
+        long total = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            total += tree.get(offset + i);
+        }
+        return total;
+    }
+}
+
+class BookingApi {
+    private final List<Hotel> hotels;
+    private final CustomerRepository customers;
+    private final ReservationRepository reservations;
+    private final BookingEngine engine;
+    private final SearchEngine search;
+    private final OccupancyAnalytics analytics;
+    private final NotificationOutbox notifications;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private interface Route {
+        String handle(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    static class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    public BookingApi(List<Hotel> hotels, CustomerRepository customers, ReservationRepository reservations,
+                      BookingEngine engine, SearchEngine search, OccupancyAnalytics analytics,
+                      NotificationOutbox notifications) {
+        this.hotels = hotels;
+        this.customers = customers;
+        this.reservations = reservations;
+        this.engine = engine;
+        this.search = search;
+        this.analytics = analytics;
+        this.notifications = notifications;
+    }
+
+    public int start(int port) throws IOException {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        executor = VirtualThreads.newPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/hotels", exchange -> handle(exchange, "GET", this::hotels));
+        server.createContext("/availability", exchange -> handle(exchange, "GET", this::availability));
+        server.createContext("/search", exchange -> handle(exchange, "GET", this::search));
+        server.createContext("/loyalty", exchange -> handle(exchange, "GET", this::loyalty));
+        server.createContext("/reconciliation", exchange -> handle(exchange, "GET", this::reconciliation));
+        server.createContext("/liability", exchange -> handle(exchange, "GET", this::liability));
+        server.createContext("/analytics", exchange -> handle(exchange, "GET", this::analytics));
+        server.createContext("/notifications", exchange -> handle(exchange, "GET", this::notifications));
+        server.createContext("/history", exchange -> handle(exchange, "GET", this::history));
+        server.createContext("/waitlist", exchange -> handle(exchange, "POST", this::waitlist));
+        server.createContext("/metrics", this::metrics);
+        server.createContext("/bookings", exchange -> {
+            switch (exchange.getRequestMethod()) {
+                case "POST":
+                    handle(exchange, "POST", exchange.getRequestURI().getPath().endsWith("/batch")
+                            ? this::bookBatch : this::book);
+                    break;
+                case "DELETE": handle(exchange, "DELETE", this::cancel); break;
+                default: handle(exchange, "GET", this::booking);
+            }
+        });
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    public int getPort() { return server.getAddress().getPort(); }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange, String method, Route route) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            if (!exchange.getRequestMethod().equals(method)) {
+                throw new ApiException(405, "Method not allowed");
+            }
+            body = route.handle(exchange, params(exchange));
+            if (method.equals("POST")) status = 201;
+        } catch (ApiException e) {
+            status = e.status;
+            body = error(e.getMessage());
+        } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (RuntimeException e) {
+            status = 500;
+            body = error("Internal error");
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (java.io.OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        byte[] bytes = Metrics.INSTANCE.toPrometheus().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (java.io.OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private String hotels(HttpExchange exchange, Map<String, String> params) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < hotels.size(); i++) {
+            Hotel hotel = hotels.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"hotel\":").append(i + 1)
+                .append(",\"id\":").append(quote(hotel.getHotelId()))
+                .append(",\"name\":").append(quote(hotel.getName()))
+                .append(",\"location\":").append(quote(hotel.getLocation()))
+                .append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private String availability(HttpExchange exchange, Map<String, String> params) {
+        Hotel hotel = hotel(params);
+        LocalDate checkIn = date(params, "checkIn");
+        LocalDate checkOut = date(params, "checkOut");
+        validateStay(hotel, checkIn, checkOut);
+        StringBuilder json = new StringBuilder("{\"hotel\":").append(quote(hotel.getName()))
+                .append(",\"checkIn\":").append(quote(checkIn.toString()))
+                .append(",\"checkOut\":").append(quote(checkOut.toString()))
+                .append(",\"rooms\":{");
+        List<RoomType> types = RoomType.all();
+        for (int i = 0; i < types.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append(quote(types.get(i).getName())).append(':')
+                .append(hotel.countAvailableRooms(types.get(i).getName(), checkIn, checkOut));
+        }
+        json.append("},\"quotes\":{");
+        for (int i = 0; i < types.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append(quote(types.get(i).getName())).append(':')
+                .append(Money.decimal(hotel.quote(types.get(i), checkIn, checkOut)));
+        }
+        return json.append("}}").toString();
+    }
+
+    private String search(HttpExchange exchange, Map<String, String> params) {
+        SearchQuery query = new SearchQuery(date(params, "checkIn"), date(params, "checkOut"))
+                .location(params.get("location"))
+                .guests(intParam(params, "guests", 1))
+                .priceBand(Money.units(intParam(params, "minPrice", 0)),
+                        Money.units(intParam(params, "maxPrice", Integer.MAX_VALUE)))
+                .page(intParam(params, "offset", 0), intParam(params, "limit", 20));
+        if (params.containsKey("amenities")) query.amenities(params.get("amenities").split(","));
+        SearchPage page = search.search(query);
+        StringBuilder json = new StringBuilder("{\"total\":").append(page.getTotal()).append(",\"results\":[");
+        for (int i = 0; i < page.getResults().size(); i++) {
+            SearchResult result = page.getResults().get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"hotel\":").append(quote(result.getHotel().getName()))
+                .append(",\"location\":").append(quote(result.getHotel().getLocation()))
+                .append(",\"room\":").append(quote(result.getRoom().getRoomNumber()))
+                .append(",\"type\":").append(quote(result.getRoom().getType()))
+                .append(",\"pricePerNight\":").append(Money.decimal(result.getRoom().getPricePerNight()))
+                .append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private String loyalty(HttpExchange exchange, Map<String, String> params) {
+        Customer customer = customers.findByEmail(required(params, "email"));
+        if (customer == null) throw new ApiException(404, "No customer found");
+        return "{\"name\":" + quote(customer.getName())
+                + ",\"tier\":" + quote(customer.getMembershipTier())
+                + ",\"points\":" + customer.getLoyaltyPoints()
+                + ",\"discount\":" + customer.getDiscountRate() + "}";
+    }
+
+    private String analytics(HttpExchange exchange, Map<String, String> params) {
+        Hotel hotel = hotel(params);
+        LocalDate from = date(params, "from");
+        LocalDate to = date(params, "to");
+        if (!to.isAfter(from)) throw new IllegalArgumentException("to must be after from");
+        RoomType type = null;
+        if (params.containsKey("type")) {
+            type = RoomType.byName(params.get("type"));
+            if (type == null) throw new IllegalArgumentException("Unknown room type: " + params.get("type"));
+        }
+        StringBuilder json = new StringBuilder("{\"hotel\":").append(quote(hotel.getName()))
+                .append(",\"from\":").append(quote(from.toString()))
+                .append(",\"to\":").append(quote(to.toString()))
+                .append(",\"roomNightsSold\":").append(analytics.roomNightsSold(hotel, type, from, to))
+                .append(",\"roomNightsAvailable\":").append(analytics.roomNightsAvailable(hotel, type, from, to))
+                .append(",\"occupancy\":").append(String.format("%.4f", analytics.occupancy(hotel, type, from, to)));
+        Money.appendDecimal(json.append(",\"revenue\":"), analytics.roomRevenue(hotel, type, from, to));
+        Money.appendDecimal(json.append(",\"adr\":"), analytics.averageDailyRate(hotel, type, from, to));
+        Money.appendDecimal(json.append(",\"revpar\":"), analytics.revPar(hotel, type, from, to));
+        return json.append('}').toString();
+    }
+
+    private String notifications(HttpExchange exchange, Map<String, String> params) {
+        Customer customer = customers.findByEmail(required(params, "email"));
+        if (customer == null) throw new ApiException(404, "No customer found");
+        StringBuilder json = new StringBuilder("{\"messages\":[");
+        List<String> messages = notifications.messagesFor(customer);
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append(quote(messages.get(i)));
+        }
+        return json.append("]}").toString();
+    }
+
+    private String history(HttpExchange exchange, Map<String, String> params) {
+        Customer customer = customers.findByEmail(required(params, "email"));
+        if (customer == null) throw new ApiException(404, "No customer found");
+        int offset = intParam(params, "offset", 0);
+        int limit = intParam(params, "limit", 20);
+        if (offset < 0 || limit < 1 || limit > 100) throw new IllegalArgumentException("Invalid page");
+        BookingHistory history = customer.getHistory();
+        StringBuilder json = new StringBuilder("{\"total\":").append(history.size())
+                .append(",\"offset\":").append(offset).append(",\"bookings\":[");
+        List<Reservation> page = history.page(offset, limit);
+        for (int i = 0; i < page.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append(reservationJson(page.get(i)));
+        }
+        return json.append("]}").toString();
+    }
+
+    private String reconciliation(HttpExchange exchange, Map<String, String> params) {
+        return ReconciliationReport.of(hotels, reservations).toJson();
+    }
+
+    private String liability(HttpExchange exchange, Map<String, String> params) {
+        if (!params.containsKey("asOf")) return engine.refundExposure(hotels).toJson();
+        return RefundExposure.of(hotels, reservations.all(), date(params, "asOf")).toJson();
+    }
+
+    private String booking(HttpExchange exchange, Map<String, String> params) {
+        return reservationJson(findReservation(exchange));
+    }
+
+    private String book(HttpExchange exchange, Map<String, String> params) {
+        Hotel hotel = hotel(params);
+        LocalDate checkIn = date(params, "checkIn");
+        LocalDate checkOut = date(params, "checkOut");
+        validateStay(hotel, checkIn, checkOut);
+        RoomType type = RoomType.byName(required(params, "type"));
+        if (type == null) throw new IllegalArgumentException("Unknown room type");
+        int guests = intParam(params, "guests", 1);
+        if (guests < 1 || guests > type.getMaxGuests()) {
+            throw new IllegalArgumentException("Guests exceed room capacity");
+        }
+
+        Customer customer = customer(params);
+        Reservation reservation = engine.reserve(customer, hotel, type.getName(), checkIn, checkOut, guests);
+        if (reservation == null) throw new ApiException(409, "No " + type.getName() + " rooms available");
+        engine.pay(reservation, params.getOrDefault("payment", "Cash")).join();
+        if (!reservation.getStatus().equals("Confirmed")) throw new ApiException(402, "Payment failed");
+        return reservationJson(reservation);
+    }
+
+    private String waitlist(HttpExchange exchange, Map<String, String> params) {
+        Hotel hotel = hotel(params);
+        LocalDate checkIn = date(params, "checkIn");
+        LocalDate checkOut = date(params, "checkOut");
+        validateStay(hotel, checkIn, checkOut);
+        RoomType type = RoomType.byName(required(params, "type"));
+        if (type == null) throw new IllegalArgumentException("Unknown room type");
+        int guests = intParam(params, "guests", 1);
+        if (guests < 1 || guests > type.getMaxGuests()) {
+            throw new IllegalArgumentException("Guests exceed room capacity");
+        }
+
+        WaitlistEntry entry = engine.joinWaitlist(customer(params), hotel, type.getName(), checkIn, checkOut, guests);
+        return "{\"waitlistId\":" + entry.getSequence()
+                + ",\"hotel\":" + quote(hotel.getName())
+                + ",\"type\":" + quote(type.getName())
+                + ",\"checkIn\":" + quote(checkIn.toString())
+                + ",\"checkOut\":" + quote(checkOut.toString())
+                + ",\"tier\":" + quote(entry.getCustomer().getMembershipTier())
+                + ",\"waiting\":" + engine.getWaitlist().depth(hotel, type.getName()) + "}";
+    }
+
+    private String bookBatch(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String mode = params.getOrDefault("mode", "all");
+        if (!mode.equals("all") && !mode.equals("best")) throw new IllegalArgumentException("mode must be all or best");
+        List<BookingRequest> requests = new ArrayList<>();
+        for (String line : params.getOrDefault("", "").split("\n")) {
+            if (line.isBlank()) continue;
+            Map<String, String> fields = new HashMap<>();
+            parseForm(line.trim(), fields);
+            requests.add(new BookingRequest(customer(fields), hotel(fields), required(fields, "type"),
+                    date(fields, "checkIn"), date(fields, "checkOut"), intParam(fields, "guests", 1),
+                    fields.getOrDefault("payment", "Cash")));
+        }
+        if (requests.isEmpty()) throw new IllegalArgumentException("Empty batch");
+
+        BatchResult result = engine.bookBatch(requests, mode.equals("all")).join();
+        StringBuilder json = new StringBuilder("{\"booked\":").append(result.bookedCount()).append(",\"results\":[");
+        for (int i = 0; i < result.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"request\":").append(i + 1);
+            if (result.getFailure(i) != null) {
+                json.append(",\"error\":").append(quote(result.getFailure(i)));
+            } else {
+                Reservation reservation = result.getReservation(i);
+                json.append(",\"reservationId\":").append(quote(reservation.getReservationId()))
+                    .append(",\"room\":").append(quote(reservation.getRoom().getRoomNumber()));
+            }
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private Customer customer(Map<String, String> params) {
+        Customer customer = customers.findByEmail(required(params, "email"));
+        if (customer == null) {
+            customer = engine.register(new Customer(required(params, "name"),
+                    required(params, "email").trim(), params.getOrDefault("phone", "")));
+        }
+        if (params.containsKey("address")) engine.updateAddress(customer, params.get("address"));
+        return customer;
+    }
+
+    private String cancel(HttpExchange exchange, Map<String, String> params) {
+        Reservation reservation = findReservation(exchange);
+        if (reservation.getStatus().equals("Cancelled")) {
+            throw new ApiException(409, "Reservation already cancelled");
+        }
+        if (!engine.canCancel(reservation)) {
+            throw new ApiException(409, "Cannot cancel. Must cancel at least "
+                    + reservation.cancellationPolicy().getDeadlineDays() + " days before check-in.");
+        }
+        if (!engine.cancel(reservation).join()) throw new ApiException(409, "Reservation already cancelled");
+        long fee = reservation.getRetainedFee();
+        return "{\"reservationId\":" + quote(reservation.getReservationId())
+                + ",\"status\":" + quote(reservation.getStatus())
+                + ",\"fee\":" + Money.decimal(fee)
+                + ",\"refund\":" + Money.decimal(reservation.getTotalAmount() - fee) + "}";
+    }
+
+    private Reservation findReservation(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        Reservation reservation = reservations.findById(id);
+        if (reservation == null) throw new ApiException(404, "Reservation not found");
+        return reservation;
+    }
+
+    private String reservationJson(Reservation reservation) {
+        return "{\"reservationId\":" + quote(reservation.getReservationId())
+                + ",\"status\":" + quote(reservation.getStatus())
+                + ",\"customerId\":" + quote(reservation.getCustomer().getCustomerId())
+                + ",\"hotel\":" + quote(reservation.getHotel().getName())
+                + ",\"room\":" + quote(reservation.getRoom().getRoomNumber())
+                + ",\"type\":" + quote(reservation.getRoom().getType())
+                + ",\"checkIn\":" + quote(reservation.getCheckIn().toString())
+                + ",\"checkOut\":" + quote(reservation.getCheckOut().toString())
+                + ",\"guests\":" + reservation.getGuests()
+                + ",\"total\":" + Money.decimal(reservation.getTotalAmount())
+                + ",\"currency\":" + quote(reservation.getCurrency().getCurrencyCode())
+                + ",\"payment\":" + quote(reservation.getPaymentMethod())
+                + ",\"points\":" + BookingEngine.pointsFor(reservation) + "}";
+    }
+
+    private Hotel hotel(Map<String, String> params) {
+        int index = intParam(params, "hotel", 0);
+        if (index < 1 || index > hotels.size()) throw new ApiException(404, "Hotel not found");
+        return hotels.get(index - 1);
+    }
+
+    private static void validateStay(Hotel hotel, LocalDate checkIn, LocalDate checkOut) {
+        if (!checkOut.isAfter(checkIn) || !hotel.isBookable(checkIn, checkOut)) {
+            throw new IllegalArgumentException("Invalid dates");
+        }
+    }
+
+    private static LocalDate date(Map<String, String> params, String name) {
+        return LocalDate.parse(required(params, name));
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) throw new IllegalArgumentException("Missing parameter: " + name);
+        return value;
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static Map<String, String> params(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        if (exchange.getRequestMethod().equals("POST")) {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (exchange.getRequestURI().getPath().endsWith("/batch")) {
+                params.put("", body);
+            } else {
+                parseForm(body, params);
+            }
+        }
+        return params;
+    }
+
+    private static void parseForm(String form, Map<String, String> params) {
+        if (form == null || form.isEmpty()) return;
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    static String quote(String value) {
+        if (value == null) return "null";
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+                    else json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+}
+
+class Shard implements AutoCloseable {
+    private final int id;
+    private final List<Hotel> hotels;
+    private final CustomerRepository customers;
+    private final ReservationRepository reservations;
+    private final Set<Long> enrolled = ConcurrentHashMap.newKeySet();
+    private final ReservationJournal journal;
+    private final BookingEngine engine;
+    private final SearchEngine search;
+
+    Shard(int id, List<Hotel> hotels, CustomerRepository customers,
+                  PaymentProcessor payments, Path dir) throws IOException {
+        this.id = id;
+        this.hotels = hotels;
+        this.customers = customers;
+        this.reservations = new ReservationRepository(customers.getArchive());
+        for (int h = 0; h < hotels.size(); h++) {
+            hotels.get(h).setIndex(h);
+        }
+        if (dir == null) {
+            this.journal = ReservationJournal.disabled();
+        } else {
+            JournalRecovery recovery = new JournalRecovery(hotels, customers, reservations);
+            this.journal = ReservationJournal.open(dir, recovery);
+            recovery.finish();
+            journal.compact(this::export);
+        }
+        for (Reservation reservation : reservations.all()) {
+            enrolled.add(reservation.getCustomer().getId());
+        }
+        reservations.forEachArchived(stay -> enrolled.add(stay.getCustomer().getId()));
+        this.engine = new BookingEngine(customers, reservations, payments, journal);
+        this.search = new SearchEngine(hotels);
+    }
+
+    public int getId() { return id; }
+    public List<Hotel> getHotels() { return hotels; }
+    public ReservationRepository getReservations() { return reservations; }
+    public BookingEngine getEngine() { return engine; }
+    public SearchEngine getSearch() { return search; }
+
+    void runNightly() {
+        LocalDate today = LocalDate.now(engine.getClock());
+        for (Hotel hotel : hotels) {
+            try {
+                hotel.advanceCalendar(today);
+            } catch (RuntimeException e) {
+                System.out.println("Calendar roll-over failed for " + hotel.getName() + ": " + e.getMessage());
+            }
+        }
+        for (Hotel hotel : hotels) {
+            try {
+                engine.reoptimize(hotel).join();
+            } catch (RuntimeException e) {
+                System.out.println("Room reassignment failed for " + hotel.getName() + ": " + e.getMessage());
+            }
+        }
+        engine.getLoyalty().expireThrough(today);
+    }
+
+    Reservation reserve(Customer customer, Hotel hotel, String roomType,
+                        LocalDate checkIn, LocalDate checkOut, int guests) {
+        if (enrolled.add(customer.getId())) engine.enroll(customer);
+        return engine.reserve(customer, hotel, roomType, checkIn, checkOut, guests);
+    }
+
+    private void export(JournalHandler out) {
+        for (Customer customer : customers.all()) {
+            List<Reservation> stays = reservations.history(customer);
+            if (stays.isEmpty()) continue;
+            int earned = 0;
+            for (Reservation reservation : stays) earned += BookingEngine.pointsFor(reservation);
+            out.onCustomer(customer.getId(), customer.getName(), customer.getEmail(), customer.getPhoneNumber());
+            if (customer.getAddress() != null) out.onAddress(customer.getId(), customer.getAddress());
+            if (earned != 0) out.onPoints(customer.getId(), earned);
+            JournalRecovery.exportStays(stays, out);
+        }
+    }
+
+    public void close() {
+        engine.getEvents().close();
+        journal.close();
+    }
+}
+
+class ShardRouter implements AutoCloseable {
+    private final Shard[] shards;
+    private final Hotel[] hotels;
+    private final Shard[] owners;
+    private final Map<Hotel, Integer> numbers = new IdentityHashMap<>();
+    private final CustomerRepository customers;
+    private final ExecutorService fanOut;
+    private final ScheduledExecutorService scheduler;
+
+    private ShardRouter(List<Hotel> hotels, int shardCount, CustomerRepository customers,
+                        PaymentProcessor payments, Path dir) throws IOException {
+        if (shardCount < 1) throw new IllegalArgumentException("Need at least one shard");
+        this.hotels = hotels.toArray(new Hotel[0]);
+        this.customers = customers;
+        this.shards = new Shard[shardCount];
+        this.owners = new Shard[this.hotels.length];
+        for (int h = 0; h < this.hotels.length; h++) numbers.put(this.hotels[h], h);
+        for (int s = 0; s < shardCount; s++) {
+            List<Hotel> owned = new ArrayList<>();
+            for (int h = s; h < this.hotels.length; h += shardCount) owned.add(this.hotels[h]);
+            shards[s] = new Shard(s, owned, customers, payments, dir == null ? null : dir.resolve("shard-" + s));
+            for (int h = s; h < this.hotels.length; h += shardCount) owners[h] = shards[s];
+        }
+        this.fanOut = VirtualThreads.newPerTaskExecutor();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "shard-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(3, 0);
+        if (!next.isAfter(now)) next = next.plusDays(1);
+        scheduler.scheduleAtFixedRate(this::runNightly, Duration.between(now, next).toMinutes(),
+                TimeUnit.DAYS.toMinutes(1), TimeUnit.MINUTES);
+        scheduler.scheduleAtFixedRate(this::expireHolds, 1, 1, TimeUnit.SECONDS);
+    }
+
+    void runNightly() {
+        for (Shard shard : shards) {
+            try {
+                shard.runNightly();
+            } catch (RuntimeException e) {
+                System.out.println("Nightly jobs failed on shard " + shard.getId() + ": " + e.getMessage());
+            }
+        }
+        try {
+            LoyaltyEngine.requalify(customers.all());
+        } catch (RuntimeException e) {
+            System.out.println("Loyalty re-qualification failed: " + e.getMessage());
+        }
+    }
+
+    private void expireHolds() {
+        for (Shard shard : shards) {
+            try {
+                shard.getEngine().expireHolds();
+            } catch (RuntimeException e) {
+                System.out.println("Hold expiry failed on shard " + shard.getId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public static ShardRouter inMemory(List<Hotel> hotels, int shardCount, CustomerRepository customers,
+                                       PaymentProcessor payments) {
+        try {
+            return new ShardRouter(hotels, shardCount, customers, payments, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ShardRouter open(Path dir, List<Hotel> hotels, int shardCount, CustomerRepository customers,
+                                   PaymentProcessor payments) throws IOException {
+        return new ShardRouter(hotels, shardCount, customers, payments, dir);
+    }
+
+    public int getShardCount() { return shards.length; }
+    public Shard getShard(int id) { return shards[id]; }
+    public int getHotelCount() { return hotels.length; }
+    public Hotel getHotel(int number) { return hotels[number]; }
+
+    public Shard shardFor(int hotelNumber) {
+        return owners[hotelNumber];
+    }
+
+    public int numberOf(Hotel hotel) {
+        Integer number = numbers.get(hotel);
+        if (number == null) throw new IllegalArgumentException("Hotel not owned by any shard: " + hotel.getName());
+        return number;
+    }
+
+    private Shard shardFor(Reservation reservation) {
+        return owners[numberOf(reservation.getHotel())];
+    }
+
+    public Customer register(Customer customer) {
+        return customers.register(customer);
+    }
+
+    public int countAvailableRooms(int hotelNumber, String type, LocalDate checkIn, LocalDate checkOut) {
+        return hotels[hotelNumber].countAvailableRooms(type, checkIn, checkOut);
+    }
+
+    public Reservation reserve(Customer customer, int hotelNumber, String roomType,
+                               LocalDate checkIn, LocalDate checkOut, int guests) {
+        return shardFor(hotelNumber).reserve(customer, hotels[hotelNumber], roomType, checkIn, checkOut, guests);
+    }
+
+    public CompletableFuture<Reservation> pay(Reservation reservation, String paymentMethod) {
+        return shardFor(reservation).getEngine().pay(reservation, paymentMethod);
+    }
+
+    public CompletableFuture<Boolean> cancel(Reservation reservation) {
+        return shardFor(reservation).getEngine().cancel(reservation);
+    }
+
+    public Reservation findReservation(String reservationId) {
+        for (Shard shard : shards) {
+            Reservation reservation = shard.getReservations().findById(reservationId);
+            if (reservation != null) return reservation;
+        }
+        return null;
+    }
+
+    public SearchPage search(SearchQuery query) {
+        SearchQuery perShard = new SearchQuery(query.getCheckIn(), query.getCheckOut())
+                .location(query.getLocation())
+                .guests(query.getGuests())
+                .priceBand(query.getMinPrice(), query.getMaxPrice())
+                .sortByPrice(query.isSortByPrice())
+                .page(0, query.getOffset() + query.getLimit());
+        perShard.amenities(Amenity.names(query.getAmenities()).toArray(new String[0]));
+
+        List<CompletableFuture<SearchPage>> pages = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            pages.add(CompletableFuture.supplyAsync(() -> shard.getSearch().search(perShard), fanOut));
+        }
+        List<SearchResult> merged = new ArrayList<>();
+        int total = 0;
+        for (CompletableFuture<SearchPage> page : pages) {
+            SearchPage shardPage = page.join();
+            merged.addAll(shardPage.getResults());
+            total += shardPage.getTotal();
+        }
+        merged.sort(SearchEngine.resultOrder(query.isSortByPrice(), this::numberOf));
+        int from = Math.min(query.getOffset(), merged.size());
+        int to = Math.min(from + query.getLimit(), merged.size());
+        return new SearchPage(new ArrayList<>(merged.subList(from, to)), total);
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+        fanOut.shutdown();
+        for (Shard shard : shards) shard.close();
+    }
+}
+
+class ReservationSystem {
+    private List<Hotel> hotels;
+    private CustomerRepository customers;
+    private ReservationRepository reservations;
+    private ReservationJournal journal;
+    private BookingEngine engine;
+    private SearchEngine search;
+    private OccupancyAnalytics analytics;
+    private NotificationOutbox notifications;
+    private BookingEventBus events;
+    private ScheduledExecutorService scheduler;
+    private Scanner scanner;
+
+    public ReservationSystem() {
+        this.hotels = new ArrayList<>();
+        HistoryArchive archive = new HistoryArchive();
+        this.customers = new CustomerRepository(archive);
+        this.reservations = new ReservationRepository(archive);
+        this.scanner = new Scanner(System.in);
+        setupHotels();
+        configureOverbooking(System.getProperty("overbooking", ""));
+        this.search = new SearchEngine(hotels);
+        this.journal = openJournal();
+        this.events = BookingEventBus.ring(Integer.getInteger("events.capacity", 4096));
+        this.engine = new BookingEngine(customers, reservations,
+                SimulatedPaymentGateway.fromSystemProperties(), journal, events);
+        this.analytics = new OccupancyAnalytics(hotels, LocalDate.now().minusDays(365),
+                365 + Hotel.BOOKING_HORIZON_DAYS);
+        analytics.rebuild(reservations.all());
+        reservations.forEachArchived(stay -> {
+            if (stay.getStatus().equals("Confirmed")) analytics.onConfirmed(stay);
+        });
+        this.notifications = new NotificationOutbox();
+        events.subscribe("analytics", analytics);
+        events.subscribe("notifications", notifications);
+        events.start();
+        scheduleBackgroundJobs();
+        Metrics.INSTANCE.registerMBean();
+    }
+
+    private void scheduleBackgroundJobs() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(3, 0);
+        if (!next.isAfter(now)) next = next.plusDays(1);
+        scheduler.scheduleAtFixedRate(this::runNightly, Duration.between(now, next).toMinutes(),
+                TimeUnit.DAYS.toMinutes(1), TimeUnit.MINUTES);
+        scheduler.scheduleAtFixedRate(this::expireHolds, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private void expireHolds() {
+        try {
+            engine.expireHolds();
+        } catch (RuntimeException e) {
+            System.out.println("Hold expiry failed: " + e.getMessage());
+        }
+    }
+
+    private void runNightly() {
+        advanceCalendars();
+        reassignRooms();
+        requalifyMembers();
+    }
+
+    private void advanceCalendars() {
+        LocalDate today = LocalDate.now();
+        for (Hotel hotel : hotels) {
+            try {
+                hotel.advanceCalendar(today);
+            } catch (RuntimeException e) {
+                System.out.println("Calendar roll-over failed for " + hotel.getName() + ": " + e.getMessage());
+            }
+        }
+        analytics.advanceTo(today.minusDays(365));
+    }
+
+    private void requalifyMembers() {
+        try {
+            engine.getLoyalty().expireThrough(LocalDate.now());
+            LoyaltyEngine.requalify(customers.all());
+        } catch (RuntimeException e) {
+            System.out.println("Loyalty re-qualification failed: " + e.getMessage());
+        }
+    }
+
+    private void reassignRooms() {
+        for (Hotel hotel : hotels) {
+            try {
+                engine.reoptimize(hotel).join();
+            } catch (RuntimeException e) {
+                System.out.println("Room reassignment failed for " + hotel.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void shutdown() {
+        scheduler.shutdownNow();
+        events.close();
+        journal.close();
+    }
+
+    private ReservationJournal openJournal() {
+        String dir = System.getProperty("journal.dir", "data");
+        if (dir.isEmpty()) return ReservationJournal.disabled();
+        try {
+            JournalRecovery recovery = new JournalRecovery(hotels, customers, reservations);
+            ReservationJournal journal = ReservationJournal.open(Paths.get(dir), recovery);
+            recovery.finish();
+            journal.compact(out -> JournalRecovery.export(customers, reservations, out));
+            return journal;
+        } catch (IOException e) {
+            System.out.println("Could not open reservation journal: " + e.getMessage());
+            System.out.println("Running without persistence.");
+            return ReservationJournal.disabled();
+        }
+    }
+
+    private void configureOverbooking(String spec) {
+        for (String part : spec.split(",")) {
+            if (part.isBlank()) continue;
+            String[] typeAndRooms = part.split(":");
+            if (typeAndRooms.length != 2) throw new IllegalArgumentException("Expected type:rooms, got " + part);
+            for (Hotel hotel : hotels) {
+                hotel.setOverbooking(typeAndRooms[0].trim(), Integer.parseInt(typeAndRooms[1].trim()));
+            }
+        }
+    }
+
+    private void addHotel(Hotel hotel) {
+        hotel.setIndex(hotels.size());
+        hotels.add(hotel);
+    }
+
+    private void setupHotels() {
+        Hotel taj = new Hotel("The Taj Palace", "Mumbai");
+        taj.setAddress("Apollo Bunder, Mumbai 400001");
+        taj.setPhone("+91-22-6665-3366");
+        addHotel(taj);
+
+        Hotel oberoi = new Hotel("The Oberoi", "New Delhi");
+        oberoi.setAddress("Connaught Place, New Delhi 110001");
+        oberoi.setPhone("+91-11-2389-0606");
+        addHotel(oberoi);
+
+        Hotel leela = new Hotel("The Leela", "Bangalore");
+        leela.setAddress("HAL Airport Road, Bangalore 560008");
+        leela.setPhone("+91-80-2521-1234");
+        addHotel(leela);
+
+        Hotel itc = new Hotel("ITC Grand", "Chennai");
+        itc.setAddress("Mount Road, Chennai 600032");
+        itc.setPhone("+91-44-2220-0000");
+        addHotel(itc);
+
+        Hotel hyatt = new Hotel("Grand Hyatt", "Goa");
+        hyatt.setAddress("Bambolim Beach, Goa 403206");
+        hyatt.setPhone("+91-832-2721-234");
+        addHotel(hyatt);
+    }
+
+    public BookingApi serve(int port) throws IOException {
+        BookingApi api = new BookingApi(hotels, customers, reservations, engine, search, analytics,
+                notifications);
+        int bound = api.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            api.stop();
+            shutdown();
+        }));
+        System.out.println("Booking API listening on http://localhost:" + bound);
+        return api;
+    }
+
+    public void report() {
+        ReconciliationReport.of(hotels, reservations).print();
+        engine.refundExposure(hotels).print();
+        shutdown();
+    }
+
+    public void start() {
+        System.out.println("\n╔════════════════════════════════════════╗");
+        System.out.println("║   HOTEL RESERVATION SYSTEM             ║");
+        System.out.println("╚════════════════════════════════════════╝\n");
+
+        while (true) {
+            System.out.println("\n--- MAIN MENU ---");
+            System.out.println("1. Book a Room");
+            System.out.println("2. View My Bookings");
+            System.out.println("3. Cancel Booking");
+            System.out.println("4. Check Availability");
+            System.out.println("5. View Hotels");
+            System.out.println("6. Loyalty Program");
+            System.out.println("7. Search Rooms");
+            System.out.println("8. Exit");
+            System.out.print("\nChoose option: ");
+
+            int choice = getInt();
             
             switch (choice) {
                 case 1: bookRoom(); break;
@@ -369,7 +6194,9 @@ class ReservationSystem {
                 case 4: checkAvailability(); break;
                 case 5: viewHotels(); break;
                 case 6: viewLoyalty(); break;
-                case 7:
+                case 7: searchRooms(); break;
+                case 8:
+                    shutdown();
                     System.out.println("\nThank you for using our system!");
                     return;
                 default:
@@ -378,277 +6205,1758 @@ class ReservationSystem {
         }
     }
 
-    private void bookRoom() {
-        System.out.println("\n=== NEW BOOKING ===\n");
+    private void bookRoom() {
+        System.out.println("\n=== NEW BOOKING ===\n");
+
+        Hotel hotel = selectHotel();
+        if (hotel == null) return;
+
+        hotel.displayInfo();
+
+        System.out.print("Enter your name: ");
+        String name = scanner.nextLine();
+        System.out.print("Enter email: ");
+        String email = scanner.nextLine();
+        System.out.print("Enter phone: ");
+        String phone = scanner.nextLine();
+
+        Customer customer = findCustomer(email);
+        if (customer == null) {
+            customer = engine.register(new Customer(name, email, phone));
+            System.out.println("\nWelcome! You've been enrolled in our loyalty program.");
+        } else {
+            System.out.println("\nWelcome back, " + customer.getName() + "!");
+            System.out.println("Membership: " + customer.getMembershipTier() + 
+                             " (" + customer.getLoyaltyPoints() + " points)");
+        }
+
+        System.out.print("\nEnter address: ");
+        engine.updateAddress(customer, scanner.nextLine());
+
+        LocalDate checkIn = getDate("Check-in date (YYYY-MM-DD): ");
+        LocalDate checkOut = getDate("Check-out date (YYYY-MM-DD): ");
+
+        if (checkOut.isBefore(checkIn) || checkOut.isEqual(checkIn)) {
+            System.out.println("\nInvalid dates.");
+            return;
+        }
+
+        if (!hotel.isBookable(checkIn, checkOut)) {
+            System.out.println("\nDates must fall within the next " + Hotel.BOOKING_HORIZON_DAYS + " days.");
+            return;
+        }
+
+        System.out.print("Number of guests: ");
+        int guests = getInt();
+
+        System.out.println("\n--- Select Room Type ---");
+        List<RoomType> types = RoomType.all();
+        for (int i = 0; i < types.size(); i++) {
+            System.out.println((i + 1) + ". " + types.get(i).getName() + " (" +
+                             Money.format(types.get(i).getPricePerNight(), hotel.getCurrency()) + "/night)");
+        }
+        System.out.print("\nChoice: ");
+        
+        int roomChoice = getInt();
+        if (roomChoice < 1 || roomChoice > types.size()) {
+            System.out.println("\nInvalid choice.");
+            return;
+        }
+        String roomType = types.get(roomChoice - 1).getName();
+
+        Reservation reservation = engine.reserve(customer, hotel, roomType, checkIn, checkOut, guests);
+        
+        if (reservation == null) {
+            System.out.println("\nNo " + roomType + " rooms available.");
+            System.out.print("Join the waitlist? (yes/no): ");
+            if (scanner.nextLine().equalsIgnoreCase("yes")) {
+                engine.joinWaitlist(customer, hotel, roomType, checkIn, checkOut, guests);
+                System.out.println("You're on the waitlist (" + engine.getWaitlist().depth(hotel, roomType)
+                        + " waiting). If a room frees up it will be booked for you, payable at the hotel.");
+            }
+            return;
+        }
+
+        Room room = reservation.getRoom();
+        room.showDetails();
+        if (!room.isAssigned()) {
+            System.out.println("Your room number will be assigned before check-in.");
+        }
+
+        if (guests > room.getMaxGuests()) {
+            System.out.println("\nWarning: Guests exceed room capacity.");
+            System.out.print("Continue? (yes/no): ");
+            if (!scanner.nextLine().equalsIgnoreCase("yes")) {
+                engine.releaseHold(reservation).join();
+                return;
+            }
+        }
+
+        System.out.println("\n--- Payment Method ---");
+        System.out.println("1. Credit Card");
+        System.out.println("2. Debit Card");
+        System.out.println("3. UPI");
+        System.out.println("4. Net Banking");
+        System.out.println("5. Cash at Hotel");
+        System.out.print("\nSelect: ");
+        
+        int payChoice = getInt();
+        String payment = "";
+        
+        switch (payChoice) {
+            case 1: payment = "Credit Card"; break;
+            case 2: payment = "Debit Card"; break;
+            case 3: payment = "UPI"; break;
+            case 4: payment = "Net Banking"; break;
+            case 5: payment = "Cash"; break;
+            default: payment = "Cash"; break;
+        }
+
+        if (payChoice != 5) {
+            System.out.println("\nProcessing payment...");
+        }
+
+        engine.pay(reservation, payment).join();
+        if (reservation.getStatus().equals("Expired")) {
+            System.out.println("Your hold expired before payment. The room has been released.");
+            return;
+        }
+        if (!reservation.getStatus().equals("Confirmed")) {
+            System.out.println("Payment failed. The room has been released.");
+            return;
+        }
+        if (payChoice != 5) {
+            System.out.println("Payment successful!");
+        }
+
+        int points = BookingEngine.pointsFor(reservation);
+
+        reservation.displayConfirmation();
+        System.out.println("✓ Booking confirmed! You earned " + points + " loyalty points.");
+    }
+
+    private Hotel selectHotel() {
+        System.out.println("\n--- Available Hotels ---");
+        for (int i = 0; i < hotels.size(); i++) {
+            System.out.println((i + 1) + ". " + hotels.get(i).getName() + 
+                             " - " + hotels.get(i).getLocation());
+        }
+        System.out.print("\nSelect hotel: ");
+        
+        int choice = getInt();
+        if (choice < 1 || choice > hotels.size()) {
+            System.out.println("\nInvalid selection.");
+            return null;
+        }
+        
+        return hotels.get(choice - 1);
+    }
+
+    private Customer findCustomer(String email) {
+        return customers.findByEmail(email);
+    }
+
+    private void viewBookings() {
+        System.out.println("\n=== MY BOOKINGS ===\n");
+        System.out.print("Enter email: ");
+        String email = scanner.nextLine();
+
+        Customer customer = findCustomer(email);
+        if (customer == null) {
+            System.out.println("\nNo customer found.");
+            return;
+        }
+
+        BookingHistory history = customer.getHistory();
+        int total = history.size();
+        if (total == 0) {
+            System.out.println("\nNo bookings found.");
+            return;
+        }
+
+        int offset = 0;
+        while (true) {
+            List<Reservation> page = history.page(offset, 5);
+            for (Reservation res : page) {
+                res.displayConfirmation();
+            }
+            offset += page.size();
+            if (page.isEmpty() || offset >= total) return;
+            System.out.println("\n--- Showing " + offset + " of " + total + " bookings ---");
+            System.out.print("Show more? (yes/no): ");
+            if (!scanner.nextLine().equalsIgnoreCase("yes")) return;
+        }
+    }
+
+    private void cancelBooking() {
+        System.out.println("\n=== CANCEL BOOKING ===\n");
+        System.out.print("Enter reservation ID: ");
+        String resId = scanner.nextLine();
+
+        Reservation reservation = reservations.findById(resId);
+
+        if (reservation == null) {
+            System.out.println("\nReservation not found.");
+            return;
+        }
+
+        if (!engine.canCancel(reservation)) {
+            System.out.println("\nCannot cancel. Must cancel at least "
+                    + reservation.cancellationPolicy().getDeadlineDays() + " days before check-in.");
+            return;
+        }
+
+        long fee = engine.cancellationFee(reservation);
+        long refund = reservation.getTotalAmount() - fee;
+        Currency currency = reservation.getCurrency();
+
+        System.out.println("\nOriginal Amount: " + Money.format(reservation.getTotalAmount(), currency));
+        System.out.println("Cancellation Fee: " + Money.format(fee, currency));
+        System.out.println("Refund: " + Money.format(refund, currency));
+        System.out.print("\nConfirm cancellation? (yes/no): ");
+
+        if (!scanner.nextLine().equalsIgnoreCase("yes")) {
+            System.out.println("\nCancellation aborted.");
+        } else if (engine.cancel(reservation).join()) {
+            System.out.println("\n✓ Booking cancelled. Refund will be processed in 5-7 days.");
+        } else {
+            System.out.println("\nReservation is already cancelled.");
+        }
+    }
+
+    private void checkAvailability() {
+        System.out.println("\n=== CHECK AVAILABILITY ===\n");
+        Hotel hotel = selectHotel();
+        if (hotel == null) return;
+
+        LocalDate checkIn = getDate("Check-in date (YYYY-MM-DD): ");
+        LocalDate checkOut = getDate("Check-out date (YYYY-MM-DD): ");
+
+        if (!checkOut.isAfter(checkIn) || !hotel.isBookable(checkIn, checkOut)) {
+            System.out.println("\nInvalid dates.");
+            return;
+        }
+
+        System.out.println("\n--- Room Availability at " + hotel.getName() + " ---");
+        for (RoomType type : RoomType.all()) {
+            System.out.println(type.getName() + " Rooms: " +
+                             hotel.countAvailableRooms(type.getName(), checkIn, checkOut) +
+                             " (" + Money.format(hotel.quote(type, checkIn, checkOut), hotel.getCurrency()) +
+                             " for the stay)");
+        }
+    }
+
+    private void viewHotels() {
+        System.out.println("\n=== OUR HOTELS ===\n");
+        for (Hotel hotel : hotels) {
+            hotel.displayInfo();
+        }
+    }
+
+    private void searchRooms() {
+        System.out.println("\n=== SEARCH ROOMS ===\n");
+        System.out.print("Location (blank for any): ");
+        String location = scanner.nextLine();
+
+        LocalDate checkIn = getDate("Check-in date (YYYY-MM-DD): ");
+        LocalDate checkOut = getDate("Check-out date (YYYY-MM-DD): ");
+        if (!checkOut.isAfter(checkIn)) {
+            System.out.println("\nInvalid dates.");
+            return;
+        }
+
+        System.out.print("Number of guests: ");
+        int guests = getInt();
+        System.out.print("Max price per night (0 for any): ");
+        int maxPrice = getInt();
+        System.out.print("Required amenities, comma separated (blank for none): ");
+        String amenities = scanner.nextLine();
+
+        SearchQuery query = new SearchQuery(checkIn, checkOut).location(location).guests(guests);
+        if (maxPrice > 0) query.priceBand(0, Money.units(maxPrice));
+        if (!amenities.isBlank()) {
+            try {
+                query.amenities(amenities.split(","));
+            } catch (IllegalArgumentException e) {
+                System.out.println("\n" + e.getMessage());
+                return;
+            }
+        }
+
+        int offset = 0;
+        while (true) {
+            SearchPage page = search.search(query.page(offset, 10));
+            if (page.getTotal() == 0) {
+                System.out.println("\nNo rooms match your search.");
+                return;
+            }
+            System.out.println("\n--- Results " + (offset + 1) + "-" + (offset + page.getResults().size()) +
+                             " of " + page.getTotal() + " ---");
+            for (SearchResult result : page.getResults()) {
+                Room room = result.getRoom();
+                System.out.println(result.getHotel().getName() + " (" + result.getHotel().getLocation() +
+                                 ") - Room " + room.getRoomNumber() + ", " + room.getType() +
+                                 ", " + Money.format(room.getPricePerNight(), result.getHotel().getCurrency()) +
+                                 "/night");
+            }
+            offset += page.getResults().size();
+            if (offset >= page.getTotal()) return;
+            System.out.print("\nShow more? (yes/no): ");
+            if (!scanner.nextLine().equalsIgnoreCase("yes")) return;
+        }
+    }
+
+    private void viewLoyalty() {
+        System.out.println("\n=== LOYALTY PROGRAM ===\n");
+        System.out.print("Enter email: ");
+        String email = scanner.nextLine();
+
+        Customer customer = findCustomer(email);
+        if (customer == null) {
+            System.out.println("\nNo customer found.");
+            return;
+        }
+
+        System.out.println("\nName: " + customer.getName());
+        System.out.println("Tier: " + customer.getMembershipTier());
+        System.out.println("Points: " + customer.getLoyaltyPoints());
+        System.out.println("Discount: " + (int)(customer.getDiscountRate() * 100) + "%");
+        
+        System.out.println("\n--- Tier Benefits ---");
+        for (LoyaltyTier tier : TierTable.active().getTiers()) {
+            String range = tier.getCeiling() == Integer.MAX_VALUE ? tier.getThreshold() + "+"
+                    : tier.getThreshold() + "-" + (tier.getCeiling() - 1);
+            System.out.println(tier.getName() + ": "
+                    + java.math.BigDecimal.valueOf(tier.getDiscountBasisPoints(), 2).stripTrailingZeros().toPlainString()
+                    + "% (" + range + " points)");
+        }
+    }
+
+    private LocalDate getDate(String prompt) {
+        while (true) {
+            System.out.print(prompt);
+            try {
+                return LocalDate.parse(scanner.nextLine());
+            } catch (Exception e) {
+                System.out.println("Invalid format. Use YYYY-MM-DD");
+            }
+        }
+    }
+
+    private int getInt() {
+        while (true) {
+            try {
+                return Integer.parseInt(scanner.nextLine());
+            } catch (NumberFormatException e) {
+                System.out.print("Invalid input. Enter a number: ");
+            }
+        }
+    }
+}
+
+class Benchmarks {
+    public static void run(String[] args) throws IOException {
+        String name = args.length > 1 ? args[1] : "";
+        switch (name) {
+            case "recovery":
+                recovery(args.length > 2 ? Integer.parseInt(args[2]) : 10_000_000);
+                break;
+            case "search":
+                search(args.length > 2 ? Integer.parseInt(args[2]) : 500,
+                        args.length > 3 ? Integer.parseInt(args[3]) : 200);
+                break;
+            case "coldstart":
+                coldStart(args.length > 2 ? Integer.parseInt(args[2]) : 500,
+                        args.length > 3 ? Integer.parseInt(args[3]) : 200);
+                break;
+            case "http":
+                http(args.length > 2 ? Integer.parseInt(args[2]) : 50_000,
+                        args.length > 3 ? Integer.parseInt(args[3]) : 64,
+                        args.length > 4 ? args[4] : null);
+                break;
+            case "shards":
+                shards(args.length > 2 ? Integer.parseInt(args[2]) : 64,
+                        args.length > 3 ? Integer.parseInt(args[3]) : 16,
+                        args.length > 4 ? Integer.parseInt(args[4]) : 20_000);
+                break;
+            case "events":
+                events(args.length > 2 ? Integer.parseInt(args[2]) : 200_000);
+                break;
+            case "stress":
+                stress(args.length > 2 ? Integer.parseInt(args[2]) : 16,
+                        args.length > 3 ? Integer.parseInt(args[3]) : 5);
+                break;
+            case "waitlist":
+                waitlist(args.length > 2 ? args[2] : "1000,100000,1000000");
+                break;
+            case "metrics":
+                metrics(args.length > 2 ? Integer.parseInt(args[2]) : 500_000);
+                break;
+            case "holds":
+                holds(args.length > 2 ? Integer.parseInt(args[2]) : 2_000_000);
+                break;
+            case "loyalty":
+                loyalty(args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000);
+                break;
+            case "history":
+                history(args.length > 2 ? Integer.parseInt(args[2]) : 2_000,
+                        args.length > 3 ? Integer.parseInt(args[3]) : 500);
+                break;
+            case "assign":
+                assign(args.length > 2 ? Integer.parseInt(args[2]) : 300,
+                        args.length > 3 ? Integer.parseInt(args[3]) : 180);
+                break;
+            case "analytics":
+                analytics(args.length > 2 ? Integer.parseInt(args[2]) : 5_000_000);
+                break;
+            case "availability":
+                availability(args.length > 2 ? Integer.parseInt(args[2]) : 1_000);
+                break;
+            case "liability":
+                liability(args.length > 2 ? Integer.parseInt(args[2]) : 2_000_000);
+                break;
+            case "reconcile":
+                reconcile(args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000);
+                break;
+            case "batch":
+                batch(args.length > 2 ? Integer.parseInt(args[2]) : 500);
+                break;
+            case "hotpaths":
+                hotPaths(args.length > 2 ? args[2] : "1000,100000,1000000",
+                        args.length > 3 ? Integer.parseInt(args[3]) : 1_000_000);
+                break;
+            default:
+                System.out.println("Usage: java HotelReservationSystem bench <benchmark> [size]");
+                System.out.println("  hotpaths [rooms,...] [customers]   booking, lookup and pricing hot paths");
+                System.out.println("                                     (default 1000,100000,1000000 rooms, 1M customers)");
+                System.out.println("  http [requests] [clients] [url]    load test the booking API; starts a local server");
+                System.out.println("                                     unless a base URL is given (default 50k requests, 64 clients)");
+                System.out.println("  shards [hotels] [clients] [bookings] journaled booking throughput and search fan-out at 1-8 shards");
+                System.out.println("                                     (default 64 hotels, 16 clients, 20k bookings)");
+                System.out.println("  events [bookings]                  booking latency with inline vs ring-buffer side effects (default 200k)");
+                System.out.println("  stress [threads] [seconds]         concurrent book/pay/cancel/expire/reoptimize, checks no room-night is held twice");
+                System.out.println("  waitlist [depth,...]               cancellation + waitlist reallocation at each depth (default 1k,100k,1M)");
+                System.out.println("  metrics [bookings]                 booking cost with metrics off vs on, histogram accuracy (default 500k)");
+                System.out.println("  holds [holds]                      hold scheduling, cancellation and timing-wheel expiry (default 2M)");
+                System.out.println("  loyalty [members]                  point accrual, wheel expiry and parallel tier re-qualification (default 1M)");
+                System.out.println("  history [customers] [stays]        heap per customer, unbounded list vs hot window + archive (default 2k x 500)");
+                System.out.println("  assign [rooms] [days]              first-fit vs best-fit room assignment over a season (default 300 x 180)");
+                System.out.println("  analytics [reservations]           occupancy/ADR/RevPAR: scan vs fork-join rebuild vs index (default 5M)");
+                System.out.println("  availability [rooms]               snapshot vs bitmap counts, readers alongside a booking writer (default 1k)");
+                System.out.println("  liability [reservations]           refund exposure: per-reservation policy calls vs bulk pass (default 2M)");
+                System.out.println("  reconcile [reservations]           reconciliation report over N reservations (default 1M)");
+                System.out.println("  batch [size]                       one batch booking vs N single bookings (default 500)");
+                System.out.println("  recovery [events]                  journal write and replay time (default 10M events)");
+                System.out.println("  coldstart [hotels] [rooms]         object graph build vs mapped image (default 500 x 200)");
+                System.out.println("  search [hotels] [rooms]            indexed search vs naive scan (default 500 x 200)");
+        }
+    }
+
+    interface Operation {
+        void run(int i);
+    }
+
+    static void measure(String name, int ops, Operation op) {
+        for (int i = 0; i < ops; i++) {
+            op.run(i);
+        }
+        long[] latencies = new long[ops];
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            long opStart = System.nanoTime();
+            op.run(i);
+            latencies[i] = System.nanoTime() - opStart;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        Arrays.sort(latencies);
+        System.out.printf("%-42s %13.0f ops/s  p50 %9.2f us  p99 %9.2f us  p99.9 %9.2f us  %9s B/op%n",
+                name, ops / (elapsed / 1e9),
+                latencies[ops / 2] / 1e3,
+                latencies[(int) (ops * 0.99)] / 1e3,
+                latencies[(int) (ops * 0.999)] / 1e3,
+                allocatedBefore < 0 ? "n/a" : String.format("%.0f", (double) allocated / ops));
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    static void shards(int hotelCount, int clients, int bookings) throws IOException {
+        LocalDate today = LocalDate.now();
+        double baseline = 0;
+        for (int shardCount = 1; shardCount <= 8; shardCount *= 2) {
+            Path dir = Files.createTempDirectory("shards-bench");
+            List<Hotel> chain = benchChain(hotelCount, 200);
+            ShardRouter router = ShardRouter.open(dir, chain, shardCount, new CustomerRepository(),
+                    new SimulatedPaymentGateway(0, 0));
+            Customer[] guests = new Customer[clients];
+            for (int c = 0; c < clients; c++) {
+                guests[c] = router.register(new Customer("Guest " + c, "guest" + c + "@example.com", ""));
+            }
+
+            AtomicLong next = new AtomicLong();
+            AtomicLong booked = new AtomicLong();
+            Thread[] threads = new Thread[clients];
+            long start = System.nanoTime();
+            for (int c = 0; c < clients; c++) {
+                Customer guest = guests[c];
+                threads[c] = new Thread(() -> {
+                    Random random = new Random(guest.getId());
+                    while (next.getAndIncrement() < bookings) {
+                        LocalDate checkIn = today.plusDays(1 + random.nextInt(360));
+                        Reservation reservation = router.reserve(guest, random.nextInt(chain.size()), "Standard",
+                                checkIn, checkIn.plusDays(1 + random.nextInt(4)), 2);
+                        if (reservation != null && router.pay(reservation, "Cash").join().getStatus().equals("Confirmed")) {
+                            booked.incrementAndGet();
+                        }
+                    }
+                });
+                threads[c].start();
+            }
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double throughput = booked.get() / seconds;
+            if (shardCount == 1) baseline = throughput;
+
+            SearchQuery query = new SearchQuery(today.plusDays(30), today.plusDays(33)).guests(2).page(0, 20);
+            for (int i = 0; i < 200; i++) router.search(query);
+            long searchStart = System.nanoTime();
+            for (int i = 0; i < 1000; i++) router.search(query);
+            double searchMicros = (System.nanoTime() - searchStart) / 1000 / 1e3;
+
+            System.out.printf("%d shard(s): %,8.0f bookings/s (x%.2f), search fan-out %7.1f us%n",
+                    shardCount, throughput, throughput / baseline, searchMicros);
+            router.close();
+            try (java.util.stream.Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    static void events(int count) {
+        LocalDate today = LocalDate.now();
+        Random random = new Random(42);
+        LocalDate[] checkIns = new LocalDate[count];
+        for (int i = 0; i < count; i++) checkIns[i] = today.plusDays(random.nextInt(360));
+
+        for (boolean ring : new boolean[] { false, true }) {
+            List<Hotel> chain = benchChain(1, 1000);
+            Hotel hotel = chain.get(0);
+            BookingEventBus bus = ring ? BookingEventBus.ring(4096) : BookingEventBus.direct();
+            BookingEngine engine = new BookingEngine(new CustomerRepository(), new ReservationRepository(),
+                    new SimulatedPaymentGateway(0, 0), ReservationJournal.disabled(), bus);
+            bus.subscribe("analytics", new OccupancyAnalytics(chain, today, Hotel.BOOKING_HORIZON_DAYS));
+            bus.subscribe("notifications", new NotificationOutbox());
+            bus.start();
+            Customer guest = new Customer("Bench Guest", "guest@example.com", "+91-00-0000-0000");
+            measure(ring ? "Booking + cancel, ring-buffer side effects" : "Booking + cancel, inline side effects",
+                    count, i -> {
+                Reservation reservation = engine.reserve(guest, hotel, "Standard", checkIns[i], checkIns[i].plusDays(2), 2);
+                if (reservation != null) {
+                    engine.pay(reservation, "Cash").join();
+                    engine.cancel(reservation).join();
+                }
+            });
+            bus.close();
+            if (ring) {
+                System.out.printf("%,d events published, %,d producer waits on a full ring%n",
+                        bus.getPublished(), bus.getBackPressureWaits());
+            }
+        }
+
+        BookingEventBus bus = BookingEventBus.ring(1024);
+        long[] slowConsumed = new long[1];
+        bus.subscribe("slow", new BookingListener() {
+            public void onConfirmed(Reservation reservation) {
+                LockSupport.parkNanos(20_000);
+                slowConsumed[0]++;
+            }
+
+            public void onCancelled(Reservation reservation) {}
+        });
+        bus.start();
+        Hotel hotel = benchChain(1, 10).get(0);
+        Reservation sample = new Reservation(1, new Customer(1, "Guest", "guest@example.com", ""), hotel,
+                hotel.getRooms().get(0), today.plusDays(1), today.plusDays(2), 2, Money.units(100), LocalDateTime.now());
+        long start = System.nanoTime();
+        int bursts = 5_000;
+        for (int i = 0; i < bursts; i++) bus.publish(BookingEventBus.CONFIRMED, sample);
+        long publishNanos = System.nanoTime() - start;
+        bus.close();
+        System.out.printf("Slow consumer (20 us/event), 1024-slot ring: %,d events published in %.1f ms, "
+                + "%,d producer waits, %,d consumed%n", bursts, publishNanos / 1e6,
+                bus.getBackPressureWaits(), slowConsumed[0]);
+    }
+
+    static void stress(int threads, int seconds) {
+        System.setProperty("holds.ttlSeconds", System.getProperty("holds.ttlSeconds", "1"));
+        Hotel hotel = benchChain(1, 48).get(0);
+        hotel.setOverbooking("Standard", 2);
+        BookingEventBus bus = BookingEventBus.direct();
+        BookingEngine engine = new BookingEngine(new CustomerRepository(), new ReservationRepository(),
+                new SimulatedPaymentGateway(0, 0), ReservationJournal.disabled(), bus);
+        Set<Reservation> seen = ConcurrentHashMap.newKeySet();
+        bus.subscribe("stress", new BookingListener() {
+            public void onCreated(Reservation reservation) { seen.add(reservation); }
+            public void onConfirmed(Reservation reservation) { seen.add(reservation); }
+            public void onCancelled(Reservation reservation) {}
+        });
+        LocalDate first = LocalDate.now().plusDays(1);
+        int nights = 14;
+        String[] types = { "Standard", "Deluxe", "Suite" };
+        AtomicReferenceArray<Reservation> shared = new AtomicReferenceArray<>(64);
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder operations = new LongAdder();
+        LongAdder cancels = new LongAdder();
+        LongAdder repeats = new LongAdder();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                Customer guest = new Customer("Stress Guest " + seed, "stress" + seed + "@example.com", "");
+                while (running.get()) {
+                    operations.increment();
+                    int op = random.nextInt(10);
+                    if (op < 5) {
+                        LocalDate checkIn = first.plusDays(random.nextInt(nights));
+                        LocalDate checkOut = checkIn.plusDays(1 + random.nextInt(4));
+                        String type = types[random.nextInt(types.length)];
+                        Reservation reservation = engine.reserve(guest, hotel, type, checkIn, checkOut, 2);
+                        if (reservation == null) {
+                            if (random.nextInt(4) == 0) engine.joinWaitlist(guest, hotel, type, checkIn, checkOut, 2);
+                        } else {
+                            if (random.nextInt(4) != 0) engine.pay(reservation, "Cash").join();
+                            shared.set(random.nextInt(shared.length()), reservation);
+                        }
+                    } else if (op < 9) {
+                        int slot = random.nextInt(shared.length());
+                        Reservation reservation = shared.get(slot);
+                        if (reservation == null) continue;
+                        if (engine.cancel(reservation).join()) {
+                            cancels.increment();
+                        } else {
+                            repeats.increment();
+                            shared.compareAndSet(slot, reservation, null);
+                        }
+                    } else {
+                        Reservation reservation = shared.get(random.nextInt(shared.length()));
+                        if (reservation != null) engine.pay(reservation, "Cash").join();
+                    }
+                }
+            }, "stress-" + t));
+        }
+        workers.add(new Thread(() -> {
+            while (running.get()) {
+                engine.expireHolds();
+                engine.reoptimize(hotel).join();
+                hotel.invalidateRates();
+                hotel.getAvailability();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+            }
+        }, "stress-nightly"));
+        long started = System.nanoTime();
+        workers.forEach(Thread::start);
+        LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(seconds));
+        running.set(false);
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        double elapsed = (System.nanoTime() - started) / 1e9;
+
+        AvailabilityCalendar calendar = hotel.getCalendar();
+        int from = (int) (first.toEpochDay() - calendar.getStart().toEpochDay());
+        int to = from + nights + 4;
+        int[][] owners = new int[hotel.getRooms().size()][to];
+        int[][] placeholders = new int[RoomType.count()][to];
+        int active = 0;
+        int doubleBooked = 0;
+        for (Reservation reservation : seen) {
+            if (!reservation.isActive()) continue;
+            active++;
+            Room room = reservation.getRoom();
+            int in = (int) (reservation.getCheckIn().toEpochDay() - calendar.getStart().toEpochDay());
+            int out = (int) (reservation.getCheckOut().toEpochDay() - calendar.getStart().toEpochDay());
+            for (int n = in; n < out; n++) {
+                if (!room.isAssigned()) {
+                    placeholders[room.getTypeOrdinal()][n]++;
+                } else if (++owners[room.getIndex()][n] > 1) {
+                    doubleBooked++;
+                }
+            }
+        }
+        int leaked = 0;
+        int lost = 0;
+        for (Room room : hotel.getRooms()) {
+            for (int n = from; n < to; n++) {
+                boolean occupied = (calendar.getWord(n, room.getIndex() >>> 6) & 1L << room.getIndex()) != 0;
+                if (occupied && owners[room.getIndex()][n] == 0) leaked++;
+                if (!occupied && owners[room.getIndex()][n] > 0) lost++;
+            }
+        }
+        int oversold = 0;
+        for (RoomType type : RoomType.all()) {
+            for (int n = from; n < to; n++) {
+                if (hotel.countOverbooked(type.getName(), calendar.getStart().plusDays(n)) != placeholders[type.ordinal()][n]) {
+                    oversold++;
+                }
+            }
+        }
+        int drift = 0;
+        AvailabilitySnapshot snapshot = hotel.getAvailability();
+        for (RoomType type : RoomType.all()) {
+            long[] mask = hotel.roomsOfType(type.getName());
+            if (mask == null) continue;
+            for (int n = from; n < to; n++) {
+                LocalDate night = calendar.getStart().plusDays(n);
+                if (snapshot.free(type.ordinal(), n) != calendar.countFree(night, night.plusDays(1), mask)) drift++;
+            }
+        }
+        System.out.printf("%d threads + nightly/expiry thread for %d s over %d rooms: %,.0f ops/s, %,d reservations, "
+                        + "%,d active, %,d cancelled, %,d repeat cancels rejected%n", threads, seconds,
+                hotel.getRooms().size(), operations.sum() / elapsed, seen.size(), active, cancels.sum(), repeats.sum());
+        System.out.printf("Room-nights held twice: %d, occupied without a stay: %d, stays without their room: %d, "
+                + "overbooking counter mismatches: %d, snapshot drift: %d%n", doubleBooked, leaked, lost, oversold, drift);
+        System.out.println(doubleBooked + leaked + lost + oversold + drift == 0 ? "No overbooking" : "INVARIANTS VIOLATED");
+    }
+
+    static void waitlist(String depths) {
+        LocalDate checkIn = LocalDate.now().plusDays(30);
+        LocalDate checkOut = checkIn.plusDays(3);
+        String[] tiers = { "Bronze", "Silver", "Gold", "Platinum" };
+        int[] tierPoints = { 0, 500, 2000, 5000 };
+        for (String size : depths.split(",")) {
+            int depth = Integer.parseInt(size.trim());
+            Hotel hotel = benchChain(1, 120).get(0);
+            hotel.setOverbooking("Standard", 4);
+            BookingEventBus bus = BookingEventBus.direct();
+            BookingEngine engine = new BookingEngine(new CustomerRepository(), new ReservationRepository(),
+                    new SimulatedPaymentGateway(0, 0), ReservationJournal.disabled(), bus);
+            Customer host = new Customer("Bench Guest", "guest@example.com", "+91-00-0000-0000");
+            Customer[] waiting = new Customer[tiers.length];
+            for (int t = 0; t < tiers.length; t++) {
+                waiting[t] = new Customer(tiers[t] + " Guest", tiers[t].toLowerCase() + "@example.com", "");
+                waiting[t].addPoints(tierPoints[t]);
+            }
+            Deque<Reservation> confirmed = new ArrayDeque<>();
+            int[] promotions = new int[2];
+            bus.subscribe("bench", new BookingListener() {
+                public void onConfirmed(Reservation reservation) {
+                    if (reservation.getRoom().isAssigned()) confirmed.addLast(reservation);
+                    if (reservation.getCustomer() == host) return;
+                    promotions[0]++;
+                    if (reservation.getCustomer() == waiting[3]) promotions[1]++;
+                }
 
-        Hotel hotel = selectHotel();
-        if (hotel == null) return;
+                public void onCancelled(Reservation reservation) {}
+            });
+            bus.start();
 
-        hotel.displayInfo();
+            Reservation reservation;
+            while ((reservation = engine.reserve(host, hotel, "Standard", checkIn, checkOut, 2)) != null) {
+                engine.pay(reservation, "Cash").join();
+            }
+            Random random = new Random(42);
+            for (int i = 0; i < depth; i++) {
+                engine.joinWaitlist(waiting[random.nextInt(tiers.length)], hotel, "Standard", checkIn, checkOut, 2);
+            }
+            int overbooked = engine.getWaitlist().unassigned(hotel, "Standard");
 
-        System.out.print("Enter your name: ");
-        String name = scanner.nextLine();
-        System.out.print("Enter email: ");
-        String email = scanner.nextLine();
-        System.out.print("Enter phone: ");
-        String phone = scanner.nextLine();
+            int ops = Math.min(depth / 2, 50_000);
+            measure(String.format("Cancel + reallocate, waitlist %,d", depth), ops,
+                    i -> engine.cancel(confirmed.removeFirst()).join());
+            System.out.printf("  %d overbooked stays moved into freed rooms, %,d promoted from the waitlist "
+                            + "(%.0f%% Platinum), %,d still waiting, at most %d entries examined per cancellation%n",
+                    overbooked - engine.getWaitlist().unassigned(hotel, "Standard"), promotions[0],
+                    100.0 * promotions[1] / Math.max(1, promotions[0]), engine.getWaitlist().depth(hotel, "Standard"),
+                    engine.getWaitlist().getScanLimit());
+        }
+    }
 
-        Customer customer = findCustomer(email);
-        if (customer == null) {
-            customer = new Customer(name, email, phone);
-            customers.add(customer);
-            System.out.println("\nWelcome! You've been enrolled in our loyalty program.");
-        } else {
-            System.out.println("\nWelcome back, " + customer.getName() + "!");
-            System.out.println("Membership: " + customer.getMembershipTier() + 
-                             " (" + customer.getLoyaltyPoints() + " points)");
+    static void metrics(int count) {
+        LocalDate today = LocalDate.now();
+        Random random = new Random(42);
+        LocalDate[] checkIns = new LocalDate[count];
+        for (int i = 0; i < count; i++) checkIns[i] = today.plusDays(1 + random.nextInt(360));
+        Hotel hotel = benchChain(1, 1000).get(0);
+        Customer guest = new Customer("Bench Guest", "guest@example.com", "+91-00-0000-0000");
+        BookingEngine engine = new BookingEngine(new CustomerRepository(), new ReservationRepository(),
+                new SimulatedPaymentGateway(0, 0), ReservationJournal.disabled());
+        Operation booking = i -> {
+            Reservation reservation = engine.reserve(guest, hotel, "Standard", checkIns[i], checkIns[i].plusDays(2), 2);
+            if (reservation != null) {
+                engine.pay(reservation, "Cash").join();
+                engine.cancel(reservation).join();
+            }
+        };
+        for (boolean enabled : new boolean[] { false, true, false, true }) {
+            Metrics.INSTANCE.setEnabled(enabled);
+            measure("Booking + cancel, metrics " + (enabled ? "on" : "off"), count, booking);
         }
 
-        System.out.print("\nEnter address: ");
-        customer.setAddress(scanner.nextLine());
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] samples = new long[count];
+        for (int i = 0; i < count; i++) samples[i] = (long) (1_000 * Math.exp(random.nextGaussian() * 1.5));
+        measure("LatencyHistogram.record", count, i -> histogram.record(samples[i]));
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        long[] estimated = histogram.percentiles(0.5, 0.99, 0.999);
+        System.out.printf("Histogram p50/p99/p99.9 %,d / %,d / %,d ns vs exact %,d / %,d / %,d ns%n",
+                estimated[0], estimated[1], estimated[2], sorted[count / 2], sorted[(int) (count * 0.99)],
+                sorted[(int) (count * 0.999)]);
+    }
 
-        LocalDate checkIn = getDate("Check-in date (YYYY-MM-DD): ");
-        LocalDate checkOut = getDate("Check-out date (YYYY-MM-DD): ");
+    static void holds(int count) {
+        Random random = new Random(42);
+        long start = 1_000_000L;
+        HoldTimer timer = new HoldTimer(1000, start);
+        Hold[] holds = new Hold[count];
+        long[] deadlines = new long[count];
+        for (int i = 0; i < count; i++) {
+            holds[i] = new Hold(null);
+            deadlines[i] = start + 1 + random.nextInt(7_200_000);
+        }
+        long elapsed = System.nanoTime();
+        for (int i = 0; i < count; i++) timer.schedule(holds[i], deadlines[i]);
+        elapsed = System.nanoTime() - elapsed;
+        System.out.printf("%,d holds with TTLs up to 2 h%n", count);
+        System.out.printf("HoldTimer.schedule   %,8.0f ns/hold%n", (double) elapsed / count);
+        elapsed = System.nanoTime();
+        for (int i = 0; i < count; i += 2) timer.cancel(holds[i]);
+        elapsed = System.nanoTime() - elapsed;
+        System.out.printf("HoldTimer.cancel     %,8.0f ns/hold (half settled by payment)%n", (double) elapsed / (count / 2));
 
-        if (checkOut.isBefore(checkIn) || checkOut.isEqual(checkIn)) {
-            System.out.println("\nInvalid dates.");
-            return;
+        long ticks = 0;
+        long expired = 0;
+        long early = 0;
+        long late = 0;
+        long slowest = 0;
+        elapsed = System.nanoTime();
+        for (long now = start + 1000; now <= start + 7_201_000; now += 1000) {
+            long tickStart = System.nanoTime();
+            List<Hold> due = timer.advance(now);
+            slowest = Math.max(slowest, System.nanoTime() - tickStart);
+            for (Hold hold : due) {
+                long deadlineTick = hold.deadlineTick;
+                if (deadlineTick < now / 1000) late++;
+                if (deadlineTick > now / 1000) early++;
+            }
+            expired += due.size();
+            ticks++;
         }
+        elapsed = System.nanoTime() - elapsed;
+        System.out.printf("Timing wheel: %,d ticks, %,d expired, %.2f us/tick avg, %.2f ms slowest tick, "
+                + "%d early, %d late, %d left%n", ticks, expired, elapsed / 1e3 / ticks, slowest / 1e6,
+                early, late, timer.size());
 
-        System.out.print("Number of guests: ");
-        int guests = getInt();
+        List<Hold> pending = new ArrayList<>(count / 2);
+        for (int i = 1; i < count; i += 2) pending.add(holds[i]);
+        long scan = System.nanoTime();
+        long sink = 0;
+        for (Hold hold : pending) if (hold.deadlineTick <= start / 1000 + 1) sink++;
+        scan = System.nanoTime() - scan;
+        System.out.printf("For comparison, one full scan of %,d pending holds takes %.2f ms (%d due)%n",
+                pending.size(), scan / 1e6, sink);
 
-        System.out.println("\n--- Select Room Type ---");
-        System.out.println("1. Standard ($100/night)");
-        System.out.println("2. Deluxe ($180/night)");
-        System.out.println("3. Suite ($300/night)");
-        System.out.print("\nChoice: ");
-        
-        int roomChoice = getInt();
-        String roomType = "";
-        
-        switch (roomChoice) {
-            case 1: roomType = "Standard"; break;
-            case 2: roomType = "Deluxe"; break;
-            case 3: roomType = "Suite"; break;
-            default:
-                System.out.println("\nInvalid choice.");
-                return;
+        Hotel hotel = benchChain(1, 100).get(0);
+        BookingEngine engine = new BookingEngine(new CustomerRepository(), new ReservationRepository(),
+                new SimulatedPaymentGateway(0, 0), ReservationJournal.disabled());
+        Customer guest = new Customer("Bench Guest", "guest@example.com", "+91-00-0000-0000");
+        LocalDate checkIn = LocalDate.now().plusDays(30);
+        int taken = 0;
+        while (engine.reserve(guest, hotel, "Standard", checkIn, checkIn.plusDays(2), 2) != null) taken++;
+        int released = engine.expireHolds(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        System.out.printf("Engine: %d abandoned Standard holds, %d expired after the TTL, %d rooms free again%n",
+                taken, released, hotel.countAvailableRooms("Standard", checkIn, checkIn.plusDays(2)));
+    }
+
+    static void loyalty(int memberCount) {
+        LocalDate today = LocalDate.now();
+        Random random = new Random(42);
+        Customer[] members = new Customer[memberCount];
+        for (int i = 0; i < memberCount; i++) {
+            members[i] = new Customer("Member " + i, "member" + i + "@example.com", "+91-00-0000-0000");
         }
+        LoyaltyEngine loyalty = new LoyaltyEngine(365, today);
+        int accruals = memberCount * 4;
+        int[] who = new int[accruals];
+        int[] points = new int[accruals];
+        LocalDate[] earned = new LocalDate[366];
+        for (int d = 0; d < earned.length; d++) earned[d] = today.minusDays(d);
+        int[] day = new int[accruals];
+        for (int i = 0; i < accruals; i++) {
+            who[i] = random.nextInt(memberCount);
+            points[i] = 20 + random.nextInt(800);
+            day[i] = random.nextInt(365);
+        }
+        System.out.printf("%,d members, %,d accruals over the last year%n", memberCount, accruals);
+        measure("LoyaltyEngine.accrue", accruals, i -> loyalty.accrue(members[who[i]], points[i], earned[day[i]]));
+        measure("Customer.getDiscountBasisPoints", accruals, i -> members[who[i]].getDiscountBasisPoints());
 
-        List<Room> available = hotel.getAvailableRooms(roomType);
-        
-        if (available.isEmpty()) {
-            System.out.println("\nNo " + roomType + " rooms available.");
-            return;
+        Customer shared = members[0];
+        int before = shared.getLoyaltyPoints();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 250_000; i++) shared.addPoints(1);
+            });
+            writers[t].start();
         }
+        for (Thread writer : writers) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.out.printf("4 threads x 250k concurrent accruals: %,d points added (expected 1,000,000)%n",
+                shared.getLoyaltyPoints() - before);
+        shared.addPoints(-1_000_000);
 
-        Room room = available.get(0);
-        room.showDetails();
+        int lots = loyalty.pendingLots();
+        long start = System.nanoTime();
+        long expired = 0;
+        long slowest = 0;
+        for (int d = 1; d <= 365; d++) {
+            long dayStart = System.nanoTime();
+            expired += loyalty.expireThrough(today.plusDays(d));
+            slowest = Math.max(slowest, System.nanoTime() - dayStart);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("Timing wheel: %,d lots expired over 365 nightly ticks, %.2f ms/tick avg, %.2f ms slowest, "
+                + "%,d points, %,d lots left%n", lots, elapsed / 365 / 1e6, slowest / 1e6, expired, loyalty.pendingLots());
 
-        if (guests > room.getMaxGuests()) {
-            System.out.println("\nWarning: Guests exceed room capacity.");
-            System.out.print("Continue? (yes/no): ");
-            if (!scanner.nextLine().equalsIgnoreCase("yes")) {
-                return;
+        for (int i = 0; i < memberCount; i++) members[i].addPoints(random.nextInt(6000));
+        List<Customer> roster = Arrays.asList(members);
+        TierTable table = TierTable.active();
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            int changed = 0;
+            for (Customer member : members) {
+                if (member.requalify(table)) changed++;
             }
+            long sequential = System.nanoTime() - start;
+            for (int i = 0; i < memberCount; i += 7) members[i].addPoints(-members[i].getLoyaltyPoints() / 2);
+            start = System.nanoTime();
+            int parallelChanged = LoyaltyEngine.requalify(roster);
+            long parallel = System.nanoTime() - start;
+            System.out.printf("Re-qualification: sequential %.1f ms (%,d changed), fork-join x%d %.1f ms (%,d changed)%n",
+                    sequential / 1e6, changed, ForkJoinPool.commonPool().getParallelism(), parallel / 1e6,
+                    parallelChanged);
         }
+    }
 
-        Reservation reservation = new Reservation(customer, hotel, room, checkIn, checkOut, guests);
+    static void history(int customerCount, int staysPerCustomer) {
+        LocalDate today = LocalDate.now();
+        Hotel hotel = benchChain(1, 200).get(0);
+        List<Room> rooms = hotel.getRooms();
+        Customer owner = new Customer("Bench Guest", "guest@example.com", "+91-00-0000-0000");
+        Reservation[] stays = new Reservation[staysPerCustomer];
+        for (int s = 0; s < staysPerCustomer; s++) {
+            LocalDate checkIn = today.minusDays(3L * (staysPerCustomer - s) + 30);
+            stays[s] = new Reservation(s, owner, hotel, rooms.get(s % rooms.size()), checkIn, checkIn.plusDays(2),
+                    2, 25_000, checkIn.minusDays(14).atStartOfDay());
+            stays[s].setPaymentMethod("Credit Card");
+            stays[s].setStatus("Confirmed");
+        }
 
-        System.out.println("\n--- Payment Method ---");
-        System.out.println("1. Credit Card");
-        System.out.println("2. Debit Card");
-        System.out.println("3. UPI");
-        System.out.println("4. Net Banking");
-        System.out.println("5. Cash at Hotel");
-        System.out.print("\nSelect: ");
-        
-        int payChoice = getInt();
-        String payment = "";
-        
-        switch (payChoice) {
-            case 1: payment = "Credit Card"; break;
-            case 2: payment = "Debit Card"; break;
-            case 3: payment = "UPI"; break;
-            case 4: payment = "Net Banking"; break;
-            case 5: payment = "Cash"; break;
-            default: payment = "Cash"; break;
+        long baseline = usedHeap();
+        List<List<Reservation>> unbounded = new ArrayList<>(customerCount);
+        for (int c = 0; c < customerCount; c++) {
+            List<Reservation> history = new ArrayList<>();
+            for (Reservation stay : stays) history.add(copy(stay, owner));
+            unbounded.add(history);
         }
+        long listBytes = usedHeap() - baseline;
+        unbounded = null;
 
-        reservation.setPaymentMethod(payment);
+        baseline = usedHeap();
+        CustomerRepository repository = new CustomerRepository();
+        List<Customer> customers = new ArrayList<>(customerCount);
+        long start = System.nanoTime();
+        for (int c = 0; c < customerCount; c++) {
+            Customer customer = repository.register(
+                    new Customer("Guest " + c, "guest" + c + "@example.com", "+91-00-0000-0000"));
+            for (Reservation stay : stays) customer.addBooking(copy(stay, customer));
+            customers.add(customer);
+        }
+        long elapsed = System.nanoTime() - start;
+        long windowBytes = usedHeap() - baseline;
+        long offHeap = repository.getArchive().getOffHeapBytes();
+        long total = (long) customerCount * staysPerCustomer;
 
-        if (payChoice != 5) {
-            System.out.println("\nProcessing payment...");
-            try { Thread.sleep(1500); } catch (InterruptedException e) {}
-            System.out.println("Payment successful!");
+        System.out.printf("%,d customers x %,d past stays%n", customerCount, staysPerCustomer);
+        System.out.printf("ArrayList<Reservation> history      %,10d heap B/customer%n", listBytes / customerCount);
+        System.out.printf("Hot window + columnar archive        %,10d heap B/customer  %,d off-heap B/customer%n",
+                windowBytes / customerCount, offHeap / customerCount);
+        System.out.printf("Customer.addBooking with archiving   %,10.0f ns/booking%n", (double) elapsed / total);
+        Random random = new Random(42);
+        int ops = 100_000;
+        int[] who = new int[ops];
+        int[] offsets = new int[ops];
+        for (int i = 0; i < ops; i++) {
+            who[i] = random.nextInt(customerCount);
+            offsets[i] = random.nextInt(Math.max(1, staysPerCustomer - 5));
         }
+        measure("BookingHistory.page first 5", ops, i -> customers.get(who[i]).getHistory().page(0, 5));
+        measure("BookingHistory.page random offset", ops,
+                i -> customers.get(who[i]).getHistory().page(offsets[i], 5));
+    }
 
-        reservation.setStatus("Confirmed");
-        room.setAvailable(false);
-        reservations.add(reservation);
-        customer.addBooking(reservation);
-        
-        int points = (int)(reservation.getTotalAmount() / 10);
-        customer.addPoints(points);
+    private static Reservation copy(Reservation stay, Customer customer) {
+        Reservation copy = new Reservation(stay.getId(), customer, stay.getHotel(), stay.getRoom(),
+                stay.getCheckIn(), stay.getCheckOut(), stay.getGuests(), stay.getTotalAmount(), stay.getBookingTime());
+        copy.setPaymentMethod(stay.getPaymentMethod());
+        copy.setStatus(stay.getStatus());
+        return copy;
+    }
 
-        reservation.displayConfirmation();
-        System.out.println("✓ Booking confirmed! You earned " + points + " loyalty points.");
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
     }
 
-    private Hotel selectHotel() {
-        System.out.println("\n--- Available Hotels ---");
-        for (int i = 0; i < hotels.size(); i++) {
-            System.out.println((i + 1) + ". " + hotels.get(i).getName() + 
-                             " - " + hotels.get(i).getLocation());
+    static void assign(int roomCount, int days) {
+        LocalDate today = LocalDate.now();
+        Random random = new Random(42);
+        int requests = roomCount / 2 * days / 3;
+        LocalDate[] checkIns = new LocalDate[requests];
+        int[] nights = new int[requests];
+        for (int i = 0; i < requests; i++) {
+            checkIns[i] = today.plusDays(1 + random.nextInt(days));
+            nights[i] = 1 + random.nextInt(random.nextInt(4) == 0 ? 10 : 4);
         }
-        System.out.print("\nSelect hotel: ");
-        
-        int choice = getInt();
-        if (choice < 1 || choice > hotels.size()) {
-            System.out.println("\nInvalid selection.");
-            return null;
+        Customer guest = new Customer(1, "Bench Guest", "guest@example.com", "+91-00-0000-0000");
+        RoomAssignmentOptimizer optimizer = new RoomAssignmentOptimizer();
+        String[] strategies = { "First free room", "Best fit", "Best fit + nightly batch" };
+        for (int strategy = 0; strategy < strategies.length; strategy++) {
+            Hotel hotel = benchChain(1, roomCount).get(0);
+            List<Reservation> stays = new ArrayList<>();
+            long roomNights = 0;
+            long moves = 0;
+            long batchNanos = 0;
+            for (int i = 0; i < requests; i++) {
+                LocalDate checkOut = checkIns[i].plusDays(nights[i]);
+                Room room;
+                if (strategy == 0) {
+                    List<Room> available = hotel.getAvailableRooms("Standard", checkIns[i], checkOut);
+                    room = available.isEmpty() ? null : available.get(0);
+                    if (room != null) hotel.occupyRoom(room, checkIns[i], checkOut);
+                } else {
+                    room = hotel.claimRoom("Standard", checkIns[i], checkOut);
+                }
+                if (room == null) continue;
+                Reservation stay = new Reservation(i, guest, hotel, room, checkIns[i], checkOut, 2,
+                        Money.units(100), LocalDateTime.now());
+                stay.setStatus("Confirmed");
+                stays.add(stay);
+                roomNights += nights[i];
+                if (strategy == 2 && (i + 1) % (requests / days) == 0) {
+                    long start = System.nanoTime();
+                    moves += optimizer.optimize(hotel, stays, today).size();
+                    batchNanos += System.nanoTime() - start;
+                }
+            }
+            System.out.printf("%-26s %,7d stays booked, %,8d room nights, %,6d orphan nights (1-2 night gaps)",
+                    strategies[strategy], stays.size(), roomNights,
+                    RoomAssignmentOptimizer.orphanNights(hotel, today, today.plusDays(days + 11), 2));
+            if (strategy == 2) {
+                System.out.printf(", %,d moves, %.2f ms per nightly batch", moves, batchNanos / 1e6 / days);
+            }
+            System.out.println();
         }
-        
-        return hotels.get(choice - 1);
+
+        Hotel hotel = benchChain(1, roomCount).get(0);
+        measure("Hotel.claimRoom + release (best fit)", 200_000, i -> {
+            LocalDate checkIn = checkIns[i % requests];
+            Room room = hotel.claimRoom("Standard", checkIn, checkIn.plusDays(nights[i % requests]));
+            if (room != null && (i & 1) == 0) hotel.releaseRoom(room, checkIn, checkIn.plusDays(nights[i % requests]));
+        });
     }
 
-    private Customer findCustomer(String email) {
-        for (Customer c : customers) {
-            if (c.getEmail().equalsIgnoreCase(email)) {
-                return c;
+    static void analytics(int count) {
+        List<Hotel> chain = benchChain(50, 200);
+        Random random = new Random(42);
+        LocalDate start = LocalDate.now().minusDays(365);
+        Customer guest = new Customer(1, "Bench Guest", "guest@example.com", "+91-00-0000-0000");
+        List<Reservation> reservations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Hotel hotel = chain.get(random.nextInt(chain.size()));
+            LocalDate checkIn = start.plusDays(random.nextInt(1000));
+            Reservation reservation = new Reservation(i, guest, hotel, hotel.getRooms().get(random.nextInt(200)),
+                    checkIn, checkIn.plusDays(1 + random.nextInt(6)), 2, Money.units(100 + random.nextInt(900)),
+                    LocalDateTime.now());
+            reservation.setStatus(i % 10 == 0 ? "Cancelled" : "Confirmed");
+            reservations.add(reservation);
+        }
+        OccupancyAnalytics analytics = new OccupancyAnalytics(chain, start, 365 + Hotel.BOOKING_HORIZON_DAYS);
+        Hotel hotel = chain.get(7);
+        LocalDate from = LocalDate.now().withDayOfMonth(1);
+        LocalDate to = from.plusMonths(1);
+
+        long scanStart = System.nanoTime();
+        long sold = 0;
+        long revenue = 0;
+        for (Reservation reservation : reservations) {
+            if (reservation.getHotel() != hotel || !reservation.getStatus().equals("Confirmed")) continue;
+            long nights = ChronoUnit.DAYS.between(reservation.getCheckIn(), reservation.getCheckOut());
+            for (LocalDate night = reservation.getCheckIn(); night.isBefore(reservation.getCheckOut());
+                    night = night.plusDays(1)) {
+                if (!night.isBefore(from) && night.isBefore(to)) {
+                    sold++;
+                    revenue += reservation.getTotalAmount() / nights;
+                }
             }
         }
-        return null;
+        long scanNanos = System.nanoTime() - scanStart;
+
+        analytics.rebuild(reservations);
+        long rebuildStart = System.nanoTime();
+        analytics.rebuild(reservations);
+        long rebuildNanos = System.nanoTime() - rebuildStart;
+
+        System.out.printf("%,d reservations, %d hotels, %d parallelism%n", count, chain.size(),
+                ForkJoinPool.commonPool().getParallelism());
+        System.out.printf("Scan for one hotel-month:   %8.2f ms (%,d room nights)%n", scanNanos / 1e6, sold);
+        System.out.printf("Fork-join rebuild:          %8.2f ms (%,d room nights)%n", rebuildNanos / 1e6,
+                analytics.roomNightsSold(hotel, null, from, to));
+        System.out.println("Revenue (scan, per-night floor) " + Money.format(revenue, Money.DEFAULT_CURRENCY)
+                + ", indexed " + Money.format(analytics.roomRevenue(hotel, null, from, to), Money.DEFAULT_CURRENCY));
+        measure("OccupancyAnalytics occupancy+ADR+RevPAR", 1_000_000, i -> {
+            Hotel h = chain.get(i % chain.size());
+            analytics.occupancy(h, null, from, to);
+            analytics.averageDailyRate(h, null, from, to);
+            analytics.revPar(h, RoomType.SUITE, from, to);
+        });
+        Reservation sample = reservations.get(1);
+        measure("OccupancyAnalytics.onConfirmed/onCancelled", 1_000_000, i -> {
+            if ((i & 1) == 0) analytics.onConfirmed(sample); else analytics.onCancelled(sample);
+        });
     }
 
-    private void viewBookings() {
-        System.out.println("\n=== MY BOOKINGS ===\n");
-        System.out.print("Enter email: ");
-        String email = scanner.nextLine();
+    static void reconcile(int count) {
+        List<Hotel> chain = benchChain(20, 100);
+        Random random = new Random(42);
+        LocalDate start = LocalDate.now();
+        List<Reservation> reservations = new ArrayList<>(count);
+        long expected = 0;
+        for (int i = 0; i < count; i++) {
+            Customer guest = new Customer(i, "Guest " + i, "guest" + i + "@example.com", "+91-00-0000-0000");
+            Hotel hotel = chain.get(random.nextInt(chain.size()));
+            LocalDate checkIn = start.plusDays(random.nextInt(365));
+            Reservation reservation = new Reservation(i, guest, hotel, hotel.getRooms().get(random.nextInt(100)),
+                    checkIn, checkIn.plusDays(1 + random.nextInt(6)), 2, 1 + random.nextInt(100_000),
+                    LocalDateTime.now());
+            reservation.setStatus("Confirmed");
+            if (i % 9 == 0) {
+                reservation.setRetainedFee(Money.percent(reservation.getTotalAmount(), 2500));
+                reservation.setStatus("Cancelled");
+            }
+            expected += reservation.getTotalAmount() - (reservation.getStatus().equals("Cancelled")
+                    ? reservation.getTotalAmount() - reservation.getRetainedFee() : 0);
+            reservations.add(reservation);
+        }
 
-        Customer customer = findCustomer(email);
-        if (customer == null) {
-            System.out.println("\nNo customer found.");
-            return;
+        long[] collected = new long[1];
+        measure("ReconciliationReport.of (" + String.format("%,d", count) + " reservations)", 20, i -> {
+            ReconciliationReport report = ReconciliationReport.of(chain, reservations);
+            long sum = 0;
+            for (int h = 0; h < chain.size(); h++) sum += report.getCollected(h);
+            collected[0] = sum;
+        });
+        System.out.println("Collected " + Money.format(collected[0], Money.DEFAULT_CURRENCY)
+                + (collected[0] == expected ? " (matches per-reservation sum exactly)" : " (MISMATCH, expected "
+                + Money.format(expected, Money.DEFAULT_CURRENCY) + ")"));
+    }
+
+    static void availability(int rooms) {
+        Hotel hotel = benchChain(1, rooms).get(0);
+        BookingEngine engine = new BookingEngine(new CustomerRepository(), new ReservationRepository(),
+                new SimulatedPaymentGateway(0, 0), ReservationJournal.disabled());
+        Customer guest = new Customer("Bench Guest", "guest@example.com", "+91-00-0000-0000");
+        LocalDate today = LocalDate.now();
+        Random random = new Random(42);
+        int paid = 0;
+        for (int i = 0; i < rooms * 20; i++) {
+            LocalDate checkIn = today.plusDays(1 + random.nextInt(300));
+            Reservation reservation = engine.reserve(guest, hotel, "Standard", checkIn,
+                    checkIn.plusDays(1 + random.nextInt(4)), 2);
+            if (reservation != null && engine.pay(reservation, "Cash").join().getStatus().equals("Confirmed")) paid++;
         }
+        int samples = 1 << 16;
+        LocalDate[] nights = new LocalDate[samples];
+        LocalDate[] nextDays = new LocalDate[samples];
+        LocalDate[] nextWeeks = new LocalDate[samples];
+        for (int i = 0; i < samples; i++) {
+            nights[i] = today.plusDays(1 + random.nextInt(300));
+            nextDays[i] = nights[i].plusDays(1);
+            nextWeeks[i] = nights[i].plusDays(7);
+        }
+        long[] mask = hotel.roomsOfType("Standard");
+        AvailabilityCalendar calendar = hotel.getCalendar();
+        int ops = 1_000_000;
+        long[] sink = new long[1];
+        System.out.printf("%,d rooms, %,d paid stays over 300 nights%n", rooms, paid);
+        measure("Bitmap countFree, 1 night", ops,
+                i -> sink[0] += calendar.countFree(nights[i & (samples - 1)], nextDays[i & (samples - 1)], mask));
+        measure("Snapshot availableOn, 1 night", ops, i -> sink[0] += hotel.availableOn("Standard", nights[i & (samples - 1)]));
+        measure("countAvailableRooms, 1 night", ops,
+                i -> sink[0] += hotel.countAvailableRooms("Standard", nights[i & (samples - 1)], nextDays[i & (samples - 1)]));
+        measure("Bitmap countFree, 7 nights", ops,
+                i -> sink[0] += calendar.countFree(nights[i & (samples - 1)], nextWeeks[i & (samples - 1)], mask));
+        measure("countAvailableRooms, 7 nights", ops,
+                i -> sink[0] += hotel.countAvailableRooms("Standard", nights[i & (samples - 1)], nextWeeks[i & (samples - 1)]));
 
-        List<Reservation> bookings = customer.getBookingHistory();
-        if (bookings.isEmpty()) {
-            System.out.println("\nNo bookings found.");
-            return;
+        int readers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        AtomicLong invalid = new AtomicLong();
+        Thread[] threads = new Thread[readers];
+        for (int r = 0; r < readers; r++) {
+            int seed = r;
+            threads[r] = new Thread(() -> {
+                int capacity = hotel.getAvailability().getCapacity(RoomType.byName("Standard").ordinal());
+                long count = 0;
+                int i = seed;
+                while (running.get()) {
+                    int free = hotel.availableOn("Standard", nights[i++ & (samples - 1)]);
+                    if (free < 0 || free > capacity) invalid.incrementAndGet();
+                    count++;
+                }
+                reads.addAndGet(count);
+            }, "availability-reader-" + r);
+            threads[r].start();
+        }
+        long versionBefore = hotel.getAvailability().getVersion();
+        long writes = 0;
+        long started = System.nanoTime();
+        while (System.nanoTime() - started < TimeUnit.SECONDS.toNanos(3)) {
+            LocalDate checkIn = nights[(int) (writes & (samples - 1))];
+            Reservation reservation = engine.reserve(guest, hotel, "Standard", checkIn, checkIn.plusDays(2), 2);
+            if (reservation != null) {
+                engine.pay(reservation, "Cash").join();
+                engine.cancel(reservation).join();
+            }
+            writes++;
+        }
+        running.set(false);
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("%d reader thread(s) alongside a booking writer: %,.0f reads/s, %,.0f bookings+cancels/s, "
+                + "%,d snapshots published, %d out-of-range reads%n", readers, reads.get() / seconds, writes / seconds,
+                hotel.getAvailability().getVersion() - versionBefore, invalid.get());
 
-        for (Reservation res : bookings) {
-            res.displayConfirmation();
+        AvailabilitySnapshot snapshot = hotel.getAvailability();
+        int mismatches = 0;
+        for (RoomType type : RoomType.all()) {
+            long[] typeMask = hotel.roomsOfType(type.getName());
+            if (typeMask == null) continue;
+            for (int n = 0; n < calendar.getHorizonDays(); n++) {
+                LocalDate night = calendar.getStart().plusDays(n);
+                if (snapshot.free(type.ordinal(), n) != calendar.countFree(night, night.plusDays(1), typeMask)) mismatches++;
+            }
         }
+        System.out.println("Snapshot vs bitmap after the run: " + (mismatches == 0 ? "identical"
+                : mismatches + " MISMATCHED nights"));
     }
 
-    private void cancelBooking() {
-        System.out.println("\n=== CANCEL BOOKING ===\n");
-        System.out.print("Enter reservation ID: ");
-        String resId = scanner.nextLine();
+    static void liability(int count) {
+        List<Hotel> chain = benchChain(20, 100);
+        for (int h = 0; h < chain.size(); h += 4) {
+            chain.get(h).setCancellationPolicy(CancellationPolicy.builder(1, 1.0).feeFrom(14, 0.0).feeFrom(1, 0.10).build());
+        }
+        for (int h = 1; h < chain.size(); h += 3) {
+            chain.get(h).setCancellationPolicy("Suite", CancellationPolicy.builder(30, 1.0).feeFrom(30, 0.20).build());
+        }
+        Random random = new Random(42);
+        LocalDate asOf = LocalDate.of(2030, 1, 1);
+        List<Reservation> reservations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Customer guest = new Customer(i, "Guest " + i, "guest" + i + "@example.com", "+91-00-0000-0000");
+            Hotel hotel = chain.get(random.nextInt(chain.size()));
+            LocalDate checkIn = asOf.plusDays(random.nextInt(400) - 30);
+            Reservation reservation = new Reservation(i, guest, hotel, hotel.getRooms().get(random.nextInt(100)),
+                    checkIn, checkIn.plusDays(1 + random.nextInt(6)), 2, 1 + random.nextInt(100_000),
+                    LocalDateTime.now());
+            reservation.setStatus(i % 11 == 0 ? "Cancelled" : "Confirmed");
+            reservations.add(reservation);
+        }
 
-        Reservation reservation = null;
-        for (Reservation res : reservations) {
-            if (res.getReservationId().equals(resId)) {
-                reservation = res;
-                break;
+        long[] perReservation = new long[1];
+        measure("Per-reservation canCancel + fee (" + String.format("%,d", count) + ")", 5, i -> {
+            long refundable = 0;
+            for (Reservation reservation : reservations) {
+                if (!reservation.getStatus().equals("Confirmed") || !reservation.getCheckIn().isAfter(asOf)) continue;
+                if (reservation.canCancel(asOf)) {
+                    refundable += reservation.getTotalAmount() - reservation.getCancellationFee(asOf);
+                }
             }
+            perReservation[0] = refundable;
+        });
+        long[] bulk = new long[1];
+        measure("RefundExposure.of (" + String.format("%,d", count) + ", fork-join x"
+                + ForkJoinPool.commonPool().getParallelism() + ")", 5, i -> {
+            RefundExposure exposure = RefundExposure.of(chain, reservations, asOf);
+            long refundable = 0;
+            for (int h = 0; h < chain.size(); h++) refundable += exposure.getRefundable(h);
+            bulk[0] = refundable;
+        });
+        System.out.println("Refundable " + Money.format(bulk[0], Money.DEFAULT_CURRENCY)
+                + (bulk[0] == perReservation[0] ? " (matches per-reservation policy calls exactly)"
+                : " (MISMATCH, expected " + Money.format(perReservation[0], Money.DEFAULT_CURRENCY) + ")"));
+    }
+
+    static void batch(int size) throws IOException {
+        Path dir = Files.createTempDirectory("batch-bench");
+        List<Hotel> chain = benchChain(2, Math.max(64, size));
+        Hotel single = chain.get(0);
+        Hotel grouped = chain.get(1);
+        Customer guest = new Customer("Group Lead", "lead@example.com", "+91-00-0000-0000");
+        LocalDate checkIn = LocalDate.now().plusDays(30);
+        LocalDate checkOut = checkIn.plusDays(3);
+
+        ReservationJournal journal = ReservationJournal.open(dir, new JournalRecovery(chain,
+                new CustomerRepository(), new ReservationRepository()));
+        BookingEngine engine = new BookingEngine(new CustomerRepository(), new ReservationRepository(),
+                new SimulatedPaymentGateway(0, 0), journal);
+
+        long singleStart = System.nanoTime();
+        int singleBooked = 0;
+        for (int i = 0; i < size; i++) {
+            Reservation reservation = engine.reserve(guest, single, "Standard", checkIn, checkOut, 2);
+            if (reservation == null) break;
+            engine.pay(reservation, "Cash").join();
+            singleBooked++;
         }
+        long singleNanos = System.nanoTime() - singleStart;
 
-        if (reservation == null) {
-            System.out.println("\nReservation not found.");
-            return;
+        List<BookingRequest> requests = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            requests.add(new BookingRequest(guest, grouped, "Standard", checkIn, checkOut, 2, "Cash"));
         }
+        long batchStart = System.nanoTime();
+        BatchResult result = engine.bookBatch(requests, false).join();
+        long batchNanos = System.nanoTime() - batchStart;
+        journal.close();
 
-        if (!reservation.canCancel()) {
-            System.out.println("\nCannot cancel. Must cancel at least 2 days before check-in.");
-            return;
+        System.out.printf("%,d single bookings: %8.2f ms (%d booked)%n", size, singleNanos / 1e6, singleBooked);
+        System.out.printf("One batch of %,d:    %8.2f ms (%d booked)%n", size, batchNanos / 1e6, result.bookedCount());
+
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
         }
+        Files.delete(dir);
+    }
 
-        double fee = reservation.getCancellationFee();
-        double refund = reservation.getTotalAmount() - fee;
+    static void http(int requests, int clients, String baseUrl) throws IOException {
+        BookingApi api = null;
+        if (baseUrl == null) {
+            System.setProperty("journal.dir", System.getProperty("journal.dir", ""));
+            System.setProperty("payment.latencyMs", System.getProperty("payment.latencyMs", "0"));
+            api = new ReservationSystem().serve(0);
+            baseUrl = "http://localhost:" + api.getPort();
+        }
+        String base = baseUrl;
+        java.net.http.HttpClient client = java.net.http.HttpClient.newBuilder()
+                .version(java.net.http.HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newFixedThreadPool(4)).build();
+        LocalDate today = LocalDate.now();
+        long[] latencies = new long[requests];
+        java.util.concurrent.atomic.AtomicInteger next = new java.util.concurrent.atomic.AtomicInteger();
+        java.util.concurrent.atomic.AtomicInteger errors = new java.util.concurrent.atomic.AtomicInteger();
 
-        System.out.println("\nOriginal Amount: $" + String.format("%.2f", reservation.getTotalAmount()));
-        System.out.println("Cancellation Fee: $" + String.format("%.2f", fee));
-        System.out.println("Refund: $" + String.format("%.2f", refund));
-        System.out.print("\nConfirm cancellation? (yes/no): ");
+        ExecutorService workers = Executors.newFixedThreadPool(clients);
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            workers.execute(() -> {
+                Random random = new Random();
+                for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                    LocalDate checkIn = today.plusDays(1 + random.nextInt(700));
+                    String stay = "checkIn=" + checkIn + "&checkOut=" + checkIn.plusDays(1 + random.nextInt(4));
+                    int hotel = 1 + random.nextInt(5);
+                    java.net.http.HttpRequest request;
+                    if (random.nextInt(5) == 0) {
+                        request = java.net.http.HttpRequest.newBuilder(java.net.URI.create(base + "/bookings"))
+                                .header("Content-Type", "application/x-www-form-urlencoded")
+                                .POST(java.net.http.HttpRequest.BodyPublishers.ofString("hotel=" + hotel
+                                        + "&type=Standard&guests=2&name=Load+Guest&email=load" + random.nextInt(10_000)
+                                        + "@example.com&payment=UPI&" + stay))
+                                .build();
+                    } else {
+                        request = java.net.http.HttpRequest.newBuilder(
+                                java.net.URI.create(base + "/availability?hotel=" + hotel + "&" + stay)).build();
+                    }
+                    long requestStart = System.nanoTime();
+                    try {
+                        int status = client.send(request, java.net.http.HttpResponse.BodyHandlers.discarding())
+                                .statusCode();
+                        if (status >= 400 && status != 409) errors.incrementAndGet();
+                    } catch (IOException | InterruptedException e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[i] = System.nanoTime() - requestStart;
+                }
+            });
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, java.util.concurrent.TimeUnit.HOURS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        System.out.printf("%,d requests from %d clients in %.2f s: %,.0f req/s, p50 %.2f ms, p99 %.2f ms, %d errors%n",
+                requests, clients, elapsed / 1e9, requests / (elapsed / 1e9),
+                latencies[requests / 2] / 1e6, latencies[(int) (requests * 0.99)] / 1e6, errors.get());
+        if (api != null) System.exit(0);
+    }
 
-        if (scanner.nextLine().equalsIgnoreCase("yes")) {
-            reservation.setStatus("Cancelled");
-            reservation.getRoom().setAvailable(true);
-            System.out.println("\n✓ Booking cancelled. Refund will be processed in 5-7 days.");
-        } else {
-            System.out.println("\nCancellation aborted.");
+    static void hotPaths(String roomSizes, int customerCount) {
+        Random random = new Random(42);
+        LocalDate today = LocalDate.now();
+        String[] typeNames = { "Standard", "Deluxe", "Suite" };
+
+        for (String size : roomSizes.split(",")) {
+            int rooms = Integer.parseInt(size.trim());
+            List<Hotel> chain = benchChain(1, rooms);
+            occupyRandomly(chain, 5, 42);
+            Hotel hotel = chain.get(0);
+            int ops = Math.max(200, Math.min(100_000, 20_000_000 / rooms));
+
+            LocalDate[] checkIns = new LocalDate[ops];
+            LocalDate[] checkOuts = new LocalDate[ops];
+            String[] types = new String[ops];
+            for (int i = 0; i < ops; i++) {
+                checkIns[i] = today.plusDays(random.nextInt(360));
+                checkOuts[i] = checkIns[i].plusDays(1 + random.nextInt(7));
+                types[i] = typeNames[random.nextInt(typeNames.length)];
+            }
+
+            System.out.printf("%n-- %,d rooms --%n", rooms);
+            measure("Hotel.getAvailableRooms", ops,
+                    i -> hotel.getAvailableRooms(types[i], checkIns[i], checkOuts[i]));
+            measure("Hotel.countAvailableRooms", ops,
+                    i -> hotel.countAvailableRooms(types[i], checkIns[i], checkOuts[i]));
+
+            Customer guest = new Customer("Bench Guest", "guest@example.com", "+91-00-0000-0000");
+            BookingEngine engine = new BookingEngine(new CustomerRepository(), new ReservationRepository(),
+                    new SimulatedPaymentGateway(0, 0), ReservationJournal.disabled());
+            measure("Booking (reserve, confirm, cancel)", ops, i -> {
+                Reservation reservation = engine.reserve(guest, hotel, types[i], checkIns[i], checkOuts[i], 2);
+                if (reservation != null) {
+                    engine.pay(reservation, "Cash").join();
+                    engine.cancel(reservation).join();
+                }
+            });
+        }
+
+        Hotel hotel = benchChain(1, 100).get(0);
+        Customer guest = new Customer("Bench Guest", "guest@example.com", "+91-00-0000-0000");
+        Room room = hotel.getRooms().get(0);
+        LocalDate checkIn = today.plusDays(10);
+        System.out.printf("%n-- pricing --%n");
+        measure("Reservation.calculateTotal (constructor)", 1_000_000,
+                i -> new Reservation(guest, hotel, room, checkIn, checkIn.plusDays(1 + (i & 7)), 2));
+        LocalDate[] checkOuts = new LocalDate[15];
+        for (int i = 0; i < checkOuts.length; i++) checkOuts[i] = checkIn.plusDays(i);
+        measure("Hotel.quote (1-14 nights)", 1_000_000,
+                i -> hotel.quote(room.getRoomType(), checkIn, checkOuts[1 + i % 14]));
+        PricingEngine rules = hotel.getPricing();
+        double[] sink = new double[1];
+        measure("PricingEngine rule evaluation (1-14 nights)", 100_000, i -> {
+            for (LocalDate night = checkIn; night.isBefore(checkOuts[1 + i % 14]); night = night.plusDays(1)) {
+                sink[0] += rules.nightlyRate(room.getRoomType(), night, 0.5);
+            }
+        });
+
+        CustomerRepository customers = new CustomerRepository();
+        for (int i = 0; i < customerCount; i++) {
+            customers.register(new Customer("Guest " + i, "guest" + i + "@example.com", "+91-00-0000-0000"));
+        }
+        int lookups = 1_000_000;
+        String[] emails = new String[lookups];
+        for (int i = 0; i < lookups; i++) {
+            emails[i] = (random.nextBoolean() ? "GUEST" : "guest") + random.nextInt(customerCount) + "@example.com";
         }
+        System.out.printf("%n-- %,d customers --%n", customerCount);
+        measure("ReservationSystem.findCustomer", lookups, i -> customers.findByEmail(emails[i]));
     }
 
-    private void checkAvailability() {
-        System.out.println("\n=== CHECK AVAILABILITY ===\n");
-        Hotel hotel = selectHotel();
-        if (hotel == null) return;
+    private static List<Hotel> benchHotels(int count) {
+        List<Hotel> hotels = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Hotel hotel = new Hotel("Bench Hotel " + i, "City " + i);
+            hotel.setIndex(i);
+            hotels.add(hotel);
+        }
+        return hotels;
+    }
 
-        System.out.println("\n--- Room Availability at " + hotel.getName() + " ---");
-        System.out.println("Standard Rooms: " + hotel.countAvailableRooms("Standard"));
-        System.out.println("Deluxe Rooms: " + hotel.countAvailableRooms("Deluxe"));
-        System.out.println("Suites: " + hotel.countAvailableRooms("Suite"));
+    static List<Hotel> benchChain(int hotelCount, int roomsPerHotel) {
+        String[] types = { "Standard", "Standard", "Standard", "Deluxe", "Deluxe", "Suite" };
+        List<Hotel> hotels = new ArrayList<>(hotelCount);
+        for (int h = 0; h < hotelCount; h++) {
+            List<Room> rooms = new ArrayList<>(roomsPerHotel);
+            for (int r = 0; r < roomsPerHotel; r++) {
+                rooms.add(Room.of(types[r % types.length], "R" + r));
+            }
+            Hotel hotel = new Hotel("Bench Hotel " + h, "City " + (h % 40), rooms);
+            hotel.setIndex(h);
+            hotels.add(hotel);
+        }
+        return hotels;
     }
 
-    private void viewHotels() {
-        System.out.println("\n=== OUR HOTELS ===\n");
+    static void occupyRandomly(List<Hotel> hotels, int staysPerRoom, long seed) {
+        Random random = new Random(seed);
+        LocalDate today = LocalDate.now();
         for (Hotel hotel : hotels) {
-            hotel.displayInfo();
+            int rooms = hotel.getRooms().size();
+            for (int i = 0; i < rooms * staysPerRoom; i++) {
+                LocalDate checkIn = today.plusDays(random.nextInt(365));
+                hotel.occupyRoom(hotel.getRooms().get(random.nextInt(rooms)),
+                        checkIn, checkIn.plusDays(1 + random.nextInt(5)));
+            }
         }
     }
 
-    private void viewLoyalty() {
-        System.out.println("\n=== LOYALTY PROGRAM ===\n");
-        System.out.print("Enter email: ");
-        String email = scanner.nextLine();
-
-        Customer customer = findCustomer(email);
-        if (customer == null) {
-            System.out.println("\nNo customer found.");
-            return;
+    static SearchPage naiveSearch(List<Hotel> hotels, SearchQuery query) {
+        List<SearchResult> matches = new ArrayList<>();
+        List<String> required = Amenity.names(query.getAmenities());
+        for (Hotel hotel : hotels) {
+            if (query.getLocation() != null && !hotel.getLocation().equalsIgnoreCase(query.getLocation())) continue;
+            if (!hotel.isBookable(query.getCheckIn(), query.getCheckOut())) continue;
+            for (Room room : hotel.getRooms()) {
+                if (room.getMaxGuests() >= query.getGuests()
+                        && room.getPricePerNight() >= query.getMinPrice()
+                        && room.getPricePerNight() <= query.getMaxPrice()
+                        && room.getAmenities().containsAll(required)
+                        && hotel.getCalendar().isFree(room.getIndex(), query.getCheckIn(), query.getCheckOut())) {
+                    matches.add(new SearchResult(hotel, room));
+                }
+            }
         }
+        if (query.isSortByPrice()) {
+            matches.sort(Comparator.comparingLong(r -> r.getRoom().getPricePerNight()));
+        }
+        int from = Math.min(query.getOffset(), matches.size());
+        int to = Math.min(from + query.getLimit(), matches.size());
+        return new SearchPage(new ArrayList<>(matches.subList(from, to)), matches.size());
+    }
 
-        System.out.println("\nName: " + customer.getName());
-        System.out.println("Tier: " + customer.getMembershipTier());
-        System.out.println("Points: " + customer.getLoyaltyPoints());
-        System.out.println("Discount: " + (int)(customer.getDiscountRate() * 100) + "%");
-        
-        System.out.println("\n--- Tier Benefits ---");
-        System.out.println("Bronze: 0% (0-499 points)");
-        System.out.println("Silver: 5% (500-1999 points)");
-        System.out.println("Gold: 10% (2000-4999 points)");
-        System.out.println("Platinum: 15% (5000+ points)");
+    private static boolean samePage(SearchPage a, SearchPage b) {
+        if (a.getResults().size() != b.getResults().size()) return false;
+        for (int i = 0; i < a.getResults().size(); i++) {
+            if (a.getResults().get(i).getRoom() != b.getResults().get(i).getRoom()) return false;
+        }
+        return true;
     }
 
-    private LocalDate getDate(String prompt) {
-        while (true) {
-            System.out.print(prompt);
-            try {
-                return LocalDate.parse(scanner.nextLine());
-            } catch (Exception e) {
-                System.out.println("Invalid format. Use YYYY-MM-DD");
+    static void search(int hotelCount, int roomsPerHotel) {
+        List<Hotel> hotels = benchChain(hotelCount, roomsPerHotel);
+        occupyRandomly(hotels, 20, 42);
+        long buildStart = System.nanoTime();
+        SearchEngine engine = new SearchEngine(hotels);
+        long buildNanos = System.nanoTime() - buildStart;
+
+        Random random = new Random(7);
+        LocalDate today = LocalDate.now();
+        int queries = 2000;
+        SearchQuery[] workload = new SearchQuery[queries];
+        for (int i = 0; i < queries; i++) {
+            LocalDate checkIn = today.plusDays(random.nextInt(360));
+            SearchQuery query = new SearchQuery(checkIn, checkIn.plusDays(1 + random.nextInt(7)))
+                    .guests(1 + random.nextInt(4))
+                    .page(random.nextInt(3) * 20, 20);
+            if (random.nextBoolean()) query.location("City " + random.nextInt(40));
+            if (random.nextBoolean()) query.priceBand(0, Money.units(200));
+            if (random.nextInt(3) == 0) query.amenities("WiFi", "Smart TV");
+            workload[i] = query;
+        }
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            for (SearchQuery query : workload) {
+                engine.search(query);
+                naiveSearch(hotels, query);
+            }
+        }
+
+        long[] indexed = new long[queries];
+        long[] naive = new long[queries];
+        for (int i = 0; i < queries; i++) {
+            long start = System.nanoTime();
+            SearchPage fast = engine.search(workload[i]);
+            indexed[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            SearchPage slow = naiveSearch(hotels, workload[i]);
+            naive[i] = System.nanoTime() - start;
+            if (fast.getTotal() != slow.getTotal() || !samePage(fast, slow)) {
+                throw new IllegalStateException("Search mismatch: " + fast.getTotal() + " vs " + slow.getTotal());
             }
         }
+        Arrays.sort(indexed);
+        Arrays.sort(naive);
+        System.out.printf("Rooms: %,d in %,d hotels, index built in %.2f ms%n",
+                hotelCount * roomsPerHotel, hotelCount, buildNanos / 1e6);
+        System.out.printf("Indexed search: p50 %8.1f us  p99 %8.1f us%n",
+                indexed[queries / 2] / 1e3, indexed[queries * 99 / 100] / 1e3);
+        System.out.printf("Naive scan:     p50 %8.1f us  p99 %8.1f us%n",
+                naive[queries / 2] / 1e3, naive[queries * 99 / 100] / 1e3);
     }
 
-    private int getInt() {
-        while (true) {
-            try {
-                return Integer.parseInt(scanner.nextLine());
-            } catch (NumberFormatException e) {
-                System.out.print("Invalid input. Enter a number: ");
+    static void coldStart(int hotelCount, int roomsPerHotel) throws IOException {
+        long buildStart = System.nanoTime();
+        List<Hotel> hotels = benchChain(hotelCount, roomsPerHotel);
+        long buildNanos = System.nanoTime() - buildStart;
+
+        occupyRandomly(hotels, 20, 42);
+        LocalDate today = LocalDate.now();
+
+        Path file = Files.createTempFile("coldstart", ".img");
+        long writeStart = System.nanoTime();
+        ColdStartImage.write(file, hotels, new CustomerRepository(), new ReservationRepository());
+        long writeNanos = System.nanoTime() - writeStart;
+
+        LocalDate from = today.plusDays(30);
+        LocalDate to = from.plusDays(3);
+        long expected = 0;
+        for (Hotel hotel : hotels) {
+            expected += hotel.countAvailableRooms("Deluxe", from, to);
+        }
+        hotels = null;
+
+        long openStart = System.nanoTime();
+        ColdStartImage image = ColdStartImage.open(file);
+        long firstQuery = image.countAvailableRooms(0, "Deluxe", from, to);
+        long openNanos = System.nanoTime() - openStart;
+
+        long queryStart = System.nanoTime();
+        long total = 0;
+        for (int h = 0; h < image.hotelCount(); h++) {
+            total += image.countAvailableRooms(h, "Deluxe", from, to);
+        }
+        long queryNanos = System.nanoTime() - queryStart;
+
+        long loadStart = System.nanoTime();
+        Hotel loaded = image.loadHotel(image.hotelCount() - 1);
+        long loadNanos = System.nanoTime() - loadStart;
+
+        System.out.printf("Chain: %,d hotels x %,d rooms, image %,d bytes%n",
+                hotelCount, roomsPerHotel, Files.size(file));
+        System.out.printf("Build object graph:        %8.2f ms%n", buildNanos / 1e6);
+        System.out.printf("Write image:               %8.2f ms%n", writeNanos / 1e6);
+        System.out.printf("Map image + first query:   %8.2f ms (%d free)%n", openNanos / 1e6, firstQuery);
+        System.out.printf("Query all hotels (mapped): %8.2f ms (%,d free, graph says %,d)%n",
+                queryNanos / 1e6, total, expected);
+        System.out.printf("Materialize one hotel:     %8.2f ms (%s, %d rooms)%n",
+                loadNanos / 1e6, loaded.getName(), loaded.getRooms().size());
+        Files.delete(file);
+    }
+
+    static void recovery(int events) throws IOException {
+        Path dir = Files.createTempDirectory("journal-bench");
+        List<Hotel> hotels = benchHotels(5);
+        LocalDate start = LocalDate.now();
+        Random random = new Random(42);
+
+        long writeStart = System.nanoTime();
+        ReservationJournal journal = ReservationJournal.open(dir, new JournalRecovery(hotels,
+                new CustomerRepository(), new ReservationRepository()));
+        List<ByteBuffer> batch = new ArrayList<>();
+        JournalCodec codec = new JournalCodec(batch::add);
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        long customer = 0;
+        long reservation = 0;
+        for (int i = 0; i < events; i++) {
+            if (i % 50 == 0) {
+                customer++;
+                codec.onCustomer(customer, "Guest " + customer, "guest" + customer + "@example.com",
+                        "+91-00-0000-0000");
+            } else if (i % 5 == 0) {
+                codec.onPoints(customer, random.nextInt(200));
+            } else if (i % 7 == 0 && reservation > 0) {
+                codec.onCancel(reservation, 0);
+            } else {
+                LocalDate checkIn = start.plusDays(random.nextInt(365));
+                long amount = Money.units(100 + random.nextInt(900));
+                codec.onBooking(++reservation, customer, random.nextInt(hotels.size()),
+                        random.nextInt(30), checkIn, checkIn.plusDays(1 + random.nextInt(6)),
+                        2, amount, 0, amount, "UPI", 0);
+            }
+            if (batch.size() == 1000) {
+                pending.add(journal.append(new ArrayList<>(batch)));
+                batch.clear();
             }
         }
+        pending.add(journal.append(batch));
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        journal.close();
+        long writeNanos = System.nanoTime() - writeStart;
+        long bytes = Files.size(dir.resolve("journal.log"));
+
+        hotels = benchHotels(5);
+        CustomerRepository customers = new CustomerRepository();
+        ReservationRepository reservations = new ReservationRepository();
+        long recoverStart = System.nanoTime();
+        JournalRecovery recovery = new JournalRecovery(hotels, customers, reservations);
+        journal = ReservationJournal.open(dir, recovery);
+        recovery.finish();
+        long recoverNanos = System.nanoTime() - recoverStart;
+        long replayed = journal.getRecoveredRecords();
+        journal.close();
+
+        System.out.printf("Journal: %,d events, %,d bytes%n", events, bytes);
+        System.out.printf("Write:   %.2f s (%,.0f events/s)%n",
+                writeNanos / 1e9, events / (writeNanos / 1e9));
+        System.out.printf("Recover: %.2f s (%,.0f events/s), %,d records, %,d customers, %,d reservations%n",
+                recoverNanos / 1e9, replayed / (recoverNanos / 1e9), replayed,
+                customers.size(), reservations.size());
+
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+        }
+        Files.delete(dir);
     }
 }
 
 public class HotelReservationSystem {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("bench")) {
+            Benchmarks.run(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("serve")) {
+            new ReservationSystem().serve(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("report")) {
+            new ReservationSystem().report();
+            return;
+        }
         ReservationSystem system = new ReservationSystem();
         system.start();
     }
@@ -0,0 +1,83 @@
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+public final class HotPathFixtures {
+    public static final int INPUTS = 1 << 12;
+
+    private static final String[] TYPE_NAMES = { "Standard", "Deluxe", "Suite" };
+
+    private HotPathFixtures() {
+    }
+
+    public static Map<String, IntUnaryOperator> hotel(int rooms) {
+        List<Hotel> chain = Benchmarks.benchChain(1, rooms);
+        Benchmarks.occupyRandomly(chain, 5, 42);
+        Hotel hotel = chain.get(0);
+
+        Random random = new Random(7);
+        LocalDate today = LocalDate.now();
+        LocalDate[] checkIns = new LocalDate[INPUTS];
+        LocalDate[] checkOuts = new LocalDate[INPUTS];
+        String[] types = new String[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            checkIns[i] = today.plusDays(random.nextInt(360));
+            checkOuts[i] = checkIns[i].plusDays(1 + random.nextInt(7));
+            types[i] = TYPE_NAMES[random.nextInt(TYPE_NAMES.length)];
+        }
+
+        Customer guest = new Customer("Bench Guest", "guest@example.com", "+91-00-0000-0000");
+        BookingEngine engine = new BookingEngine(new CustomerRepository(), new ReservationRepository(),
+                new SimulatedPaymentGateway(0, 0), ReservationJournal.disabled());
+
+        Map<String, IntUnaryOperator> ops = new HashMap<>();
+        ops.put("getAvailableRooms", i -> hotel.getAvailableRooms(types[i], checkIns[i], checkOuts[i]).size());
+        ops.put("countAvailableRooms", i -> hotel.countAvailableRooms(types[i], checkIns[i], checkOuts[i]));
+        ops.put("booking", i -> {
+            Reservation reservation = engine.reserve(guest, hotel, types[i], checkIns[i], checkOuts[i], 2);
+            if (reservation == null) {
+                return 0;
+            }
+            engine.pay(reservation, "Cash").join();
+            engine.cancel(reservation).join();
+            return 1;
+        });
+        return ops;
+    }
+
+    public static Map<String, IntUnaryOperator> pricing() {
+        Hotel hotel = Benchmarks.benchChain(1, 100).get(0);
+        Customer guest = new Customer("Bench Guest", "guest@example.com", "+91-00-0000-0000");
+        Room room = hotel.getRooms().get(0);
+        LocalDate checkIn = LocalDate.now().plusDays(10);
+        LocalDate[] checkOuts = new LocalDate[15];
+        for (int i = 0; i < checkOuts.length; i++) {
+            checkOuts[i] = checkIn.plusDays(i);
+        }
+
+        Map<String, IntUnaryOperator> ops = new HashMap<>();
+        ops.put("calculateTotal", i -> Long.hashCode(
+                new Reservation(guest, hotel, room, checkIn, checkOuts[1 + (i & 7)], 2).getTotalAmount()));
+        ops.put("quote", i -> Long.hashCode(hotel.quote(room.getRoomType(), checkIn, checkOuts[1 + i % 14])));
+        return ops;
+    }
+
+    public static Map<String, IntUnaryOperator> customers(int count) {
+        CustomerRepository customers = new CustomerRepository();
+        for (int i = 0; i < count; i++) {
+            customers.register(new Customer("Guest " + i, "guest" + i + "@example.com", "+91-00-0000-0000"));
+        }
+        Random random = new Random(7);
+        String[] emails = new String[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            emails[i] = (random.nextBoolean() ? "GUEST" : "guest") + random.nextInt(count) + "@example.com";
+        }
+
+        Map<String, IntUnaryOperator> ops = new HashMap<>();
+        ops.put("findCustomer", i -> customers.findByEmail(emails[i]) == null ? 0 : 1);
+        return ops;
+    }
+}
@@ -0,0 +1,118 @@
+package hotel.jmh;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class HotPathBenchmark {
+    private static final int MASK = 4095;
+
+    @State(Scope.Thread)
+    public static class Rooms {
+        @Param({ "1000", "100000", "1000000" })
+        public int rooms;
+
+        IntUnaryOperator getAvailableRooms;
+        IntUnaryOperator countAvailableRooms;
+        IntUnaryOperator booking;
+        int next;
+
+        @Setup
+        public void setUp() throws ReflectiveOperationException {
+            Map<String, IntUnaryOperator> ops = fixture("hotel", rooms);
+            getAvailableRooms = ops.get("getAvailableRooms");
+            countAvailableRooms = ops.get("countAvailableRooms");
+            booking = ops.get("booking");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Pricing {
+        IntUnaryOperator calculateTotal;
+        IntUnaryOperator quote;
+        int next;
+
+        @Setup
+        public void setUp() throws ReflectiveOperationException {
+            Map<String, IntUnaryOperator> ops = fixture("pricing");
+            calculateTotal = ops.get("calculateTotal");
+            quote = ops.get("quote");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Customers {
+        @Param({ "1000000" })
+        public int customers;
+
+        IntUnaryOperator findCustomer;
+
+        @Setup
+        public void setUp() throws ReflectiveOperationException {
+            findCustomer = fixture("customers", customers).get("findCustomer");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public int getAvailableRooms(Rooms state) {
+        return state.getAvailableRooms.applyAsInt(state.next++ & MASK);
+    }
+
+    @Benchmark
+    public int countAvailableRooms(Rooms state) {
+        return state.countAvailableRooms.applyAsInt(state.next++ & MASK);
+    }
+
+    @Benchmark
+    public int booking(Rooms state) {
+        return state.booking.applyAsInt(state.next++ & MASK);
+    }
+
+    @Benchmark
+    public int calculateTotal(Pricing state) {
+        return state.calculateTotal.applyAsInt(state.next++ & MASK);
+    }
+
+    @Benchmark
+    public int quote(Pricing state) {
+        return state.quote.applyAsInt(state.next++ & MASK);
+    }
+
+    @Benchmark
+    public int findCustomer(Customers state, Cursor cursor) {
+        return state.findCustomer.applyAsInt(cursor.next++ & MASK);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, IntUnaryOperator> fixture(String name) throws ReflectiveOperationException {
+        return (Map<String, IntUnaryOperator>) Class.forName("HotPathFixtures").getMethod(name).invoke(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, IntUnaryOperator> fixture(String name, int size) throws ReflectiveOperationException {
+        return (Map<String, IntUnaryOperator>) Class.forName("HotPathFixtures")
+                .getMethod(name, int.class).invoke(null, size);
+    }
+}